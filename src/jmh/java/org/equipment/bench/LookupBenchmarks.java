@@ -0,0 +1,52 @@
+package org.equipment.bench;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.equipment.data.DataStore;
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Primary-key lookups through the {@code DataStore.find*} methods, cycling through existing ids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class LookupBenchmarks {
+    private int cursor;
+
+    @Benchmark
+    public Optional<Equipment> findEquipment(StoreState store) {
+        return DataStore.findEquipment(store.dataset.equipmentId(cursor++));
+    }
+
+    @Benchmark
+    public Optional<Customer> findCustomer(StoreState store) {
+        return DataStore.findCustomer(store.dataset.customerId(cursor++));
+    }
+
+    @Benchmark
+    public Optional<Rental> findRental(StoreState store) {
+        return DataStore.findRental(store.dataset.rentalId(cursor++));
+    }
+
+    @Benchmark
+    public Optional<Reservation> findReservation(StoreState store) {
+        return DataStore.findReservation(store.dataset.reservationId(cursor++));
+    }
+}
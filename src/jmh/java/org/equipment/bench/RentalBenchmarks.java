@@ -0,0 +1,48 @@
+package org.equipment.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.equipment.domain.Rental;
+import org.equipment.service.RentalService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checkout hot path: rent, return and extend through {@link RentalService}. Rents use equipment in a
+ * category without active rentals so the per-category capacity limit never trips.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dequipment.audit.overflow=drop"})
+@State(Scope.Thread)
+public class RentalBenchmarks {
+    private final RentalService rentals = new RentalService();
+    private Rental extendable;
+
+    @Setup(Level.Trial)
+    public void openRental(StoreState store) {
+        extendable = rentals.rent(store.dataset.benchEquipmentId, store.dataset.customerId(0), 3);
+    }
+
+    @Benchmark
+    public double rentThenReturn(StoreState store) {
+        Rental rental = rentals.rent(store.dataset.benchEquipmentId, store.dataset.customerId(1), 2);
+        return rentals.returnRental(rental.getId());
+    }
+
+    @Benchmark
+    public Rental extendRental() {
+        return rentals.extendRental(extendable.getId(), 1);
+    }
+}
@@ -0,0 +1,49 @@
+package org.equipment.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.equipment.service.ReportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Manager dashboard aggregations from {@link ReportService}, with its result cache disabled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dequipment.reports.cacheSize=0"})
+@State(Scope.Thread)
+public class ReportBenchmarks {
+    private final ReportService reports = new ReportService();
+
+    @Benchmark
+    public double totalHeldDeposits(StoreState store) {
+        return reports.totalHeldDeposits();
+    }
+
+    @Benchmark
+    public double totalLateFeesCollected(StoreState store) {
+        return reports.totalLateFeesCollected();
+    }
+
+    @Benchmark
+    public Map<String, Long> overdueByCategory(StoreState store) {
+        return reports.overdueByCategory();
+    }
+
+    @Benchmark
+    public List<ReportService.CustomerSummary> topCustomersByRentals(StoreState store) {
+        return reports.topCustomersByRentals(5);
+    }
+}
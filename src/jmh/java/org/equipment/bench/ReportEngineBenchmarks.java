@@ -0,0 +1,51 @@
+package org.equipment.bench;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.equipment.data.Repositories;
+import org.equipment.service.ReportEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full-scan reports from {@link ReportEngine} at increasing parallelism, to check how they scale with cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class ReportEngineBenchmarks {
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ReportEngine engine;
+    private final LocalDate asOf = LocalDate.now().minusDays(30);
+
+    @Setup
+    public void createEngine() {
+        engine = new ReportEngine(Repositories.store(), parallelism);
+    }
+
+    @Benchmark
+    public Map<String, Long> overdueByCategoryAsOf(StoreState store) {
+        return engine.overdueByCategory(asOf);
+    }
+
+    @Benchmark
+    public Map<String, Double> projectedLateFeesByCategory(StoreState store) {
+        return engine.projectedLateFeesByCategory(asOf);
+    }
+}
@@ -0,0 +1,55 @@
+package org.equipment.bench;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.equipment.data.DataStore;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Generates a synthetic dataset into a temporary directory and points {@code equipment.data.dir} at it
+ * before {@link DataStore} is first touched, so benchmarks never read or write the real data files.
+ * Every benchmark forks a fresh JVM, which gives each dataset size its own store.
+ */
+@State(Scope.Benchmark)
+public class StoreState {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rentals;
+
+    SyntheticDataset dataset;
+    private Path dataDir;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        dataDir = Files.createTempDirectory("equipment-bench");
+        dataset = SyntheticDataset.generate(dataDir, rentals, 42L);
+        System.setProperty("equipment.data.dir", dataDir.toString());
+        DataStore.seed();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        Files.walkFileTree(dataDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,128 @@
+package org.equipment.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Deterministic generator for benchmark data files. The same size and seed always produce the same
+ * records, with dates laid out relative to today so that the share of overdue rentals is stable.
+ * Entities are streamed to disk one at a time, so a million rentals never sit on the heap twice.
+ */
+final class SyntheticDataset {
+    static final int CATEGORIES = 10;
+    static final String BENCH_CATEGORY = "Bench";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    final int equipmentCount;
+    final int customerCount;
+    final int rentalCount;
+    final int reservationCount;
+    /** Equipment in a category with no active rentals, so the capacity check never blocks a benchmark rent. */
+    final int benchEquipmentId;
+
+    private SyntheticDataset(int rentalCount) {
+        this.rentalCount = rentalCount;
+        this.equipmentCount = Math.max(50, rentalCount / 200);
+        this.customerCount = Math.max(100, rentalCount / 50);
+        this.reservationCount = Math.max(10, rentalCount / 100);
+        this.benchEquipmentId = 1000 + equipmentCount;
+    }
+
+    static SyntheticDataset generate(Path dir, int rentals, long seed) throws IOException {
+        SyntheticDataset dataset = new SyntheticDataset(rentals);
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        dataset.writeEquipment(dir.resolve("equipment.json"), random);
+        dataset.writeCustomers(dir.resolve("customers.json"));
+        dataset.writeRentals(dir.resolve("rentals.json"), random);
+        dataset.writeReservations(dir.resolve("reservations.json"), random);
+        return dataset;
+    }
+
+    int equipmentId(int index) {
+        return 1000 + index % equipmentCount;
+    }
+
+    int customerId(int index) {
+        return 5000 + index % customerCount;
+    }
+
+    int rentalId(int index) {
+        return 9000 + index % rentalCount;
+    }
+
+    int reservationId(int index) {
+        return 12000 + index % reservationCount;
+    }
+
+    private void writeEquipment(Path file, Random random) throws IOException {
+        try (SequenceWriter out = MAPPER.writer().writeValues(file.toFile()).init(true)) {
+            for (int i = 0; i < equipmentCount; i++) {
+                double rate = 10 + random.nextInt(90);
+                out.write(new Equipment(1000 + i, "Item " + i, "Category-" + (i % CATEGORIES), rate, rate * 4,
+                        5, false));
+            }
+            out.write(new Equipment(benchEquipmentId, "Bench rig", BENCH_CATEGORY, 25.0, 100.0,
+                    Integer.MAX_VALUE / 2, false));
+        }
+    }
+
+    private void writeCustomers(Path file) throws IOException {
+        try (SequenceWriter out = MAPPER.writer().writeValues(file.toFile()).init(true)) {
+            for (int i = 0; i < customerCount; i++) {
+                out.write(new Customer(5000 + i, "Customer " + i, String.format("555-%03d-%04d", i / 10000 % 1000,
+                        i % 10000)));
+            }
+        }
+    }
+
+    // Roughly 95% returned history spread over two years, 5% active with a share already overdue.
+    private void writeRentals(Path file, Random random) throws IOException {
+        LocalDate today = LocalDate.now();
+        try (SequenceWriter out = MAPPER.writer().writeValues(file.toFile()).init(true)) {
+            for (int i = 0; i < rentalCount; i++) {
+                boolean active = random.nextInt(100) < 5;
+                LocalDate start = today.minusDays(active ? random.nextInt(20) : 20 + random.nextInt(710));
+                LocalDate due = start.plusDays(1 + random.nextInt(14));
+                Rental rental = new Rental(9000 + i, 1000 + random.nextInt(equipmentCount),
+                        5000 + random.nextInt(customerCount), start, due, 40.0);
+                if (!active) {
+                    LocalDate returned = due.plusDays(random.nextInt(8) - 2);
+                    rental.setReturnedOn(returned.isAfter(today) ? today : returned);
+                    if (rental.getReturnedOn().isAfter(due)) {
+                        rental.setLateFeeCharged(12.5 * (rental.getReturnedOn().toEpochDay() - due.toEpochDay()));
+                    }
+                }
+                out.write(rental);
+            }
+        }
+    }
+
+    private void writeReservations(Path file, Random random) throws IOException {
+        Reservation.Status[] statuses = Reservation.Status.values();
+        LocalDate today = LocalDate.now();
+        try (SequenceWriter out = MAPPER.writer().writeValues(file.toFile()).init(true)) {
+            for (int i = 0; i < reservationCount; i++) {
+                out.write(new Reservation(12000 + i, 1000 + random.nextInt(equipmentCount),
+                        5000 + random.nextInt(customerCount), today.minusDays(random.nextInt(60)),
+                        statuses[random.nextInt(statuses.length)]));
+            }
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package org.equipment;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
+import org.equipment.api.ApiServer;
 import org.equipment.cli.MainCLI;
 import org.equipment.data.DataStore;
 
@@ -10,9 +13,39 @@ public class App {
     public static void main(String[] args) throws IOException {
         DataStore.seed();
 
-        try (Scanner scanner = new Scanner(System.in)) {
-            MainCLI.start(scanner);
+        try {
+            if (args.length == 2 && "--export-json".equals(args[0])) {
+                DataStore.exportJson(Paths.get(args[1]));
+                System.out.println("Exported data to " + args[1]);
+                return;
+            }
+            if (args.length == 2 && "--import-json".equals(args[0])) {
+                DataStore.importJson(Paths.get(args[1]));
+                System.out.println("Imported data from " + args[1]);
+                return;
+            }
+            if (args.length == 1 && "--serve".equals(args[0])) {
+                serve();
+                return;
+            }
+            try (Scanner scanner = new Scanner(System.in)) {
+                MainCLI.start(scanner);
+            }
+        } finally {
+            DataStore.shutdown();
         }
     }
-}
 
+    // Serves the HTTP API until the process is stopped; the store's own shutdown hooks flush pending writes.
+    private static void serve() throws IOException {
+        ApiServer server = new ApiServer();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "api-stop"));
+        System.out.println("Serving the API on port " + server.port()
+                + (server.usesVirtualThreads() ? " (virtual threads)" : "") + ". Press Ctrl+C to stop.");
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
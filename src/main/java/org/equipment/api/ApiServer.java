@@ -0,0 +1,519 @@
+package org.equipment.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.equipment.data.Repositories;
+import org.equipment.data.StateConflictException;
+import org.equipment.data.UsageSummary;
+import org.equipment.domain.Equipment;
+import org.equipment.service.AuthService;
+import org.equipment.service.CustomerService;
+import org.equipment.service.InventoryService;
+import org.equipment.service.RentalService;
+import org.equipment.service.ReportService;
+import org.equipment.service.ReservationService;
+
+/**
+ * HTTP/JSON front end to the rental services for kiosks and POS terminals, on the JDK's built-in server.
+ * <p>
+ * Every request runs on its own thread: a virtual thread when the runtime offers
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}, otherwise a pooled platform thread. At most
+ * {@code equipment.api.maxInFlight} requests (default 64) are served at once; further requests get no thread
+ * and are turned away straight away with {@code 503 Service Unavailable} and a {@code Retry-After} header
+ * rather than queued. The server binds to {@code equipment.api.host} (default loopback) and
+ * {@code equipment.api.port} (default 8080).
+ * <p>
+ * Inventory changes and reports need the {@code X-Manager-User} and {@code X-Manager-Pin} headers of a manager
+ * account. Errors come back as {@code {"error": "..."}}: invalid input is {@code 400}, an operation the current
+ * state does not allow (a {@link StateConflictException}: no stock, a stale {@code expectedVersion}) is
+ * {@code 409}. Anything else, such as a failed write, is a bare {@code 500}, with the exception written to
+ * standard error.
+ */
+public final class ApiServer implements AutoCloseable {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final int REJECTION_THREADS = 2;
+
+    private final InventoryService inventory;
+    private final RentalService rentals;
+    private final ReservationService reservations;
+    private final CustomerService customers;
+    private final ReportService reports;
+    private final AuthService auth = new AuthService();
+    private final HttpServer server;
+    private final ExecutorService threads;
+    private final boolean virtualThreads;
+    private final Semaphore inFlight;
+    // Answers exchanges that got no permit, off the server's dispatcher thread.
+    private final ExecutorService rejections = rejectionExecutor();
+    // Set on a rejection thread while it answers an exchange that got no permit.
+    private final ThreadLocal<Boolean> turnedAway = new ThreadLocal<>();
+
+    /**
+     * Server for the store's repositories, configured from the {@code equipment.api.*} properties.
+     */
+    public ApiServer() throws IOException {
+        this(Repositories.store(), new InetSocketAddress(
+                InetAddress.getByName(System.getProperty("equipment.api.host", "127.0.0.1")),
+                Integer.getInteger("equipment.api.port", 8080)),
+                Integer.getInteger("equipment.api.maxInFlight", 64));
+    }
+
+    /**
+     * @param address where to listen; port {@code 0} picks a free one, see {@link #port()}
+     */
+    public ApiServer(Repositories repositories, InetSocketAddress address, int maxInFlight) throws IOException {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in-flight requests must be positive.");
+        }
+        this.inventory = new InventoryService(repositories);
+        this.rentals = new RentalService(repositories);
+        this.reservations = new ReservationService(repositories);
+        this.customers = new CustomerService(repositories);
+        this.reports = new ReportService(repositories);
+        this.inFlight = new Semaphore(maxInFlight);
+        ExecutorService virtual = virtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.threads = virtual != null ? virtual : platformThreadExecutor();
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(this::admit);
+        server.createContext("/equipment", exchange -> serve(exchange, this::equipment));
+        server.createContext("/customers", exchange -> serve(exchange, this::customers));
+        server.createContext("/rentals", exchange -> serve(exchange, this::rentals));
+        server.createContext("/reservations", exchange -> serve(exchange, this::reservations));
+        server.createContext("/reports", exchange -> serve(exchange, this::reports));
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // Exposed for tests that need to saturate the server.
+    Semaphore inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for those in flight.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        threads.shutdown();
+        rejections.shutdown();
+    }
+
+    private Response equipment(Request request) throws IOException {
+        if (request.matches("GET")) {
+            return Response.ok(inventory.listAll());
+        }
+        if (request.matches("POST")) {
+            requireManager(request);
+            JsonNode body = request.body();
+            Equipment created = inventory.addEquipment(text(body, "name"), text(body, "category"),
+                    number(body, "dailyRate"), body.has("depositAmount") ? number(body, "depositAmount") : 0,
+                    integer(body, "stock"), body.path("underMaintenance").asBoolean(false));
+            return Response.created(created);
+        }
+        if (request.matches("GET", "*")) {
+            return found(inventory.find(request.id(0)).orElse(null));
+        }
+        if (request.matches("PUT", "*", "rate")) {
+            requireManager(request);
+            JsonNode body = request.body();
+            double rate = number(body, "dailyRate");
+            boolean updated = body.has("expectedVersion")
+                    ? inventory.updateRate(request.id(0), rate, whole(body, "expectedVersion"))
+                    : inventory.updateRate(request.id(0), rate);
+            return found(updated ? inventory.find(request.id(0)).orElse(null) : null);
+        }
+        if (request.matches("PUT", "*", "stock")) {
+            requireManager(request);
+            JsonNode body = request.body();
+            int stock = integer(body, "stock");
+            boolean updated = body.has("expectedVersion")
+                    ? inventory.updateStock(request.id(0), stock, whole(body, "expectedVersion"))
+                    : inventory.updateStock(request.id(0), stock);
+            return found(updated ? inventory.find(request.id(0)).orElse(null) : null);
+        }
+        return request.unknown();
+    }
+
+    private Response customers(Request request) throws IOException {
+        if (request.matches("POST")) {
+            JsonNode body = request.body();
+            return Response.created(customers.register(text(body, "name"), text(body, "phone")));
+        }
+        if (request.matches("GET", "*")) {
+            return found(customers.find(request.id(0)).orElse(null));
+        }
+        if (request.matches("GET", "*", "rentals")) {
+            return Response.ok(rentals.listByCustomer(request.id(0)));
+        }
+        return request.unknown();
+    }
+
+    private Response rentals(Request request) throws IOException {
+        if (request.matches("POST")) {
+            JsonNode body = request.body();
+            return Response.created(rentals.rent(integer(body, "equipmentId"),
+                    integer(body, "customerId"), integer(body, "days")));
+        }
+        if (request.matches("GET", "*")) {
+            return found(rentals.find(request.id(0)).orElse(null));
+        }
+        if (request.matches("POST", "*", "return")) {
+            double fee = rentals.returnRental(request.id(0));
+            return Response.ok(Collections.singletonMap("lateFee", fee));
+        }
+        if (request.matches("POST", "*", "extend")) {
+            return Response.ok(rentals.extendRental(request.id(0), integer(request.body(), "days")));
+        }
+        return request.unknown();
+    }
+
+    private Response reservations(Request request) throws IOException {
+        if (request.matches("POST")) {
+            JsonNode body = request.body();
+            return Response.created(reservations.requestReservation(integer(body, "equipmentId"),
+                    integer(body, "customerId")));
+        }
+        if (request.matches("GET")) {
+            requireManager(request);
+            return Response.ok(reservations.listWaiting());
+        }
+        if (request.matches("POST", "*", "fulfill")) {
+            requireManager(request);
+            return Response.created(rentals.fulfillReservation(request.id(0), integer(request.body(), "days"),
+                    "manager:" + request.header("X-Manager-User")));
+        }
+        return request.unknown();
+    }
+
+    private Response reports(Request request) throws IOException {
+        requireManager(request);
+        if (request.matches("GET", "dashboard")) {
+            Map<String, Object> dashboard = new LinkedHashMap<>();
+            dashboard.put("activeRentals", reports.activeRentalCount());
+            dashboard.put("heldDeposits", reports.totalHeldDeposits());
+            dashboard.put("lateFeesCollected", reports.totalLateFeesCollected());
+            dashboard.put("overdueByCategory", reports.overdueByCategory());
+            return Response.ok(dashboard);
+        }
+        if (request.matches("GET", "top-customers")) {
+            return Response.ok(reports.topCustomersByRentals(request.intParameter("limit", 5)));
+        }
+        if (request.matches("GET", "usage")) {
+            LocalDate to = request.dateParameter("to", LocalDate.now());
+            LocalDate from = request.dateParameter("from", to.minusWeeks(4));
+            UsageSummary.Period period;
+            try {
+                period = UsageSummary.Period.valueOf(request.parameter("period", "WEEK").toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Period must be DAY, WEEK or MONTH.");
+            }
+            return Response.ok(reports.usage(from, to, period, request.parameter("category", null)));
+        }
+        return request.unknown();
+    }
+
+    private void requireManager(Request request) {
+        if (!auth.verify(request.header("X-Manager-User"), request.header("X-Manager-Pin"))) {
+            throw new Unauthorized();
+        }
+    }
+
+    /**
+     * The server's {@link Executor}: takes a permit before the exchange is handed to a request thread. Without
+     * one the exchange goes to a rejection thread, where {@link #serve} only answers {@code 503}, so a client
+     * slow to take its answer never holds up the dispatcher.
+     */
+    private void admit(Runnable exchange) {
+        if (!inFlight.tryAcquire()) {
+            rejections.execute(() -> {
+                turnedAway.set(Boolean.TRUE);
+                try {
+                    exchange.run();
+                } finally {
+                    turnedAway.remove();
+                }
+            });
+            return;
+        }
+        try {
+            threads.execute(() -> {
+                try {
+                    exchange.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    private void serve(HttpExchange exchange, Route route) throws IOException {
+        if (turnedAway.get() != null) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, error("Server busy, retry shortly."));
+            return;
+        }
+        Response response;
+        try {
+            response = route.handle(new Request(exchange));
+        } catch (Unauthorized ex) {
+            response = new Response(401, error("Manager credentials required."));
+        } catch (StateConflictException ex) {
+            response = new Response(409, error(ex.getMessage()));
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            response = new Response(400, error(ex.getMessage()));
+        } catch (RuntimeException ex) {
+            // The details stay in the server's log; clients only learn that the request failed.
+            System.err.println("Failed " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath()
+                    + ":");
+            ex.printStackTrace();
+            response = new Response(500, error("Internal error."));
+        }
+        send(exchange, response.status, response.body);
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static Response found(Object entity) {
+        return entity == null ? new Response(404, error("Not found.")) : Response.ok(entity);
+    }
+
+    private static Map<String, String> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private static String text(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Missing text field '" + field + "'.");
+        }
+        return value.asText();
+    }
+
+    private static double number(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        if (value == null || !value.isNumber()) {
+            throw new IllegalArgumentException("Missing number field '" + field + "'.");
+        }
+        return value.asDouble();
+    }
+
+    private static int integer(JsonNode body, String field) {
+        long value = whole(body, field);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Field '" + field + "' is out of range.");
+        }
+        return (int) value;
+    }
+
+    private static long whole(JsonNode body, String field) {
+        double value = number(body, field);
+        if (value != Math.rint(value) || Math.abs(value) >= 0x1p63) {
+            throw new IllegalArgumentException("Field '" + field + "' must be a whole number.");
+        }
+        JsonNode node = body.get(field);
+        return node.isIntegralNumber() ? node.asLong() : (long) value;
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException unavailable) {
+            return null;
+        }
+    }
+
+    private static ExecutorService rejectionExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(REJECTION_THREADS, task -> {
+            Thread thread = new Thread(task, "api-reject-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ExecutorService platformThreadExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "api-request-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private interface Route {
+        Response handle(Request request) throws IOException;
+    }
+
+    private static final class Unauthorized extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final Object body;
+
+        private Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Response ok(Object body) {
+            return new Response(200, body);
+        }
+
+        private static Response created(Object body) {
+            return new Response(201, body);
+        }
+    }
+
+    /**
+     * One exchange, with its path split into the segments after the context, e.g. {@code ["1001", "rate"]}
+     * for {@code /equipment/1001/rate}.
+     */
+    private static final class Request {
+        private final HttpExchange exchange;
+        private final String[] segments;
+        private final Map<String, String> parameters = new HashMap<>();
+
+        private Request(HttpExchange exchange) throws IOException {
+            this.exchange = exchange;
+            String context = exchange.getHttpContext().getPath();
+            String rest = exchange.getRequestURI().getPath().substring(context.length());
+            rest = rest.replaceAll("^/+|/+$", "");
+            this.segments = rest.isEmpty() ? new String[0] : rest.split("/+");
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int equals = pair.indexOf('=');
+                    if (equals > 0) {
+                        parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                                URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Whether this is a {@code method} request for exactly {@code path}; {@code *} matches any segment.
+         */
+        private boolean matches(String method, String... path) {
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method) || path.length != segments.length) {
+                return false;
+            }
+            for (int i = 0; i < path.length; i++) {
+                if (!"*".equals(path[i]) && !path[i].equals(segments[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int id(int segment) {
+            try {
+                return Integer.parseInt(segments[segment]);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid id '" + segments[segment] + "'.");
+            }
+        }
+
+        private String header(String name) {
+            return exchange.getRequestHeaders().getFirst(name);
+        }
+
+        private String parameter(String name, String fallback) {
+            return parameters.getOrDefault(name, fallback);
+        }
+
+        private int intParameter(String name, int fallback) {
+            String value = parameters.get(name);
+            try {
+                return value == null ? fallback : Integer.parseInt(value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid " + name + " '" + value + "'.");
+            }
+        }
+
+        private LocalDate dateParameter(String name, LocalDate fallback) {
+            String value = parameters.get(name);
+            return value == null ? fallback : LocalDate.parse(value);
+        }
+
+        private JsonNode body() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[4096];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    bytes.write(buffer, 0, read);
+                }
+            }
+            try {
+                JsonNode body = MAPPER.readTree(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                if (body == null || !body.isObject()) {
+                    throw new IllegalArgumentException("Request body must be a JSON object.");
+                }
+                return body;
+            } catch (JsonProcessingException ex) {
+                throw new IllegalArgumentException("Malformed JSON: " + ex.getOriginalMessage());
+            }
+        }
+
+        private Response unknown() {
+            return new Response(404, error("No " + exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                    .getPath()));
+        }
+    }
+}
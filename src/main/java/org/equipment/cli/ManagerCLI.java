@@ -1,10 +1,14 @@
 package org.equipment.cli;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Scanner;
 
 import org.equipment.data.AuditLog;
+import org.equipment.data.UsageSummary;
+import org.equipment.data.VersionConflictException;
 import org.equipment.domain.Equipment;
 import org.equipment.domain.Reservation;
 import org.equipment.domain.Rental;
@@ -20,6 +24,7 @@ public final class ManagerCLI {
     private static final ReservationService RESERVATIONS = new ReservationService();
     private static final ReportService REPORTS = new ReportService();
     private static final AuthService AUTH = new AuthService();
+    private static final int AUDIT_PAGE_SIZE = 20;
 
     private ManagerCLI() {
     }
@@ -77,7 +82,7 @@ public final class ManagerCLI {
                     showReports();
                     break;
                 case "10":
-                    System.out.println(AuditLog.readAll());
+                    browseAuditLog(scanner);
                     break;
                 case "0":
                     back = true;
@@ -109,21 +114,49 @@ public final class ManagerCLI {
 
     private static void updateRate(Scanner scanner) {
         int id = promptInt(scanner, "Equipment ID: ");
-        double rate = promptDouble(scanner, "New rate: ");
-        if (INVENTORY.updateRate(id, rate)) {
-            System.out.println("Rate updated.");
-        } else {
+        Optional<Equipment> shown = INVENTORY.find(id);
+        if (!shown.isPresent()) {
             System.out.println("Equipment not found.");
+            return;
+        }
+        // The edit applies to the record shown here, not to whatever is current once the rate is typed in.
+        System.out.println(shown.get());
+        long version = shown.get().getVersion();
+        double rate = promptDouble(scanner, "New rate: ");
+        try {
+            if (INVENTORY.updateRate(id, rate, version)) {
+                System.out.println("Rate updated.");
+            } else {
+                System.out.println("Equipment not found.");
+            }
+        } catch (VersionConflictException ex) {
+            showConflict(id, ex, "rate not updated");
         }
     }
 
     private static void toggleMaintenance(Scanner scanner) {
         int id = promptInt(scanner, "Equipment ID: ");
-        if (INVENTORY.flipMaintenance(id)) {
-            System.out.println("Maintenance flag toggled.");
-        } else {
+        Optional<Equipment> shown = INVENTORY.find(id);
+        if (!shown.isPresent()) {
             System.out.println("Equipment not found.");
+            return;
         }
+        System.out.println(shown.get());
+        try {
+            if (INVENTORY.flipMaintenance(id, shown.get().getVersion())) {
+                System.out.println("Maintenance flag toggled.");
+            } else {
+                System.out.println("Equipment not found.");
+            }
+        } catch (VersionConflictException ex) {
+            showConflict(id, ex, "maintenance flag not toggled");
+        }
+    }
+
+    private static void showConflict(int id, VersionConflictException ex, String outcome) {
+        System.out.println("Equipment changed while you were editing (version " + ex.getExpectedVersion()
+                + " is now " + ex.getActualVersion() + "); " + outcome + ".");
+        INVENTORY.find(id).ifPresent(current -> System.out.println("Current record: " + current));
     }
 
     private static void listRentals() {
@@ -143,17 +176,17 @@ public final class ManagerCLI {
     private static void showFinancials() {
         double deposits = REPORTS.totalHeldDeposits();
         double fees = REPORTS.totalLateFeesCollected();
+        System.out.println("Active rentals: " + REPORTS.activeRentalCount());
         System.out.println("Active deposits held: " + deposits);
         System.out.println("Late fees collected so far: " + fees);
-        List<Rental> overdue = RENTALS.overdueRentals();
+        Map<Rental, Double> overdue = REPORTS.overdueWithProjectedFees();
         if (overdue.isEmpty()) {
             System.out.println("No overdue rentals.");
         } else {
             System.out.println("Overdue rentals and projected late fees:");
-            overdue.forEach(rental -> {
-                double fee = RENTALS.projectedLateFee(rental);
-                System.out.println(rental + " | projected late fee: " + fee);
-            });
+            overdue.forEach((rental, fee) -> System.out.println(rental + " | projected late fee: " + fee));
+            REPORTS.projectedLateFeesByCategory(LocalDate.now()).forEach((category, fee) ->
+                    System.out.println("Projected late fees, " + category + ": " + fee));
         }
     }
 
@@ -218,6 +251,50 @@ public final class ManagerCLI {
 
         System.out.println("\nTop customers:");
         REPORTS.topCustomersByRentals(5).forEach(summary -> System.out.println(summary));
+
+        System.out.println("\nTop customers, last 30 days:");
+        LocalDate today = LocalDate.now();
+        REPORTS.topCustomersByRentals(5, today.minusDays(29), today).forEach(System.out::println);
+
+        System.out.println("\nWeekly usage, last 4 weeks:");
+        REPORTS.usage(UsageSummary.Period.WEEK.start(today).minusWeeks(3), today, UsageSummary.Period.WEEK)
+                .forEach(System.out::println);
+
+        System.out.println("\nReport cache: " + REPORTS.cache().hits() + " hits, " + REPORTS.cache().misses()
+                + " misses");
+    }
+
+    private static void browseAuditLog(Scanner scanner) {
+        int page = 0;
+        while (true) {
+            MainCLI.printDivider();
+            List<String> entries = AuditLog.page(page, AUDIT_PAGE_SIZE);
+            if (entries.isEmpty()) {
+                System.out.println(page == 0 ? "No audit entries yet." : "No older entries.");
+            } else {
+                System.out.println("Audit log page " + (page + 1) + ", entries oldest first:");
+                entries.forEach(System.out::println);
+            }
+            System.out.println("1. Older entries");
+            System.out.println("2. Newer entries");
+            System.out.println("0. Back");
+            System.out.print("Choice: ");
+            String choice = scanner.nextLine();
+            switch (choice) {
+                case "1":
+                    if (!entries.isEmpty()) {
+                        page++;
+                    }
+                    break;
+                case "2":
+                    page = Math.max(0, page - 1);
+                    break;
+                case "0":
+                    return;
+                default:
+                    System.out.println("Unknown choice.");
+            }
+        }
     }
 
     private static boolean authenticate(Scanner scanner) {
@@ -1,51 +1,422 @@
 package org.equipment.data;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Append-only audit log stored under the data directory.
+ * <p>
+ * Callers only enqueue entries into a bounded buffer; a single background thread keeps the file open and
+ * writes them in batches. The flush policy ({@code equipment.audit.flush}) is {@code time} (default, at
+ * most every {@code equipment.audit.flushMillis}), {@code count} (every {@code equipment.audit.batchSize}
+ * entries) or {@code sync} (written on the caller's thread). When the buffer
+ * ({@code equipment.audit.bufferSize}) is full, {@code equipment.audit.overflow} decides whether callers
+ * {@code block} (default) or the entry is dropped; drops are counted and noted in the log.
+ * <p>
+ * The active file is rotated into numbered segments by size ({@code equipment.audit.rotate=size}, default,
+ * past {@code equipment.audit.maxSegmentBytes}) or by day ({@code daily}). {@link #page(int, int)},
+ * {@link #tail(int)} and {@link #between(LocalDateTime, LocalDateTime)} read only the entries they return.
  */
 public final class AuditLog {
+    public enum FlushPolicy {
+        SYNC,
+        COUNT,
+        TIME
+    }
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP
+    }
+
+    public enum RotationPolicy {
+        SIZE,
+        DAILY
+    }
+
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
-    private static Path logPath;
+    private static final int BATCH_SIZE = Integer.getInteger("equipment.audit.batchSize", 64);
+    private static final long FLUSH_MILLIS = Long.getLong("equipment.audit.flushMillis", 200L);
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000L;
+    private static final BlockingQueue<Entry> BUFFER = new ArrayBlockingQueue<>(
+            Integer.getInteger("equipment.audit.bufferSize", 4096));
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final Object FILE_LOCK = new Object();
+    private static final ThreadLocal<List<Entry>> HELD = new ThreadLocal<>();
+
+    private static volatile FlushPolicy flushPolicy = policy("equipment.audit.flush", FlushPolicy.TIME);
+    private static volatile OverflowPolicy overflowPolicy = policy("equipment.audit.overflow",
+            OverflowPolicy.BLOCK);
+    private static volatile RotationPolicy rotationPolicy = policy("equipment.audit.rotate", RotationPolicy.SIZE);
+    private static volatile long maxSegmentBytes = Long.getLong("equipment.audit.maxSegmentBytes", 1L << 20);
+    private static volatile Path logPath;
+    private static Thread writerThread;
+
+    // Guarded by FILE_LOCK.
+    private static Writer out;
+    private static long reportedDrops;
+    private static long activeBytes;
+    private static LocalDate activeDate;
 
     private AuditLog() {
     }
 
     static void configure(Path dataDir) {
-        logPath = dataDir.resolve("audit.log");
+        flush();
+        synchronized (FILE_LOCK) {
+            closeOut();
+            logPath = dataDir.resolve("audit.log");
+            try {
+                new AuditSegments(logPath).recover();
+            } catch (IOException ex) {
+                System.err.println("Unable to recover audit segments: " + ex.getMessage());
+            }
+        }
+    }
+
+    static void policies(FlushPolicy flush, OverflowPolicy overflow) {
+        flush();
+        flushPolicy = flush;
+        overflowPolicy = overflow;
+    }
+
+    static void rotation(RotationPolicy policy, long maxBytes) {
+        flush();
+        rotationPolicy = policy;
+        maxSegmentBytes = maxBytes;
     }
 
     public static void write(String actor, String action) {
         if (logPath == null) {
             return;
         }
-        String line = String.format("%s | %s | %s%n", LocalDateTime.now().format(FORMATTER), actor, action);
+        Entry entry = new Entry(LocalDateTime.now(), actor, action, null);
+        List<Entry> held = HELD.get();
+        if (held != null) {
+            held.add(entry);
+            return;
+        }
+        enqueue(entry);
+    }
+
+    /**
+     * Holds back entries written on this thread until {@link #release()}, so a batch of changes hands its
+     * entries over together.
+     */
+    static void hold() {
+        HELD.set(new ArrayList<>());
+    }
+
+    static void release() {
+        List<Entry> held = HELD.get();
+        HELD.remove();
+        if (held == null || held.isEmpty()) {
+            return;
+        }
+        if (flushPolicy == FlushPolicy.SYNC) {
+            synchronized (FILE_LOCK) {
+                held.forEach(AuditLog::append);
+                flushOut();
+            }
+            return;
+        }
+        held.forEach(AuditLog::enqueue);
+    }
+
+    private static void enqueue(Entry entry) {
+        if (flushPolicy == FlushPolicy.SYNC) {
+            synchronized (FILE_LOCK) {
+                append(entry);
+                flushOut();
+            }
+            return;
+        }
+        startWriter();
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            if (!BUFFER.offer(entry)) {
+                DROPPED.incrementAndGet();
+            }
+            return;
+        }
         try {
-            Files.createDirectories(logPath.getParent());
-            Files.write(logPath, line.getBytes(StandardCharsets.UTF_8),
-                    Files.exists(logPath) ? java.nio.file.StandardOpenOption.APPEND
-                            : java.nio.file.StandardOpenOption.CREATE);
-        } catch (IOException ex) {
-            // Logging failure should not break core logic; swallow after printing.
-            System.err.println("Failed to write audit log: " + ex.getMessage());
+            BUFFER.put(entry);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    /**
+     * Blocks until everything enqueued so far has reached the file.
+     */
+    public static void flush() {
+        Thread writer;
+        synchronized (AuditLog.class) {
+            writer = writerThread;
+        }
+        if (writer == null) {
+            return;
+        }
+        CountDownLatch barrier = new CountDownLatch(1);
+        try {
+            if (BUFFER.offer(new Entry(null, null, null, barrier), DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                barrier.await(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Drains pending entries and closes the file. Later writes reopen it.
+     */
+    public static void shutdown() {
+        flush();
+        synchronized (FILE_LOCK) {
+            closeOut();
+        }
+    }
+
+    public static long droppedEntries() {
+        return DROPPED.get();
+    }
+
+    /**
+     * Whole log across all segments. Prefer {@link #page(int, int)} for display.
+     */
     public static String readAll() {
-        if (logPath == null || !Files.exists(logPath)) {
+        flush();
+        Path path = logPath;
+        if (path == null) {
             return "No audit entries yet.";
         }
+        StringBuilder all = new StringBuilder();
         try {
-            return new String(Files.readAllBytes(logPath), StandardCharsets.UTF_8);
+            for (Path segment : new AuditSegments(path).closedFiles()) {
+                all.append(new String(Files.readAllBytes(segment), StandardCharsets.UTF_8));
+            }
+            if (Files.exists(path)) {
+                all.append(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            }
         } catch (IOException ex) {
             return "Unable to read audit log: " + ex.getMessage();
         }
+        return all.length() == 0 ? "No audit entries yet." : all.toString();
+    }
+
+    /**
+     * One page of entries counted back from the newest; page 0 holds the latest {@code size} entries. Each
+     * page is returned oldest first.
+     */
+    public static List<String> page(int page, int size) {
+        flush();
+        Path path = logPath;
+        if (path == null || page < 0 || size <= 0) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new AuditSegments(path).newest(page * size, size);
+        Collections.reverse(lines);
+        return lines;
+    }
+
+    public static List<String> tail(int count) {
+        return page(0, count);
+    }
+
+    /**
+     * Entries logged at or after {@code from} and before {@code to}, oldest first.
+     */
+    public static List<String> between(LocalDateTime from, LocalDateTime to) {
+        flush();
+        Path path = logPath;
+        if (path == null) {
+            return Collections.emptyList();
+        }
+        return new AuditSegments(path).between(from.format(FORMATTER), to.format(FORMATTER));
+    }
+
+    private static synchronized void startWriter() {
+        if (writerThread != null) {
+            return;
+        }
+        writerThread = new Thread(AuditLog::drainLoop, "audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(AuditLog::shutdown, "audit-drain"));
+    }
+
+    private static void drainLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        long lastFlush = System.nanoTime();
+        int unflushed = 0;
+        while (true) {
+            try {
+                Entry first = BUFFER.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    BUFFER.drainTo(batch, BATCH_SIZE - 1);
+                }
+            } catch (InterruptedException ex) {
+                // The writer only stops with the JVM; keep draining.
+            }
+            synchronized (FILE_LOCK) {
+                try {
+                    for (Entry entry : batch) {
+                        if (entry.barrier != null) {
+                            flushOut();
+                            unflushed = 0;
+                            lastFlush = System.nanoTime();
+                            entry.barrier.countDown();
+                        } else {
+                            append(entry);
+                            unflushed++;
+                        }
+                    }
+                    boolean due = flushPolicy == FlushPolicy.COUNT
+                            ? unflushed >= BATCH_SIZE
+                            : System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS);
+                    if (unflushed > 0 && due) {
+                        flushOut();
+                        unflushed = 0;
+                        lastFlush = System.nanoTime();
+                    }
+                } catch (RuntimeException ex) {
+                    // The writer must survive: producers and flush() wait on it.
+                    System.err.println("Failed to write audit log: " + ex);
+                    closeOut();
+                    unflushed = 0;
+                    for (Entry entry : batch) {
+                        if (entry.barrier != null) {
+                            entry.barrier.countDown();
+                        }
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
     }
-}
 
+    private static void append(Entry entry) {
+        if (logPath == null) {
+            return;
+        }
+        try {
+            long dropped = DROPPED.get();
+            if (dropped > reportedDrops) {
+                appendLine(entry.time, format(entry.time, "audit", "Dropped " + (dropped - reportedDrops)
+                        + " entries"));
+                reportedDrops = dropped;
+            }
+            appendLine(entry.time, format(entry.time, entry.actor, entry.action));
+        } catch (IOException ex) {
+            // Logging failure should not break core logic; swallow after printing.
+            System.err.println("Failed to write audit log: " + ex.getMessage());
+            closeOut();
+        }
+    }
+
+    private static void appendLine(LocalDateTime time, String line) throws IOException {
+        if (out == null) {
+            Files.createDirectories(logPath.getParent());
+            activeBytes = Files.exists(logPath) ? Files.size(logPath) : 0;
+            activeDate = activeBytes > 0 ? firstDate(time) : null;
+            out = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        int bytes = line.getBytes(StandardCharsets.UTF_8).length;
+        boolean rotate = rotationPolicy == RotationPolicy.DAILY
+                ? activeDate != null && !activeDate.equals(time.toLocalDate())
+                : activeBytes > 0 && activeBytes + bytes > maxSegmentBytes;
+        if (rotate) {
+            closeOut();
+            new AuditSegments(logPath).rotate();
+            appendLine(time, line);
+            return;
+        }
+        if (activeDate == null) {
+            activeDate = time.toLocalDate();
+        }
+        out.write(line);
+        activeBytes += bytes;
+    }
+
+    // A first line that is not ours (hand-edited, or torn by a crash) dates the file to the entry being written.
+    private static LocalDate firstDate(LocalDateTime fallback) throws IOException {
+        String first = AuditSegments.firstTimestamp(logPath);
+        try {
+            return LocalDate.parse(first, FORMATTER);
+        } catch (DateTimeParseException ex) {
+            System.err.println("Unreadable first audit timestamp '" + first + "', dating " + logPath + " "
+                    + fallback.toLocalDate());
+            return fallback.toLocalDate();
+        }
+    }
+
+    private static String format(LocalDateTime time, String actor, String action) {
+        return time.format(FORMATTER) + " | " + actor + " | " + action + System.lineSeparator();
+    }
+
+    private static void flushOut() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            System.err.println("Failed to write audit log: " + ex.getMessage());
+            closeOut();
+        }
+    }
+
+    private static void closeOut() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ex) {
+            System.err.println("Failed to close audit log: " + ex.getMessage());
+        }
+        out = null;
+    }
+
+    private static <E extends Enum<E>> E policy(String property, E fallback) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        return Enum.valueOf(fallback.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static final class Entry {
+        private final LocalDateTime time;
+        private final String actor;
+        private final String action;
+        private final CountDownLatch barrier;
+
+        private Entry(LocalDateTime time, String actor, String action, CountDownLatch barrier) {
+            this.time = time;
+            this.actor = actor;
+            this.action = action;
+            this.barrier = barrier;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.equipment.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rotated audit segments ({@code audit-000001.log}, ...) plus the active {@code audit.log}, described by a
+ * sidecar index {@code audit.idx} holding one {@code number|first timestamp|start offset|length} line per
+ * closed segment. Reads seek from the end of a file or binary-search it by timestamp instead of loading it.
+ */
+final class AuditSegments {
+    static final int TIMESTAMP_LENGTH = 19;
+    private static final int BLOCK = 8192;
+
+    private final Path dir;
+    private final Path active;
+    private final Path indexFile;
+
+    AuditSegments(Path active) {
+        this.active = active;
+        this.dir = active.getParent();
+        this.indexFile = dir.resolve("audit.idx");
+    }
+
+    Path segment(int number) {
+        return dir.resolve(String.format("audit-%06d.log", number));
+    }
+
+    List<Segment> closed() {
+        List<Segment> segments = new ArrayList<>();
+        if (!Files.exists(indexFile)) {
+            return segments;
+        }
+        try {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\\|");
+                if (parts.length == 4) {
+                    segments.add(new Segment(Integer.parseInt(parts[0]), parts[1], Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3])));
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            System.err.println("Unable to read audit index: " + ex.getMessage());
+        }
+        return segments;
+    }
+
+    List<Path> closedFiles() {
+        List<Path> files = new ArrayList<>();
+        for (Segment segment : closed()) {
+            files.add(segment(segment.number));
+        }
+        return files;
+    }
+
+    /**
+     * Moves the active file to the next numbered segment and records it in the index.
+     */
+    void rotate() throws IOException {
+        recover();
+        if (!Files.exists(active) || Files.size(active) == 0) {
+            return;
+        }
+        List<Segment> segments = closed();
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        int number = last == null ? 1 : last.number + 1;
+        Files.move(active, segment(number), StandardCopyOption.ATOMIC_MOVE);
+        index(number, last);
+    }
+
+    /**
+     * Indexes segments left behind by a rotation that moved the active file but crashed before writing its
+     * index line, so reads see them again.
+     */
+    void recover() throws IOException {
+        List<Segment> segments = closed();
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        int number = last == null ? 1 : last.number + 1;
+        while (Files.exists(segment(number))) {
+            System.err.println("Recovering unindexed audit segment " + segment(number));
+            last = index(number, last);
+            number++;
+        }
+    }
+
+    private Segment index(int number, Segment previous) throws IOException {
+        Path file = segment(number);
+        Segment segment = new Segment(number, firstTimestamp(file),
+                previous == null ? 0 : previous.start + previous.length, Files.size(file));
+        String line = number + "|" + segment.firstTimestamp + "|" + segment.start + "|" + segment.length
+                + System.lineSeparator();
+        Files.write(indexFile, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        return segment;
+    }
+
+    /**
+     * Newest-first entries after skipping {@code skip} newer ones, walking back through segments as needed.
+     */
+    List<String> newest(int skip, int limit) {
+        List<String> lines = new ArrayList<>();
+        int[] toSkip = {skip};
+        try {
+            readBackwards(active, toSkip, limit, lines);
+            List<Segment> segments = closed();
+            for (int i = segments.size() - 1; i >= 0 && lines.size() < limit; i--) {
+                readBackwards(segment(segments.get(i).number), toSkip, limit, lines);
+            }
+        } catch (IOException ex) {
+            System.err.println("Unable to read audit log: " + ex.getMessage());
+        }
+        return lines;
+    }
+
+    /**
+     * Entries with {@code from <= timestamp < to}, oldest first. Segments outside the range are skipped using
+     * the index, and the start inside each segment is found by binary search.
+     */
+    List<String> between(String from, String to) {
+        List<String> lines = new ArrayList<>();
+        List<Path> candidates = new ArrayList<>();
+        List<Segment> segments = closed();
+        for (int i = 0; i < segments.size(); i++) {
+            String nextFirst = i + 1 < segments.size() ? segments.get(i + 1).firstTimestamp : null;
+            boolean startsBeforeEnd = segments.get(i).firstTimestamp.compareTo(to) < 0;
+            boolean endsAfterStart = nextFirst == null || nextFirst.compareTo(from) >= 0;
+            if (startsBeforeEnd && endsAfterStart) {
+                candidates.add(segment(segments.get(i).number));
+            }
+        }
+        candidates.add(active);
+        try {
+            for (Path file : candidates) {
+                readRange(file, from, to, lines);
+            }
+        } catch (IOException ex) {
+            System.err.println("Unable to read audit log: " + ex.getMessage());
+        }
+        return lines;
+    }
+
+    static String firstTimestamp(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return timestampAt(channel, 0);
+        }
+    }
+
+    private static void readBackwards(Path file, int[] toSkip, int limit, List<String> lines) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = channel.size();
+            byte[] carry = new byte[0];
+            while (position > 0 && lines.size() < limit) {
+                int length = (int) Math.min(BLOCK, position);
+                position -= length;
+                byte[] data = new byte[length + carry.length];
+                readFully(channel, ByteBuffer.wrap(data, 0, length), position);
+                System.arraycopy(carry, 0, data, length, carry.length);
+                int end = data.length;
+                for (int i = data.length - 1; i >= 0 && lines.size() < limit; i--) {
+                    if (data[i] == '\n') {
+                        emit(data, i + 1, end, toSkip, lines);
+                        end = i;
+                    }
+                }
+                carry = Arrays.copyOf(data, end);
+            }
+            if (position == 0 && lines.size() < limit) {
+                emit(carry, 0, carry.length, toSkip, lines);
+            }
+        }
+    }
+
+    private static void emit(byte[] data, int start, int end, int[] toSkip, List<String> lines) {
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        if (end <= start) {
+            return;
+        }
+        if (toSkip[0] > 0) {
+            toSkip[0]--;
+            return;
+        }
+        lines.add(new String(data, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    private static void readRange(Path file, String from, String to, List<String> lines) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long start;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long low = 0;
+            long high = channel.size();
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                long lineStart = lineStartAtOrAfter(channel, mid);
+                if (lineStart >= channel.size() || timestampAt(channel, lineStart).compareTo(from) >= 0) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            start = lineStartAtOrAfter(channel, low);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            long skipped = 0;
+            while (skipped < start) {
+                skipped += in.skip(start - skipped);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() >= TIMESTAMP_LENGTH && line.substring(0, TIMESTAMP_LENGTH).compareTo(to) >= 0) {
+                    return;
+                }
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+    }
+
+    private static long lineStartAtOrAfter(FileChannel channel, long position) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+        long cursor = position - 1;
+        long size = channel.size();
+        while (cursor < size) {
+            buffer.clear();
+            int read = channel.read(buffer, cursor);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return cursor + i + 1;
+                }
+            }
+            cursor += read;
+        }
+        return size;
+    }
+
+    private static String timestampAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TIMESTAMP_LENGTH);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of audit segment");
+            }
+        }
+    }
+
+    static final class Segment {
+        private final int number;
+        private final String firstTimestamp;
+        private final long start;
+        private final long length;
+
+        Segment(int number, String firstTimestamp, long start, long length) {
+            this.number = number;
+            this.firstTimestamp = firstTimestamp;
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.equipment.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+import org.equipment.domain.Versioned;
+
+/**
+ * Versioned binary form of one collection, used for the store's snapshot files.
+ * <p>
+ * Layout (big-endian): a header of magic, format version, {@link Journal.Kind} ordinal, record width and
+ * record count; a string table of length-prefixed UTF-8 strings, each distinct value stored once; then the
+ * records, all {@link #width(Journal.Kind)} bytes wide. Strings are referenced by table index, dates are
+ * stored as epoch days and enums as ordinals, with {@code -1} or {@link #NO_DATE} standing for {@code null}.
+ * Because every record has the same width, the reader walks the mapped file by offset without parsing.
+ * <p>
+ * Version 2 appends the entity's version stamp to every record. Version 1 files, including archive segments
+ * written before it, are still read, with every entity at version {@code 0}.
+ */
+final class BinarySnapshot {
+    static final int MAGIC = 0x45525331; // "ERS1"
+    static final short VERSION = 2;
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final int HEADER_BYTES = 4 + 2 + 1 + 1 + 4;
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Serializes {@code items} of {@code kind}. The caller provides whatever locking the list needs.
+     */
+    static byte[] encode(Journal.Kind kind, List<?> items) {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        List<byte[]> table = new ArrayList<>();
+        int tableBytes = 4;
+        int[][] refs = new int[items.size()][];
+        for (int i = 0; i < items.size(); i++) {
+            String[] values = strings(kind, items.get(i));
+            refs[i] = new int[values.length];
+            for (int j = 0; j < values.length; j++) {
+                String value = values[j];
+                if (value == null) {
+                    refs[i][j] = -1;
+                    continue;
+                }
+                Integer index = strings.get(value);
+                if (index == null) {
+                    index = table.size();
+                    strings.put(value, index);
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    table.add(utf8);
+                    tableBytes += 4 + utf8.length;
+                }
+                refs[i][j] = index;
+            }
+        }
+
+        int width = width(kind);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + tableBytes + width * items.size());
+        out.putInt(MAGIC).putShort(VERSION).put((byte) kind.ordinal()).put((byte) width).putInt(items.size());
+        out.putInt(table.size());
+        for (byte[] utf8 : table) {
+            out.putInt(utf8.length).put(utf8);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            writeRecord(kind, items.get(i), refs[i], out);
+        }
+        return out.array();
+    }
+
+    /**
+     * Maps {@code path} read-only and hands each decoded record to {@code sink} in stored order.
+     *
+     * @return {@code false} if the file does not exist
+     */
+    static boolean stream(Path path, Journal.Kind kind, Consumer<Object> sink) {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), kind, sink);
+            return true;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed reading " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Decodes one encoded collection from {@code in}, which must hold nothing else.
+     *
+     * @throws IOException if the content is not a complete snapshot of {@code kind}
+     */
+    static void decode(ByteBuffer in, Journal.Kind kind, Consumer<Object> sink) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            short version = in.getShort();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            boolean stamped = version >= 2;
+            int storedKind = in.get();
+            int width = in.get() & 0xFF;
+            if (storedKind != kind.ordinal() || width != width(kind, stamped)) {
+                throw new IOException("Expected " + kind + " records");
+            }
+            int count = in.getInt();
+            String[] table = new String[in.getInt()];
+            for (int i = 0; i < table.length; i++) {
+                byte[] utf8 = new byte[in.getInt()];
+                in.get(utf8);
+                table[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            if (in.remaining() != (long) count * width) {
+                throw new IOException("Expected " + count + " records of " + width + " bytes");
+            }
+            for (int i = 0; i < count; i++) {
+                Object entity = readRecord(kind, in, table);
+                if (stamped) {
+                    ((Versioned) entity).setVersion(in.getLong());
+                }
+                sink.accept(entity);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new IOException("Truncated snapshot", ex);
+        }
+    }
+
+    static int width(Journal.Kind kind) {
+        return width(kind, true);
+    }
+
+    private static int width(Journal.Kind kind, boolean stamped) {
+        return fieldBytes(kind) + (stamped ? 8 : 0);
+    }
+
+    private static int fieldBytes(Journal.Kind kind) {
+        switch (kind) {
+            case EQUIPMENT:
+                // id, name, category, dailyRate, depositAmount, availableUnits, underMaintenance
+                return 4 + 4 + 4 + 8 + 8 + 4 + 1;
+            case CUSTOMER:
+                // id, name, phone
+                return 4 + 4 + 4;
+            case RENTAL:
+                // id, equipmentId, customerId, startDate, dueDate, depositAmount, returnedOn, lateFeeCharged
+                return 4 + 4 + 4 + 4 + 4 + 8 + 4 + 8;
+            case RESERVATION:
+                // id, equipmentId, customerId, requestedOn, status
+                return 4 + 4 + 4 + 4 + 1;
+            default:
+                throw new IllegalStateException("Unknown collection " + kind);
+        }
+    }
+
+    private static String[] strings(Journal.Kind kind, Object entity) {
+        switch (kind) {
+            case EQUIPMENT:
+                Equipment equipment = (Equipment) entity;
+                return new String[] {equipment.getName(), equipment.getCategory()};
+            case CUSTOMER:
+                Customer customer = (Customer) entity;
+                return new String[] {customer.getName(), customer.getPhone()};
+            default:
+                return new String[0];
+        }
+    }
+
+    private static void writeRecord(Journal.Kind kind, Object entity, int[] refs, ByteBuffer out) {
+        switch (kind) {
+            case EQUIPMENT:
+                Equipment equipment = (Equipment) entity;
+                out.putInt(equipment.getId()).putInt(refs[0]).putInt(refs[1])
+                        .putDouble(equipment.getDailyRate()).putDouble(equipment.getDepositAmount())
+                        .putInt(equipment.getAvailableUnits()).put((byte) (equipment.isUnderMaintenance() ? 1 : 0));
+                break;
+            case CUSTOMER:
+                Customer customer = (Customer) entity;
+                out.putInt(customer.getId()).putInt(refs[0]).putInt(refs[1]);
+                break;
+            case RENTAL:
+                Rental rental = (Rental) entity;
+                out.putInt(rental.getId()).putInt(rental.getEquipmentId()).putInt(rental.getCustomerId())
+                        .putInt(epochDay(rental.getStartDate())).putInt(epochDay(rental.getDueDate()))
+                        .putDouble(rental.getDepositAmount()).putInt(epochDay(rental.getReturnedOn()))
+                        .putDouble(rental.getLateFeeCharged());
+                break;
+            case RESERVATION:
+                Reservation reservation = (Reservation) entity;
+                Reservation.Status status = reservation.getStatus();
+                out.putInt(reservation.getId()).putInt(reservation.getEquipmentId())
+                        .putInt(reservation.getCustomerId()).putInt(epochDay(reservation.getRequestedOn()))
+                        .put((byte) (status == null ? -1 : status.ordinal()));
+                break;
+            default:
+                throw new IllegalStateException("Unknown collection " + kind);
+        }
+        out.putLong(((Versioned) entity).getVersion());
+    }
+
+    private static Object readRecord(Journal.Kind kind, ByteBuffer in, String[] table) {
+        switch (kind) {
+            case EQUIPMENT:
+                return new Equipment(in.getInt(), string(table, in.getInt()), string(table, in.getInt()),
+                        in.getDouble(), in.getDouble(), in.getInt(), in.get() != 0);
+            case CUSTOMER:
+                return new Customer(in.getInt(), string(table, in.getInt()), string(table, in.getInt()));
+            case RENTAL:
+                Rental rental = new Rental(in.getInt(), in.getInt(), in.getInt(), date(in.getInt()),
+                        date(in.getInt()), in.getDouble());
+                rental.setReturnedOn(date(in.getInt()));
+                rental.setLateFeeCharged(in.getDouble());
+                return rental;
+            case RESERVATION:
+                int id = in.getInt();
+                int equipmentId = in.getInt();
+                int customerId = in.getInt();
+                LocalDate requestedOn = date(in.getInt());
+                byte status = in.get();
+                return new Reservation(id, equipmentId, customerId, requestedOn,
+                        status < 0 ? null : Reservation.Status.values()[status]);
+            default:
+                throw new IllegalStateException("Unknown collection " + kind);
+        }
+    }
+
+    private static String string(String[] table, int index) {
+        return index < 0 ? null : table[index];
+    }
+
+    private static int epochDay(LocalDate date) {
+        if (date == null) {
+            return NO_DATE;
+        }
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -0,0 +1,191 @@
+package org.equipment.data;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Hands mutating operations to one writer thread through a ring of pre-allocated slots. Producers claim a
+ * sequence number, fill the slot it maps to and publish it; the writer runs every published command in
+ * sequence order, then ends the drain cycle with {@code afterBatch} (making the batch durable) before
+ * completing the commands' futures, so a completed command has been persisted. Audit entries written by the
+ * commands are handed to {@link AuditLog} once per cycle.
+ * <p>
+ * Producers that get a full ring ahead of the writer wait for their slot to be freed; an idle writer parks
+ * until the next command is published.
+ */
+final class CommandQueue {
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Slot[] ring;
+    private final int mask;
+    private final Runnable afterBatch;
+    private final AtomicLong claimed = new AtomicLong();
+    private final Thread writer;
+    // Every sequence below this one has been completed and its slot may be reused.
+    private volatile long consumed;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    CommandQueue(int capacity, Runnable afterBatch) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Command queue size must be positive.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.afterBatch = afterBatch;
+        this.writer = new Thread(this::drainLoop, "datastore-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+
+    boolean isWriter() {
+        return Thread.currentThread() == writer;
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<T> command) {
+        if (closed) {
+            throw new IllegalStateException("Command queue is closed.");
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed >= ring.length) {
+            LockSupport.parkNanos(this, 1_000L);
+        }
+        Slot slot = ring[(int) sequence & mask];
+        slot.command = command;
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Object> untyped = (CompletableFuture<Object>) future;
+        slot.future = untyped;
+        slot.published = sequence;
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+        return future;
+    }
+
+    /**
+     * Runs {@code command} on the writer thread and waits for it, rethrowing what it threw.
+     */
+    <T> T call(Supplier<T> command) {
+        try {
+            return submit(command).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Stops the writer once every command published so far has run. Callers must have stopped submitting.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            long end = next;
+            while (end - next < ring.length && ring[(int) end & mask].published == end) {
+                end++;
+            }
+            if (end == next) {
+                if (closed) {
+                    return;
+                }
+                if (++idle < IDLE_SPINS) {
+                    Thread.yield();
+                    continue;
+                }
+                idle = 0;
+                waiting = true;
+                if (ring[(int) next & mask].published != next && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+                continue;
+            }
+            idle = 0;
+            runBatch(next, end);
+            next = end;
+        }
+    }
+
+    private void runBatch(long from, long to) {
+        AuditLog.hold();
+        try {
+            for (long sequence = from; sequence < to; sequence++) {
+                Slot slot = ring[(int) sequence & mask];
+                try {
+                    slot.result = slot.command.get();
+                } catch (RuntimeException | Error ex) {
+                    slot.error = ex;
+                }
+            }
+            try {
+                afterBatch.run();
+            } catch (RuntimeException ex) {
+                for (long sequence = from; sequence < to; sequence++) {
+                    Slot slot = ring[(int) sequence & mask];
+                    if (slot.error == null) {
+                        slot.error = ex;
+                    }
+                }
+            }
+        } finally {
+            AuditLog.release();
+        }
+        for (long sequence = from; sequence < to; sequence++) {
+            Slot slot = ring[(int) sequence & mask];
+            CompletableFuture<Object> future = slot.future;
+            Object result = slot.result;
+            Throwable error = slot.error;
+            slot.command = null;
+            slot.future = null;
+            slot.result = null;
+            slot.error = null;
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+        consumed = to;
+    }
+
+    private static final class Slot {
+        // Sequence of the command currently held; written last by the producer, read first by the writer.
+        private volatile long published = -1;
+        private Supplier<?> command;
+        private CompletableFuture<Object> future;
+        private Object result;
+        private Throwable error;
+    }
+}
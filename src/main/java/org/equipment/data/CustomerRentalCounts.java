@@ -0,0 +1,110 @@
+package org.equipment.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rentals per customer, in total and in daily buckets keyed by start date, so that top-K queries over all
+ * time or over a date window never scan rentals. A rental's customer and start date never change, so the
+ * counts only grow: archiving a rental does not touch them. Not thread-safe: the store guards it with its lock.
+ * <p>
+ * The store saves the counts of archived rentals in the same binary layout as {@link UsageRollups}: magic,
+ * version and fingerprint, then the totals and the daily buckets.
+ */
+final class CustomerRentalCounts {
+    static final int MAGIC = 0x45435231; // "ECR1"
+    static final short VERSION = 1;
+
+    private final IntLongMap total = new IntLongMap();
+    private final TreeMap<Long, IntLongMap> daily = new TreeMap<>();
+
+    void add(int customerId, LocalDate startDate) {
+        total.add(customerId, 1);
+        if (startDate != null) {
+            daily.computeIfAbsent(startDate.toEpochDay(), day -> new IntLongMap()).add(customerId, 1);
+        }
+    }
+
+    void clear() {
+        total.clear();
+        daily.clear();
+    }
+
+    long count(int customerId) {
+        return total.get(customerId);
+    }
+
+    /**
+     * Customers with the most rentals, best first.
+     */
+    int[] top(int limit) {
+        return total.top(limit);
+    }
+
+    /**
+     * Rentals per customer started between {@code from} and {@code to} inclusive, merged from the daily
+     * buckets inside the window only.
+     */
+    IntLongMap window(LocalDate from, LocalDate to) {
+        IntLongMap merged = new IntLongMap();
+        if (from.isAfter(to)) {
+            return merged;
+        }
+        for (IntLongMap day : daily.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            merged.addAll(day);
+        }
+        return merged;
+    }
+
+    byte[] encode(long fingerprint) {
+        int bytes = 4 + 2 + 8 + total.encodedBytes() + 4;
+        for (IntLongMap day : daily.values()) {
+            bytes += 8 + day.encodedBytes();
+        }
+        ByteBuffer out = ByteBuffer.allocate(bytes);
+        out.putInt(MAGIC).putShort(VERSION).putLong(fingerprint);
+        total.writeTo(out);
+        out.putInt(daily.size());
+        for (Map.Entry<Long, IntLongMap> day : daily.entrySet()) {
+            out.putLong(day.getKey());
+            day.getValue().writeTo(out);
+        }
+        return out.array();
+    }
+
+    /**
+     * Replaces the counts with the saved ones if {@code path} describes rentals with {@code fingerprint}.
+     *
+     * @return {@code false} if the file is missing or stale, leaving the counts empty
+     */
+    boolean load(Path path, long fingerprint) {
+        clear();
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.getInt() != MAGIC || in.getShort() != VERSION || in.getLong() != fingerprint) {
+                return false;
+            }
+            total.readFrom(in);
+            for (int days = in.getInt(); days > 0; days--) {
+                long day = in.getLong();
+                IntLongMap counts = new IntLongMap();
+                counts.readFrom(in);
+                daily.put(day, counts);
+            }
+            return true;
+        } catch (IOException | BufferUnderflowException ex) {
+            System.err.println("Ignoring unreadable " + path + ": " + ex.getMessage());
+            clear();
+            return false;
+        }
+    }
+}
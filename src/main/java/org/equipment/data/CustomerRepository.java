@@ -0,0 +1,14 @@
+package org.equipment.data;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.equipment.domain.Customer;
+
+public interface CustomerRepository {
+    List<Customer> findAll();
+
+    Optional<Customer> findById(int id);
+
+    Customer add(String name, String phone);
+}
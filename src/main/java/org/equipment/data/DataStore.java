@@ -6,49 +6,149 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.equipment.domain.Customer;
 import org.equipment.domain.Equipment;
 import org.equipment.domain.Rental;
 import org.equipment.domain.Reservation;
-
-import com.fasterxml.jackson.core.type.TypeReference;
+import org.equipment.domain.Versioned;
 
 /**
- * JSON-backed store that keeps deterministic defaults for tests while persisting
- * user changes into the local data directory.
+ * In-memory store that keeps deterministic defaults for tests while persisting user changes through a
+ * pluggable {@link StoreBackend}, chosen with {@code equipment.store.backend} (see {@link Repositories}
+ * for the interfaces the services use).
+ * <p>
+ * With the default {@code snapshot} backend each collection has a binary snapshot file. Individual mutations
+ * are appended to {@code journal.log} and replayed on top of the snapshots at startup; once the journal grows past
+ * {@code equipment.journal.compactThreshold} records it is folded back into the snapshots on a background
+ * thread. With {@code equipment.store.writeBehind=true} nothing is written on the caller's thread: changes
+ * only mark their collection dirty, and a background flusher rewrites each dirty snapshot at most once every
+ * {@code equipment.store.flushMillis} and once more on {@link #shutdown()}. JSON is only used to exchange
+ * data with operators, through {@link #exportJson(Path)} and {@link #importJson(Path)}.
+ * <p>
+ * Rentals returned more than {@code equipment.archive.afterDays} days ago (default 90, {@code 0} to keep
+ * everything in memory) are moved to a compressed {@link RentalArchive} under {@code archive/} at startup and
+ * whenever the store checkpoints, so the heap holds the working set rather than every rental ever made. The
+ * collections and indexes cover the working set; {@link #findRental(int)} falls through to the archive and
+ * {@link #forEachArchivedRental(Consumer)} reads it sequentially.
+ * <p>
+ * Thread safety: the collections and indexes are guarded by one read/write lock. Lookups, index queries
+ * and checkpoints share the read lock; every structural change takes the write lock for a short, O(1)
+ * critical section. {@code get*} return point-in-time copies, so callers may iterate while others write.
+ * {@link #snapshot()} gives a consistent view of all four collections without copying or locking: every
+ * recorded change also updates persistent lists of entity copies, and each write publishes their new roots.
+ * Changes to an equipment item's stock are serialized by {@link #equipmentLock(int)}, one of a fixed set
+ * of lock stripes keyed by equipment id, which the services hold across their check-then-act sequences.
+ * <p>
+ * With {@code equipment.store.writer=queue} the services instead hand every mutating operation to
+ * {@link #execute(Supplier)}, which runs them one at a time on a single writer thread fed by a pre-allocated
+ * ring of {@code equipment.store.queueSize} slots (default 1024). The writer syncs the backend and hands
+ * over audit entries once per batch of queued commands rather than once per change, and the locks above
+ * are then never contended.
  */
 public final class DataStore {
     private static final Path DATA_DIR = Paths
             .get(System.getProperty("equipment.data.dir", "data"));
-    private static final Path EQUIPMENT_FILE = DATA_DIR.resolve("equipment.json");
-    private static final Path CUSTOMERS_FILE = DATA_DIR.resolve("customers.json");
-    private static final Path RENTALS_FILE = DATA_DIR.resolve("rentals.json");
-    private static final Path RESERVATIONS_FILE = DATA_DIR.resolve("reservations.json");
-
-    private static final TypeReference<List<Equipment>> EQUIPMENT_TYPE = new TypeReference<List<Equipment>>() {
-    };
-    private static final TypeReference<List<Customer>> CUSTOMERS_TYPE = new TypeReference<List<Customer>>() {
-    };
-    private static final TypeReference<List<Rental>> RENTALS_TYPE = new TypeReference<List<Rental>>() {
-    };
-    private static final TypeReference<List<Reservation>> RESERVATIONS_TYPE = new TypeReference<List<Reservation>>() {
-    };
 
     private static final List<Equipment> EQUIPMENT = new ArrayList<>();
     private static final List<Customer> CUSTOMERS = new ArrayList<>();
     private static final List<Rental> RENTALS = new ArrayList<>();
     private static final List<Reservation> RESERVATIONS = new ArrayList<>();
 
+    private static final IntIndex<Equipment> EQUIPMENT_BY_ID = new IntIndex<>();
+    private static final IntIndex<Customer> CUSTOMERS_BY_ID = new IntIndex<>();
+    private static final IntIndex<Rental> RENTALS_BY_ID = new IntIndex<>();
+    private static final IntIndex<Reservation> RESERVATIONS_BY_ID = new IntIndex<>();
+    private static final Map<String, Integer> ACTIVE_BY_CATEGORY = new HashMap<>();
+    // Unreturned rentals bucketed by due date; DUE_DATE_KEYS remembers the bucket each rental was filed under.
+    private static final TreeMap<LocalDate, Set<Rental>> ACTIVE_BY_DUE_DATE = new TreeMap<>();
+    private static final IntIndex<LocalDate> DUE_DATE_KEYS = new IntIndex<>();
+    private static final IntIndex<List<Rental>> RENTALS_BY_CUSTOMER = new IntIndex<>();
+    private static final IntIndex<List<Rental>> RENTALS_BY_EQUIPMENT = new IntIndex<>();
+    private static final IntIndex<List<Reservation>> RESERVATIONS_BY_CUSTOMER = new IntIndex<>();
+    private static final IntIndex<Map<Reservation.Status, Set<Reservation>>> RESERVATIONS_BY_EQUIPMENT =
+            new IntIndex<>();
+    private static final Map<Reservation.Status, Set<Reservation>> RESERVATIONS_BY_STATUS =
+            new EnumMap<>(Reservation.Status.class);
+    private static final RentalTotals TOTALS = new RentalTotals();
+    private static final CustomerRentalCounts CUSTOMER_COUNTS = new CustomerRentalCounts();
+    private static final UsageRollups ROLLUPS = new UsageRollups();
+
     private static final AtomicInteger EQUIPMENT_SEQ = new AtomicInteger(1000);
     private static final AtomicInteger CUSTOMER_SEQ = new AtomicInteger(5000);
     private static final AtomicInteger RENTAL_SEQ = new AtomicInteger(9000);
     private static final AtomicInteger RESERVATION_SEQ = new AtomicInteger(12000);
+    // Bumped by every change to the stored data, so that derived results can tell whether they are current.
+    private static final AtomicLong VERSION = new AtomicLong();
+    private static final SnapshotLists SNAPSHOT_LISTS = new SnapshotLists();
+    private static volatile StoreSnapshot published = SNAPSHOT_LISTS.snapshot(0);
+    private static volatile RuntimeException recordFailure;
+
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static final int STRIPES = 64;
+    private static final Lock[] EQUIPMENT_LOCKS = new Lock[STRIPES];
 
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            EQUIPMENT_LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private static final StoreBackend.State STATE = new StoreBackend.State() {
+        @Override
+        public List<?> items(Journal.Kind kind) {
+            return itemsOf(kind);
+        }
+
+        @Override
+        public <T> T read(Supplier<T> action) {
+            return DataStore.read(action);
+        }
+    };
+    private static final StoreBackend BACKEND = StoreBackend.create(
+            System.getProperty("equipment.store.backend", "snapshot"), DATA_DIR, STATE);
+    private static final RentalArchive ARCHIVE = new RentalArchive(DATA_DIR.resolve("archive"));
+    private static final int ARCHIVE_AFTER_DAYS = Integer.getInteger("equipment.archive.afterDays", 90);
+    private static final Path ROLLUPS_FILE = DATA_DIR.resolve("rollups.dat");
+    private static final Path ARCHIVED_ROLLUPS_FILE = DATA_DIR.resolve("archive").resolve("rollups.dat");
+    private static final Path ARCHIVED_COUNTS_FILE = DATA_DIR.resolve("archive").resolve("counts.dat");
+    private static final AtomicBoolean CHECKPOINT_PENDING = new AtomicBoolean();
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "datastore-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile CommandQueue commands = "queue".equals(System.getProperty("equipment.store.writer"))
+            ? new CommandQueue(Integer.getInteger("equipment.store.queueSize", 1024), DataStore::endBatch)
+            : null;
     private static boolean seeded = false;
 
     private DataStore() {
@@ -59,27 +159,188 @@ public final class DataStore {
             return;
         }
         loadOrSeed();
+        archiveExpired();
         AuditLog.configure(DATA_DIR);
         seeded = true;
     }
 
+    /**
+     * Switches the {@code snapshot} backend between journaling every change and write-behind.
+     */
+    static void writeBehind(boolean enabled) {
+        if (BACKEND instanceof SnapshotBackend) {
+            ((SnapshotBackend) BACKEND).writeBehind(enabled);
+        } else if (enabled) {
+            throw new IllegalStateException("Write-behind needs the snapshot backend.");
+        }
+    }
+
+    /**
+     * Switches between running service operations on the caller's thread and handing them to the single
+     * writer thread. Nothing may be submitted while the mode changes.
+     */
+    static void commandQueue(boolean enabled) {
+        CommandQueue current = commands;
+        if (enabled && current == null) {
+            commands = new CommandQueue(Integer.getInteger("equipment.store.queueSize", 1024), DataStore::endBatch);
+        } else if (!enabled && current != null) {
+            commands = null;
+            current.close();
+        }
+    }
+
+    /**
+     * Runs a mutating operation as one command. With {@code equipment.store.writer=queue} it is run on the
+     * store's writer thread, after the commands submitted before it, and this call waits until it has been
+     * applied and persisted; exceptions it throws are rethrown here. Otherwise, or when already on the writer
+     * thread, it runs right away on the caller's thread.
+     */
+    public static <T> T execute(Supplier<T> operation) {
+        CommandQueue queue = commands;
+        if (queue == null || queue.isWriter()) {
+            return operation.get();
+        }
+        return queue.call(operation);
+    }
+
+    /**
+     * Like {@link #execute(Supplier)}, but returns as soon as the operation is queued. The future completes
+     * once it has been applied and persisted.
+     */
+    public static <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        CommandQueue queue = commands;
+        if (queue == null || queue.isWriter()) {
+            CompletableFuture<T> done = new CompletableFuture<>();
+            try {
+                done.complete(operation.get());
+            } catch (RuntimeException ex) {
+                done.completeExceptionally(ex);
+            }
+            return done;
+        }
+        return queue.submit(operation);
+    }
+
+    /**
+     * Writes out changes the backend still holds only in memory, such as dirty write-behind snapshots.
+     */
+    public static void flush() {
+        BACKEND.flush();
+    }
+
+    /**
+     * Flushes pending changes and the audit log. Safe to call more than once.
+     */
+    public static void shutdown() {
+        flush();
+        AuditLog.shutdown();
+    }
+
+    /**
+     * Writes every collection as pretty-printed JSON ({@code equipment.json}, {@code customers.json}, ...)
+     * into {@code dir}, for operators to inspect or edit. Reads a {@link #snapshot()}, so writes carry on
+     * while the files are written; rentals archived meanwhile are exported once, from the snapshot.
+     */
+    public static void exportJson(Path dir) {
+        StoreSnapshot snapshot = snapshot();
+        JsonStore.write(jsonFile(dir, Journal.Kind.EQUIPMENT), snapshot.equipment());
+        JsonStore.write(jsonFile(dir, Journal.Kind.CUSTOMER), snapshot.customers());
+        JsonStore.write(jsonFile(dir, Journal.Kind.RESERVATION), snapshot.reservations());
+        List<Rental> rentals = new ArrayList<>(snapshot.rentals());
+        Set<Integer> inSnapshot = new HashSet<>();
+        rentals.forEach(rental -> inSnapshot.add(rental.getId()));
+        ARCHIVE.forEach(rental -> {
+            if (!inSnapshot.contains(rental.getId())) {
+                rentals.add(rental);
+            }
+        });
+        JsonStore.write(jsonFile(dir, Journal.Kind.RENTAL), rentals);
+    }
+
+    /**
+     * Replaces the whole store with the JSON files in {@code dir}, as written by {@link #exportJson(Path)},
+     * and checkpoints the result. Every collection's file must be present. The archive is emptied and
+     * refilled from the imported rentals.
+     */
+    public static void importJson(Path dir) {
+        for (Journal.Kind kind : Journal.Kind.values()) {
+            if (!Files.exists(jsonFile(dir, kind))) {
+                throw new IllegalArgumentException("Missing " + jsonFile(dir, kind));
+            }
+        }
+        write(() -> {
+            ARCHIVE.clear();
+            load(loader -> {
+                for (Journal.Kind kind : Journal.Kind.values()) {
+                    JsonStore.stream(jsonFile(dir, kind), kind.type(), entity -> loader.upsert(kind, entity));
+                }
+                return true;
+            });
+        });
+        archiveExpired();
+    }
+
+    private static Path jsonFile(Path dir, Journal.Kind kind) {
+        return dir.resolve(kind.collection() + ".json");
+    }
+
+    private static List<?> itemsOf(Journal.Kind kind) {
+        switch (kind) {
+            case EQUIPMENT:
+                return EQUIPMENT;
+            case CUSTOMER:
+                return CUSTOMERS;
+            case RENTAL:
+                return RENTALS;
+            case RESERVATION:
+                return RESERVATIONS;
+            default:
+                throw new IllegalStateException("Unknown collection " + kind);
+        }
+    }
+
     private static void loadOrSeed() {
+        write(() -> load(BACKEND::load));
+    }
+
+    /**
+     * Lets {@code source}, normally the backend, stream entities straight into the lists and primary indexes,
+     * tracking the highest id per kind in the same pass. The backend is only asked to checkpoint when the
+     * source says so, e.g. after defaults had to be seeded.
+     */
+    private static void load(Predicate<StoreBackend.Loader> source) {
         EQUIPMENT.clear();
         CUSTOMERS.clear();
         RENTALS.clear();
         RESERVATIONS.clear();
+        EQUIPMENT_BY_ID.clear();
+        CUSTOMERS_BY_ID.clear();
+        RENTALS_BY_ID.clear();
+        RESERVATIONS_BY_ID.clear();
 
-        EQUIPMENT.addAll(JsonStore.read(EQUIPMENT_FILE, EQUIPMENT_TYPE, defaultEquipment()));
-        CUSTOMERS.addAll(JsonStore.read(CUSTOMERS_FILE, CUSTOMERS_TYPE, defaultCustomers()));
-        RENTALS.addAll(JsonStore.read(RENTALS_FILE, RENTALS_TYPE, defaultRentals()));
-        RESERVATIONS.addAll(JsonStore.read(RESERVATIONS_FILE, RESERVATIONS_TYPE, new ArrayList<>()));
+        VERSION.incrementAndGet();
+        Loading loading = new Loading();
+        boolean checkpoint = source.test(loading);
+        ARCHIVE.open();
+        checkpoint |= dropRentals(ARCHIVE.lastBatchIds());
+        rebuildRentalIndexes();
+        countCustomerRentals();
+        rebuildReservationIndexes();
+        for (Journal.Kind kind : Journal.Kind.values()) {
+            SNAPSHOT_LISTS.rebuild(kind, itemsOf(kind));
+        }
+        if (BACKEND instanceof MemoryBackend || !ROLLUPS.load(ROLLUPS_FILE, rentalFingerprint())) {
+            rebuildRollups();
+        }
 
-        EQUIPMENT_SEQ.set(nextSeq(EQUIPMENT.stream().mapToInt(Equipment::getId).max().orElse(999)));
-        CUSTOMER_SEQ.set(nextSeq(CUSTOMERS.stream().mapToInt(Customer::getId).max().orElse(4999)));
-        RENTAL_SEQ.set(nextSeq(RENTALS.stream().mapToInt(Rental::getId).max().orElse(8999)));
-        RESERVATION_SEQ.set(nextSeq(RESERVATIONS.stream().mapToInt(Reservation::getId).max().orElse(11999)));
+        EQUIPMENT_SEQ.set(nextSeq(loading.maxId(Journal.Kind.EQUIPMENT)));
+        CUSTOMER_SEQ.set(nextSeq(loading.maxId(Journal.Kind.CUSTOMER)));
+        RENTAL_SEQ.set(nextSeq(Math.max(loading.maxId(Journal.Kind.RENTAL), ARCHIVE.maxId())));
+        RESERVATION_SEQ.set(nextSeq(loading.maxId(Journal.Kind.RESERVATION)));
 
-        persistAll();
+        if (checkpoint) {
+            persistAll();
+        }
     }
 
     private static List<Equipment> defaultEquipment() {
@@ -115,80 +376,917 @@ public final class DataStore {
         return currentMax + 1;
     }
 
+    /**
+     * Receives entities from the backend at startup. Later states of the same id replace earlier ones in
+     * place, found through a temporary position index rather than a list scan.
+     */
+    private static final class Loading implements StoreBackend.Loader {
+        // Highest id seen so far, by Journal.Kind ordinal.
+        private final int[] maxIds = {999, 4999, 8999, 11999};
+        private final List<IntIndex<Integer>> positions = new ArrayList<>();
+
+        private Loading() {
+            for (int i = 0; i < Journal.Kind.values().length; i++) {
+                positions.add(new IntIndex<>());
+            }
+        }
+
+        int maxId(Journal.Kind kind) {
+            return maxIds[kind.ordinal()];
+        }
+
+        @Override
+        public void upsert(Journal.Kind kind, Object entity) {
+            switch (kind) {
+                case EQUIPMENT:
+                    Equipment equipment = (Equipment) entity;
+                    put(kind, EQUIPMENT, EQUIPMENT_BY_ID, equipment, equipment.getId());
+                    break;
+                case CUSTOMER:
+                    Customer customer = (Customer) entity;
+                    put(kind, CUSTOMERS, CUSTOMERS_BY_ID, customer, customer.getId());
+                    break;
+                case RENTAL:
+                    Rental rental = (Rental) entity;
+                    put(kind, RENTALS, RENTALS_BY_ID, rental, rental.getId());
+                    break;
+                case RESERVATION:
+                    Reservation reservation = (Reservation) entity;
+                    put(kind, RESERVATIONS, RESERVATIONS_BY_ID, reservation, reservation.getId());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown record " + kind);
+            }
+        }
+
+        @Override
+        public void missing(Journal.Kind kind) {
+            switch (kind) {
+                case EQUIPMENT:
+                    defaultEquipment().forEach(item -> upsert(kind, item));
+                    break;
+                case CUSTOMER:
+                    defaultCustomers().forEach(item -> upsert(kind, item));
+                    break;
+                case RENTAL:
+                    defaultRentals().forEach(item -> upsert(kind, item));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private <T> void put(Journal.Kind kind, List<T> items, IntIndex<T> index, T item, int id) {
+            IntIndex<Integer> positionIndex = positions.get(kind.ordinal());
+            Integer position = positionIndex.get(id);
+            index.put(id, item);
+            if (position == null) {
+                positionIndex.put(id, items.size());
+                items.add(item);
+            } else {
+                items.set(position, item);
+            }
+            maxIds[kind.ordinal()] = Math.max(maxIds[kind.ordinal()], id);
+        }
+    }
+
+    /**
+     * Removes rentals from the list and the primary index; the caller rebuilds the derived indexes.
+     */
+    private static boolean dropRentals(Set<Integer> ids) {
+        if (ids.isEmpty()) {
+            return false;
+        }
+        boolean removed = RENTALS.removeIf(rental -> ids.contains(rental.getId()));
+        for (int id : ids) {
+            RENTALS_BY_ID.remove(id);
+        }
+        return removed;
+    }
+
+    /**
+     * Moves rentals returned before {@code returnedBefore} from memory to the archive, then checkpoints so
+     * that the snapshots stop carrying them.
+     *
+     * @return the number of rentals archived
+     */
+    public static int archiveReturnedRentals(LocalDate returnedBefore) {
+        return write(() -> {
+            List<Rental> expired = new ArrayList<>();
+            Set<Integer> ids = new HashSet<>();
+            for (Rental rental : RENTALS) {
+                if (rental.isReturned() && rental.getReturnedOn().isBefore(returnedBefore)) {
+                    expired.add(rental);
+                    ids.add(rental.getId());
+                }
+            }
+            if (expired.isEmpty()) {
+                return 0;
+            }
+            archive(expired);
+            VERSION.incrementAndGet();
+            dropRentals(ids);
+            rebuildRentalIndexes();
+            SNAPSHOT_LISTS.rebuild(Journal.Kind.RENTAL, RENTALS);
+            persistAll();
+            return expired.size();
+        });
+    }
+
+    /**
+     * Applies {@code equipment.archive.afterDays}. The memory backend keeps everything on the heap.
+     *
+     * @return {@code true} if anything was archived, which includes a checkpoint
+     */
+    private static boolean archiveExpired() {
+        if (ARCHIVE_AFTER_DAYS <= 0 || BACKEND instanceof MemoryBackend) {
+            return false;
+        }
+        return archiveReturnedRentals(LocalDate.now().minusDays(ARCHIVE_AFTER_DAYS)) > 0;
+    }
+
+    /**
+     * Streams every archived rental, oldest first, without loading the archive into memory.
+     */
+    public static void forEachArchivedRental(Consumer<Rental> visitor) {
+        ARCHIVE.forEach(visitor);
+    }
+
+    /**
+     * Number of archive segments, each of which {@link #forEachArchivedRental(int, Consumer)} reads on its own.
+     */
+    public static int archivedSegments() {
+        return ARCHIVE.segmentCount();
+    }
+
+    /**
+     * Streams the archived rentals of one segment, {@code 0} being the oldest.
+     */
+    public static void forEachArchivedRental(int segment, Consumer<Rental> visitor) {
+        ARCHIVE.forEach(segment, visitor);
+    }
+
+    /**
+     * Counts every rental ever made: the archived ones' counts are loaded from {@code archive/counts.dat}, then
+     * the working set is added. Unlike the other rental indexes the counts never need rebuilding afterwards,
+     * since in-place edits cannot change a rental's customer or start date.
+     */
+    private static void countCustomerRentals() {
+        archivedCounts(CUSTOMER_COUNTS);
+        for (Rental rental : RENTALS) {
+            CUSTOMER_COUNTS.add(rental.getCustomerId(), rental.getStartDate());
+        }
+    }
+
+    /**
+     * Recomputes the usage rollups from every rental: the archived rentals' share is loaded from
+     * {@code archive/rollups.dat}, then the working set is rolled up. Revenue is valued at the daily rates in
+     * effect when the working set is rebuilt or a rental was archived, whereas incremental updates keep the
+     * rate in effect when each day was booked.
+     */
+    private static void rebuildRollups() {
+        archivedRollups(ROLLUPS);
+        for (Rental rental : RENTALS) {
+            rollUp(ROLLUPS, rental);
+        }
+    }
+
+    // Replaces the contents of into with the archived rentals' rollups.
+    private static void archivedRollups(UsageRollups into) {
+        long archived = ARCHIVE.size();
+        if (into.load(ARCHIVED_ROLLUPS_FILE, archived) || archived == 0) {
+            return;
+        }
+        ARCHIVE.forEach(rental -> rollUp(into, rental));
+        JsonStore.writeSerialized(ARCHIVED_ROLLUPS_FILE, into.encode(archived));
+    }
+
+    // Replaces the contents of into with the archived rentals' customer counts.
+    private static void archivedCounts(CustomerRentalCounts into) {
+        long archived = ARCHIVE.size();
+        if (into.load(ARCHIVED_COUNTS_FILE, archived) || archived == 0) {
+            return;
+        }
+        ARCHIVE.forEach(rental -> into.add(rental.getCustomerId(), rental.getStartDate()));
+        JsonStore.writeSerialized(ARCHIVED_COUNTS_FILE, into.encode(archived));
+    }
+
+    /**
+     * Appends a batch to the archive. Archived rentals never change, so their share of the rollups and
+     * customer counts is saved next to the archive index, tagged with the archive size, and extended here
+     * with each batch. The archive is only scanned again when a file is missing or does not match its size,
+     * e.g. after a crash right after appending.
+     */
+    private static void archive(List<Rental> rentals) {
+        UsageRollups rollups = new UsageRollups();
+        archivedRollups(rollups);
+        CustomerRentalCounts counts = new CustomerRentalCounts();
+        archivedCounts(counts);
+        ARCHIVE.append(rentals);
+        for (Rental rental : rentals) {
+            rollUp(rollups, rental);
+            counts.add(rental.getCustomerId(), rental.getStartDate());
+        }
+        JsonStore.writeSerialized(ARCHIVED_ROLLUPS_FILE, rollups.encode(ARCHIVE.size()));
+        JsonStore.writeSerialized(ARCHIVED_COUNTS_FILE, counts.encode(ARCHIVE.size()));
+    }
+
+    private static void rollUp(UsageRollups into, Rental rental) {
+        if (rental.getStartDate() == null) {
+            return;
+        }
+        rollUp(into, rental, rental.getStartDate(), rental.getStartDate());
+        if (rental.isReturned()) {
+            into.lateFee(rental.getEquipmentId(), reportCategory(rental), rental.getReturnedOn(),
+                    rental.getLateFeeCharged());
+        }
+    }
+
+    /**
+     * Moves a rental's usage from the ends it had before a change to the ones it has now. A unit is out from
+     * the start date until it is returned, or until the due date while it is still out; it earns its daily
+     * rate for each of those days up to the due date.
+     */
+    private static void rollUp(UsageRollups into, Rental rental, LocalDate wasOutUntil,
+            LocalDate wasChargedUntil) {
+        if (rental.getStartDate() == null) {
+            return;
+        }
+        Equipment equipment = EQUIPMENT_BY_ID.get(rental.getEquipmentId());
+        String category = reportCategory(rental);
+        into.unitsOut(rental.getEquipmentId(), category, wasOutUntil, outUntil(rental));
+        into.revenue(rental.getEquipmentId(), category, equipment == null ? 0 : equipment.getDailyRate(),
+                wasChargedUntil, chargedUntil(rental));
+    }
+
+    private static LocalDate outUntil(Rental rental) {
+        if (rental.getStartDate() == null) {
+            return null;
+        }
+        LocalDate end = rental.isReturned() ? rental.getReturnedOn() : rental.getDueDate();
+        return end.isBefore(rental.getStartDate()) ? rental.getStartDate() : end;
+    }
+
+    private static LocalDate chargedUntil(Rental rental) {
+        LocalDate end = outUntil(rental);
+        if (end == null || !end.isAfter(rental.getDueDate())) {
+            return end;
+        }
+        return rental.getDueDate().isBefore(rental.getStartDate()) ? rental.getStartDate() : rental.getDueDate();
+    }
+
+    /**
+     * Identifies the rental history the rollups were saved for: working-set rentals and their mutable fields,
+     * plus the archive size, so archiving alone does not invalidate a checkpoint taken right after it.
+     */
+    private static long rentalFingerprint() {
+        long fingerprint = ARCHIVE.size();
+        for (Rental rental : RENTALS) {
+            long hash = rental.getId();
+            hash = hash * 31 + rental.getEquipmentId();
+            hash = hash * 31 + Objects.hashCode(rental.getStartDate());
+            hash = hash * 31 + Objects.hashCode(rental.getDueDate());
+            hash = hash * 31 + Objects.hashCode(rental.getReturnedOn());
+            hash = hash * 31 + Double.hashCode(rental.getLateFeeCharged());
+            hash *= 0x9E3779B97F4A7C15L;
+            fingerprint += hash ^ (hash >>> 29);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Recomputes the rental-derived indexes from the rental list.
+     */
+    private static void rebuildRentalIndexes() {
+        ACTIVE_BY_CATEGORY.clear();
+        ACTIVE_BY_DUE_DATE.clear();
+        DUE_DATE_KEYS.clear();
+        RENTALS_BY_CUSTOMER.clear();
+        RENTALS_BY_EQUIPMENT.clear();
+        TOTALS.reset(ARCHIVE.lateFees());
+        for (Rental rental : RENTALS) {
+            indexRentalOwners(rental);
+            TOTALS.collected(rental.getLateFeeCharged());
+            if (!rental.isReturned()) {
+                adjustActiveCount(rental, 1);
+                indexDueDate(rental);
+            }
+        }
+    }
+
+    private static void indexRentalOwners(Rental rental) {
+        listFor(RENTALS_BY_CUSTOMER, rental.getCustomerId()).add(rental);
+        listFor(RENTALS_BY_EQUIPMENT, rental.getEquipmentId()).add(rental);
+    }
+
+    private static void rebuildReservationIndexes() {
+        RESERVATIONS_BY_CUSTOMER.clear();
+        RESERVATIONS_BY_EQUIPMENT.clear();
+        RESERVATIONS_BY_STATUS.clear();
+        for (Reservation reservation : RESERVATIONS) {
+            listFor(RESERVATIONS_BY_CUSTOMER, reservation.getCustomerId()).add(reservation);
+            indexReservationStatus(reservation);
+        }
+    }
+
+    private static void indexReservationStatus(Reservation reservation) {
+        RESERVATIONS_BY_STATUS.computeIfAbsent(reservation.getStatus(), status -> new LinkedHashSet<>())
+                .add(reservation);
+        statusesFor(reservation.getEquipmentId())
+                .computeIfAbsent(reservation.getStatus(), status -> new LinkedHashSet<>())
+                .add(reservation);
+    }
+
+    // Removes from every status bucket so that an in-place status edit cannot strand an entry.
+    private static void unindexReservationStatus(Reservation reservation) {
+        for (Set<Reservation> bucket : RESERVATIONS_BY_STATUS.values()) {
+            bucket.remove(reservation);
+        }
+        for (Set<Reservation> bucket : statusesFor(reservation.getEquipmentId()).values()) {
+            bucket.remove(reservation);
+        }
+    }
+
+    private static Map<Reservation.Status, Set<Reservation>> statusesFor(int equipmentId) {
+        Map<Reservation.Status, Set<Reservation>> statuses = RESERVATIONS_BY_EQUIPMENT.get(equipmentId);
+        if (statuses == null) {
+            statuses = new EnumMap<>(Reservation.Status.class);
+            RESERVATIONS_BY_EQUIPMENT.put(equipmentId, statuses);
+        }
+        return statuses;
+    }
+
+    private static <T> List<T> listFor(IntIndex<List<T>> index, int key) {
+        List<T> items = index.get(key);
+        if (items == null) {
+            items = new ArrayList<>();
+            index.put(key, items);
+        }
+        return items;
+    }
+
+    private static <T> List<T> copyOf(Collection<T> items) {
+        return items == null ? Collections.<T>emptyList() : Collections.unmodifiableList(new ArrayList<>(items));
+    }
+
+    private static void indexDueDate(Rental rental) {
+        ACTIVE_BY_DUE_DATE.computeIfAbsent(rental.getDueDate(), date -> new LinkedHashSet<>()).add(rental);
+        DUE_DATE_KEYS.put(rental.getId(), rental.getDueDate());
+        TOTALS.due(rental.getDueDate(), reportCategory(rental), 1);
+    }
+
+    private static void unindexDueDate(Rental rental) {
+        LocalDate filedUnder = DUE_DATE_KEYS.remove(rental.getId());
+        if (filedUnder == null) {
+            return;
+        }
+        TOTALS.due(filedUnder, reportCategory(rental), -1);
+        Set<Rental> bucket = ACTIVE_BY_DUE_DATE.get(filedUnder);
+        bucket.remove(rental);
+        if (bucket.isEmpty()) {
+            ACTIVE_BY_DUE_DATE.remove(filedUnder);
+        }
+    }
+
+    private static void adjustActiveCount(Rental rental, int delta) {
+        TOTALS.active(rental, delta);
+        Equipment equipment = EQUIPMENT_BY_ID.get(rental.getEquipmentId());
+        if (equipment != null) {
+            ACTIVE_BY_CATEGORY.merge(categoryKey(equipment.getCategory()), delta, Integer::sum);
+        }
+    }
+
+    // Category as shown on reports: the equipment's own spelling, or "Unknown" once it left the catalog.
+    private static String reportCategory(Rental rental) {
+        Equipment equipment = EQUIPMENT_BY_ID.get(rental.getEquipmentId());
+        return equipment == null ? "Unknown" : equipment.getCategory();
+    }
+
+    static String categoryKey(String category) {
+        return category == null ? "" : category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Has the backend persist the complete state. The state is serialized under the read lock and, unless the
+     * caller already holds the write lock, written once it is released, so writers only wait for the copy.
+     */
     private static void persistAll() {
-        JsonStore.write(EQUIPMENT_FILE, EQUIPMENT);
-        JsonStore.write(CUSTOMERS_FILE, CUSTOMERS);
-        JsonStore.write(RENTALS_FILE, RENTALS);
-        JsonStore.write(RESERVATIONS_FILE, RESERVATIONS);
+        BACKEND.checkpoint();
+        if (!(BACKEND instanceof MemoryBackend)) {
+            JsonStore.writeSerialized(ROLLUPS_FILE, read(() -> ROLLUPS.encode(rentalFingerprint())));
+        }
+    }
+
+    private static <T> T read(Supplier<T> action) {
+        LOCK.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a change under the write lock and publishes the new {@link #snapshot()}, then waits for the backend
+     * to make it durable once the lock is released, so that concurrent writers share one fsync. On the command
+     * writer thread both are left to the end of the drain cycle, covering the whole batch. A change nested in
+     * another is published with the outer one.
+     */
+    private static <T> T write(Supplier<T> action) {
+        T result;
+        CommandQueue queue = commands;
+        boolean batched = queue != null && queue.isWriter();
+        LOCK.writeLock().lock();
+        try {
+            result = action.get();
+        } finally {
+            if (!batched && LOCK.getWriteHoldCount() == 1) {
+                publish();
+            }
+            LOCK.writeLock().unlock();
+        }
+        if (!LOCK.isWriteLockedByCurrentThread() && !batched) {
+            BACKEND.sync();
+        }
+        return result;
+    }
+
+    // Ends a drain cycle of the command writer: one snapshot and one sync for the whole batch.
+    private static void endBatch() {
+        LOCK.writeLock().lock();
+        try {
+            publish();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        BACKEND.sync();
+    }
+
+    // Caller holds the write lock.
+    private static void publish() {
+        if (SNAPSHOT_LISTS.changed()) {
+            published = SNAPSHOT_LISTS.snapshot(VERSION.get());
+        }
+    }
+
+    private static void write(Runnable action) {
+        write(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Lock stripe that serializes stock changes for one equipment item. Distinct items may share a stripe.
+     */
+    public static Lock equipmentLock(int equipmentId) {
+        int h = equipmentId * 0x9E3779B9;
+        return EQUIPMENT_LOCKS[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Makes every following record throw {@code failure}, as a failed append would, until called with
+     * {@code null}.
+     */
+    static void failRecords(RuntimeException failure) {
+        recordFailure = failure;
+    }
+
+    // Every recorded change advances both the store's version and the entity's own version stamp. A change
+    // reaches the snapshot lists only once the backend has taken it.
+    private static void journal(Journal.Kind kind, Object entity) {
+        VERSION.incrementAndGet();
+        Versioned versioned = (Versioned) entity;
+        versioned.setVersion(versioned.getVersion() + 1);
+        RuntimeException failure = recordFailure;
+        if (failure != null) {
+            throw failure;
+        }
+        boolean compact = BACKEND.record(kind, entity);
+        SNAPSHOT_LISTS.put(kind, entity);
+        if (compact && CHECKPOINT_PENDING.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                try {
+                    if (!archiveExpired()) {
+                        persistAll();
+                    }
+                } catch (RuntimeException ex) {
+                    System.err.println("Store checkpoint failed: " + ex.getMessage());
+                } finally {
+                    CHECKPOINT_PENDING.set(false);
+                }
+            });
+        }
     }
 
     public static List<Equipment> getEquipment() {
-        return Collections.unmodifiableList(EQUIPMENT);
+        return read(() -> copyOf(EQUIPMENT));
     }
 
     public static List<Customer> getCustomers() {
-        return Collections.unmodifiableList(CUSTOMERS);
+        return read(() -> copyOf(CUSTOMERS));
     }
 
     public static List<Rental> getRentals() {
-        return Collections.unmodifiableList(RENTALS);
+        return read(() -> copyOf(RENTALS));
     }
 
     public static List<Reservation> getReservations() {
-        return Collections.unmodifiableList(RESERVATIONS);
+        return read(() -> copyOf(RESERVATIONS));
     }
 
-    public static Equipment addEquipment(String name, String category, double dailyRate, double depositAmount, int stock,
-            boolean maintenance) {
-        Equipment created = new Equipment(EQUIPMENT_SEQ.getAndIncrement(), name, category, dailyRate, depositAmount,
-                stock, maintenance);
-        EQUIPMENT.add(created);
-        persistAll();
-        return created;
+    public static Equipment addEquipment(String name, String category, double dailyRate, double depositAmount,
+            int stock, boolean maintenance) {
+        return write(() -> {
+            Equipment created = new Equipment(EQUIPMENT_SEQ.getAndIncrement(), name, category, dailyRate,
+                    depositAmount, stock, maintenance);
+            journal(Journal.Kind.EQUIPMENT, created);
+            EQUIPMENT.add(created);
+            EQUIPMENT_BY_ID.put(created.getId(), created);
+            return created;
+        });
     }
 
     public static Customer addCustomer(String name, String phone) {
-        Customer created = new Customer(CUSTOMER_SEQ.getAndIncrement(), name, phone);
-        CUSTOMERS.add(created);
-        persistAll();
-        return created;
+        return write(() -> {
+            Customer created = new Customer(CUSTOMER_SEQ.getAndIncrement(), name, phone);
+            journal(Journal.Kind.CUSTOMER, created);
+            CUSTOMERS.add(created);
+            CUSTOMERS_BY_ID.put(created.getId(), created);
+            return created;
+        });
+    }
+
+    public static Rental addRental(int equipmentId, int customerId, LocalDate start, LocalDate due,
+            double deposit) {
+        return addRental(equipmentId, customerId, start, due, deposit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds a rental only if the equipment's category has fewer than {@code maxActiveInCategory} active
+     * rentals; the check and the insert happen under the same write lock.
+     */
+    public static Rental addRental(int equipmentId, int customerId, LocalDate start, LocalDate due,
+            double deposit, int maxActiveInCategory) {
+        return write(() -> {
+            Equipment equipment = EQUIPMENT_BY_ID.get(equipmentId);
+            if (equipment != null && ACTIVE_BY_CATEGORY.getOrDefault(categoryKey(equipment.getCategory()), 0)
+                    >= maxActiveInCategory) {
+                throw new StateConflictException("Category capacity reached for " + equipment.getCategory());
+            }
+            Rental created = new Rental(RENTAL_SEQ.getAndIncrement(), equipmentId, customerId, start, due, deposit);
+            // Recorded before it is filed anywhere, so a failed append leaves no trace of it in memory.
+            journal(Journal.Kind.RENTAL, created);
+            RENTALS.add(created);
+            RENTALS_BY_ID.put(created.getId(), created);
+            indexRentalOwners(created);
+            CUSTOMER_COUNTS.add(customerId, start);
+            rollUp(ROLLUPS, created, start, start);
+            adjustActiveCount(created, 1);
+            indexDueDate(created);
+            return created;
+        });
+    }
+
+    /**
+     * Claims a unit of {@code equipment} and adds a rental for it as one change, published in one snapshot, so
+     * that no snapshot shows the stock taken without its rental. A {@code fulfilling} reservation, if given, is
+     * marked fulfilled in the same change.
+     *
+     * @throws IllegalStateException if no unit is free or the category has {@code maxActiveInCategory} active
+     *         rentals
+     */
+    public static Rental checkOut(Equipment equipment, int customerId, LocalDate start, LocalDate due,
+            double deposit, int maxActiveInCategory, Reservation fulfilling) {
+        return write(() -> {
+            if (!equipment.tryClaimUnit()) {
+                throw new StateConflictException(fulfilling == null ? "Equipment unavailable."
+                        : "No stock available to fulfill reservation.");
+            }
+            // addRental leaves nothing behind when it fails, so the unit is free to go back. Once the rental
+            // exists it keeps its unit, even if recording the stock change fails.
+            Rental created;
+            try {
+                created = addRental(equipment.getId(), customerId, start, due, deposit, maxActiveInCategory);
+            } catch (RuntimeException ex) {
+                equipment.releaseUnit();
+                throw ex;
+            }
+            journal(Journal.Kind.EQUIPMENT, equipment);
+            if (fulfilling != null) {
+                changeReservationStatus(fulfilling, Reservation.Status.FULFILLED);
+            }
+            return created;
+        });
     }
 
-    public static Rental addRental(int equipmentId, int customerId, LocalDate start, LocalDate due, double deposit) {
-        Rental created = new Rental(RENTAL_SEQ.getAndIncrement(), equipmentId, customerId, start, due, deposit);
-        RENTALS.add(created);
-        persistAll();
-        return created;
+    /**
+     * Closes an active rental and gives its unit back to {@code equipment} as one change, published in one
+     * snapshot.
+     *
+     * @throws IllegalStateException if the rental was already returned
+     */
+    public static void checkIn(Rental rental, Equipment equipment, LocalDate returnedOn, double lateFee) {
+        write(() -> {
+            markReturned(rental, returnedOn, lateFee);
+            equipment.releaseUnit();
+            journal(Journal.Kind.EQUIPMENT, equipment);
+        });
     }
 
     public static Reservation addReservation(int equipmentId, int customerId) {
-        Reservation created = new Reservation(RESERVATION_SEQ.getAndIncrement(), equipmentId, customerId, LocalDate.now(),
-                Reservation.Status.WAITING);
-        RESERVATIONS.add(created);
-        persistAll();
-        return created;
+        return write(() -> {
+            Reservation created = new Reservation(RESERVATION_SEQ.getAndIncrement(), equipmentId, customerId,
+                    LocalDate.now(), Reservation.Status.WAITING);
+            journal(Journal.Kind.RESERVATION, created);
+            RESERVATIONS.add(created);
+            RESERVATIONS_BY_ID.put(created.getId(), created);
+            listFor(RESERVATIONS_BY_CUSTOMER, created.getCustomerId()).add(created);
+            indexReservationStatus(created);
+            return created;
+        });
+    }
+
+    /**
+     * Records the current state of one equipment item after an in-place change.
+     */
+    public static void saveEquipment(Equipment equipment) {
+        write(() -> journal(Journal.Kind.EQUIPMENT, equipment));
+    }
+
+    /**
+     * Applies {@code change} to an equipment item and records it, provided the item is still at
+     * {@code expectedVersion}. The check, the change and the new version stamp happen under the write lock.
+     *
+     * @throws VersionConflictException if the item was changed since the caller read it
+     */
+    public static void updateEquipment(Equipment equipment, long expectedVersion, Consumer<Equipment> change) {
+        write(() -> {
+            if (equipment.getVersion() != expectedVersion) {
+                throw new VersionConflictException("Equipment " + equipment.getId(), expectedVersion,
+                        equipment.getVersion());
+            }
+            change.accept(equipment);
+            journal(Journal.Kind.EQUIPMENT, equipment);
+        });
+    }
+
+    public static void saveRental(Rental rental) {
+        write(() -> journal(Journal.Kind.RENTAL, rental));
+    }
+
+    public static void saveReservation(Reservation reservation) {
+        write(() -> journal(Journal.Kind.RESERVATION, reservation));
+    }
+
+    /**
+     * Updates a reservation's status and refiles it in the status indexes.
+     */
+    public static void changeReservationStatus(Reservation reservation, Reservation.Status status) {
+        write(() -> {
+            unindexReservationStatus(reservation);
+            reservation.setStatus(status);
+            indexReservationStatus(reservation);
+            journal(Journal.Kind.RESERVATION, reservation);
+        });
+    }
+
+    /**
+     * Closes an active rental and updates the derived indexes in the same step.
+     */
+    public static void markReturned(Rental rental, LocalDate returnedOn, double lateFee) {
+        write(() -> {
+            if (rental.isReturned()) {
+                throw new StateConflictException("Rental " + rental.getId() + " already returned.");
+            }
+            LocalDate wasOutUntil = outUntil(rental);
+            LocalDate wasChargedUntil = chargedUntil(rental);
+            rental.setReturnedOn(returnedOn);
+            rental.setLateFeeCharged(lateFee);
+            rollUp(ROLLUPS, rental, wasOutUntil, wasChargedUntil);
+            ROLLUPS.lateFee(rental.getEquipmentId(), reportCategory(rental), returnedOn, lateFee);
+            TOTALS.collected(lateFee);
+            adjustActiveCount(rental, -1);
+            unindexDueDate(rental);
+            journal(Journal.Kind.RENTAL, rental);
+        });
+    }
+
+    /**
+     * Moves the due date of an active rental and refiles it in the due-date index.
+     */
+    public static void changeDueDate(Rental rental, LocalDate dueDate) {
+        write(() -> {
+            unindexDueDate(rental);
+            LocalDate wasOutUntil = outUntil(rental);
+            LocalDate wasChargedUntil = chargedUntil(rental);
+            rental.setDueDate(dueDate);
+            rollUp(ROLLUPS, rental, wasOutUntil, wasChargedUntil);
+            if (!rental.isReturned()) {
+                indexDueDate(rental);
+            }
+            journal(Journal.Kind.RENTAL, rental);
+        });
+    }
+
+    /**
+     * Every rental the customer ever made, archived ones included, in id order. The archive is only read when
+     * the customer's lifetime count says some of their rentals are there, and then outside the lock, visiting
+     * just the segments that hold the customer.
+     */
+    public static List<Rental> rentalsByCustomer(int customerId) {
+        long[] archived = new long[1];
+        List<Rental> current = read(() -> {
+            List<Rental> rentals = copyOf(RENTALS_BY_CUSTOMER.get(customerId));
+            archived[0] = CUSTOMER_COUNTS.count(customerId) - rentals.size();
+            return rentals;
+        });
+        if (archived[0] <= 0) {
+            return current;
+        }
+        // A batch archived after the copy shows up in both; the copy already holds those rentals.
+        IntIndex<Rental> seen = new IntIndex<>();
+        for (Rental rental : current) {
+            seen.put(rental.getId(), rental);
+        }
+        List<Rental> history = new ArrayList<>(current.size() + (int) archived[0]);
+        ARCHIVE.forEachOfCustomer(customerId, rental -> {
+            if (seen.get(rental.getId()) == null) {
+                history.add(rental);
+            }
+        });
+        history.addAll(current);
+        history.sort(Comparator.comparingInt(Rental::getId));
+        return Collections.unmodifiableList(history);
+    }
+
+    public static List<Rental> rentalsByEquipment(int equipmentId) {
+        return read(() -> copyOf(RENTALS_BY_EQUIPMENT.get(equipmentId)));
     }
 
+    public static List<Reservation> reservationsByCustomer(int customerId) {
+        return read(() -> copyOf(RESERVATIONS_BY_CUSTOMER.get(customerId)));
+    }
+
+    public static List<Reservation> reservationsByStatus(Reservation.Status status) {
+        return read(() -> copyOf(RESERVATIONS_BY_STATUS.get(status)));
+    }
+
+    public static List<Reservation> reservationsByEquipment(int equipmentId, Reservation.Status status) {
+        return read(() -> {
+            Map<Reservation.Status, Set<Reservation>> statuses = RESERVATIONS_BY_EQUIPMENT.get(equipmentId);
+            return copyOf(statuses == null ? null : statuses.get(status));
+        });
+    }
+
+    /**
+     * Unreturned rentals due strictly before {@code asOf}, earliest first. Only the overdue buckets of
+     * the due-date index are visited.
+     */
+    public static List<Rental> overdueRentals(LocalDate asOf) {
+        return read(() -> {
+            List<Rental> overdue = new ArrayList<>();
+            for (Set<Rental> bucket : ACTIVE_BY_DUE_DATE.headMap(asOf, false).values()) {
+                overdue.addAll(bucket);
+            }
+            return overdue;
+        });
+    }
+
+    /**
+     * Number of unreturned rentals whose equipment belongs to {@code category}, compared case-insensitively.
+     */
+    public static int activeRentalsInCategory(String category) {
+        return read(() -> ACTIVE_BY_CATEGORY.getOrDefault(categoryKey(category), 0));
+    }
+
+    public static int activeRentalCount() {
+        return read(TOTALS::active);
+    }
+
+    /**
+     * Sum of the deposits on unreturned rentals.
+     */
+    public static double heldDeposits() {
+        return read(TOTALS::heldDeposits);
+    }
+
+    /**
+     * Late fees charged over the store's lifetime, archived rentals included.
+     */
+    public static double lateFeesCollected() {
+        return read(TOTALS::lateFees);
+    }
+
+    /**
+     * Unreturned rentals due strictly before {@code asOf}, counted per equipment category. Repeated calls for
+     * the same date are O(1); a new date only visits the due-date buckets between the old and the new one.
+     * Runs under the read lock: moving the counts to a new date is guarded by their own monitor, since the
+     * read lock already keeps writers out.
+     */
+    public static Map<String, Long> overdueByCategory(LocalDate asOf) {
+        return read(() -> {
+            synchronized (TOTALS) {
+                LocalDate from = TOTALS.overdueAsOf();
+                if (!asOf.equals(from)) {
+                    boolean forward = asOf.isAfter(from);
+                    Map<LocalDate, Set<Rental>> crossed = forward
+                            ? ACTIVE_BY_DUE_DATE.subMap(from, true, asOf, false)
+                            : ACTIVE_BY_DUE_DATE.subMap(asOf, true, from, false);
+                    for (Set<Rental> bucket : crossed.values()) {
+                        for (Rental rental : bucket) {
+                            TOTALS.overdue(reportCategory(rental), forward ? 1 : -1);
+                        }
+                    }
+                    TOTALS.overdueAsOf(asOf);
+                }
+                return TOTALS.overdue();
+            }
+        });
+    }
+
+    /**
+     * Customer ids with the most rentals over the store's lifetime, best first, mapped to their counts.
+     * Ties go to the lower id.
+     */
+    public static Map<Integer, Long> topCustomers(int limit) {
+        return read(() -> {
+            Map<Integer, Long> top = new LinkedHashMap<>();
+            for (int customerId : CUSTOMER_COUNTS.top(limit)) {
+                top.put(customerId, CUSTOMER_COUNTS.count(customerId));
+            }
+            return top;
+        });
+    }
+
+    /**
+     * Like {@link #topCustomers(int)}, counting only rentals started between {@code from} and {@code to}
+     * inclusive.
+     */
+    public static Map<Integer, Long> topCustomers(int limit, LocalDate from, LocalDate to) {
+        return read(() -> {
+            IntLongMap counts = CUSTOMER_COUNTS.window(from, to);
+            Map<Integer, Long> top = new LinkedHashMap<>();
+            for (int customerId : counts.top(limit)) {
+                top.put(customerId, counts.get(customerId));
+            }
+            return top;
+        });
+    }
+
+    /**
+     * Revenue, late fees and units out between {@code from} and {@code to} inclusive, one summary per period
+     * with activity, optionally only for {@code category} (compared case-insensitively; {@code null} for all).
+     * Reads one rollup bucket per equipment item and day, however many rentals they cover.
+     */
+    public static List<UsageSummary> usage(LocalDate from, LocalDate to, UsageSummary.Period period,
+            String category) {
+        return read(() -> ROLLUPS.summarize(from, to, period, category));
+    }
+
+    /**
+     * Full snapshot rewrite for callers that mutated several items in place. Prefer
+     * {@link #saveEquipment(Equipment)} for single changes.
+     */
     public static void persistEquipment() {
-        JsonStore.write(EQUIPMENT_FILE, EQUIPMENT);
+        write(() -> {
+            VERSION.incrementAndGet();
+            SNAPSHOT_LISTS.rebuild(Journal.Kind.EQUIPMENT, EQUIPMENT);
+            persistAll();
+        });
     }
 
+    /**
+     * Full rewrite that also rebuilds the rental indexes, for callers that edited rentals in place.
+     */
     public static void persistRentals() {
-        JsonStore.write(RENTALS_FILE, RENTALS);
+        write(() -> {
+            VERSION.incrementAndGet();
+            rebuildRentalIndexes();
+            rebuildRollups();
+            SNAPSHOT_LISTS.rebuild(Journal.Kind.RENTAL, RENTALS);
+            persistAll();
+        });
     }
 
     public static void persistReservations() {
-        JsonStore.write(RESERVATIONS_FILE, RESERVATIONS);
+        write(() -> {
+            VERSION.incrementAndGet();
+            rebuildReservationIndexes();
+            SNAPSHOT_LISTS.rebuild(Journal.Kind.RESERVATION, RESERVATIONS);
+            persistAll();
+        });
     }
 
-    public static void reset() {
+    public static synchronized void reset() {
+        BACKEND.clear();
+        ARCHIVE.clear();
         try {
-            Files.deleteIfExists(EQUIPMENT_FILE);
-            Files.deleteIfExists(CUSTOMERS_FILE);
-            Files.deleteIfExists(RENTALS_FILE);
-            Files.deleteIfExists(RESERVATIONS_FILE);
+            Files.deleteIfExists(ROLLUPS_FILE);
+            Files.deleteIfExists(ARCHIVED_ROLLUPS_FILE);
+            Files.deleteIfExists(ARCHIVED_COUNTS_FILE);
         } catch (IOException ex) {
-            throw new IllegalStateException("Failed to reset data files: " + ex.getMessage(), ex);
+            throw new IllegalStateException("Failed to reset " + ROLLUPS_FILE + ": " + ex.getMessage(), ex);
         }
         seeded = false;
         EQUIPMENT_SEQ.set(1000);
@@ -199,19 +1297,41 @@ public final class DataStore {
         seeded = true;
     }
 
+    /**
+     * Counter that moves forward with every change to the stored data, including in-place edits announced
+     * through {@code save*} or {@code persist*}. Results computed at one version stay valid while it holds.
+     */
+    public static long version() {
+        return VERSION.get();
+    }
+
+    /**
+     * Consistent, immutable view of all four collections as of the last completed change, or with
+     * {@code equipment.store.writer=queue} the last completed batch. Taking it is O(1) and takes no lock, and
+     * the view never changes afterwards, so long reports and exports can read it while writes carry on. The
+     * entities are copies, which must not be modified.
+     */
+    public static StoreSnapshot snapshot() {
+        return published;
+    }
+
     public static Optional<Equipment> findEquipment(int id) {
-        return EQUIPMENT.stream().filter(eq -> eq.getId() == id).findFirst();
+        return read(() -> Optional.ofNullable(EQUIPMENT_BY_ID.get(id)));
     }
 
     public static Optional<Customer> findCustomer(int id) {
-        return CUSTOMERS.stream().filter(c -> c.getId() == id).findFirst();
+        return read(() -> Optional.ofNullable(CUSTOMERS_BY_ID.get(id)));
     }
 
+    /**
+     * Looks in memory first and falls through to the archive, which only returned rentals reach.
+     */
     public static Optional<Rental> findRental(int id) {
-        return RENTALS.stream().filter(r -> r.getId() == id).findFirst();
+        Optional<Rental> rental = read(() -> Optional.ofNullable(RENTALS_BY_ID.get(id)));
+        return rental.isPresent() ? rental : ARCHIVE.find(id);
     }
 
     public static Optional<Reservation> findReservation(int id) {
-        return RESERVATIONS.stream().filter(r -> r.getId() == id).findFirst();
+        return read(() -> Optional.ofNullable(RESERVATIONS_BY_ID.get(id)));
     }
 }
@@ -0,0 +1,37 @@
+package org.equipment.data;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+import org.equipment.domain.Equipment;
+
+/**
+ * Equipment catalog as seen by the services.
+ */
+public interface EquipmentRepository {
+    List<Equipment> findAll();
+
+    Optional<Equipment> findById(int id);
+
+    Equipment add(String name, String category, double dailyRate, double depositAmount, int stock,
+            boolean maintenance);
+
+    /**
+     * Records the current state of an item after an in-place change.
+     */
+    void save(Equipment equipment);
+
+    /**
+     * Applies {@code change} and records it if the item is still at {@code expectedVersion}.
+     *
+     * @throws VersionConflictException if the item was changed since it was read
+     */
+    void update(Equipment equipment, long expectedVersion, Consumer<Equipment> change);
+
+    /**
+     * Lock that serializes stock changes for one item; hold it across check-then-act sequences.
+     */
+    Lock lockFor(int equipmentId);
+}
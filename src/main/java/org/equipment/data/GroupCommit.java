@@ -0,0 +1,98 @@
+package org.equipment.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent requests for the same expensive action, such as a file write followed by an fsync.
+ * The first caller becomes the leader and runs the action; callers arriving while it runs join the next
+ * round and are served together by one more run. Every caller returns only once a run that started after
+ * its request has finished, and rethrows that run's failure.
+ */
+final class GroupCommit {
+    private final Runnable action;
+    private final long windowNanos;
+
+    // Guarded by this.
+    private Round pending = new Round();
+    private boolean leading;
+
+    /**
+     * @param windowMillis how long a leader waits for more callers before each run; 0 runs immediately
+     */
+    GroupCommit(Runnable action, long windowMillis) {
+        this.action = action;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    void commit() {
+        Round round;
+        boolean lead;
+        synchronized (this) {
+            round = pending;
+            round.members++;
+            lead = !leading;
+            leading = true;
+        }
+        if (lead) {
+            lead();
+        }
+        synchronized (this) {
+            boolean interrupted = false;
+            while (!round.done) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (round.failure != null) {
+            throw new IllegalStateException(round.failure.getMessage(), round.failure);
+        }
+    }
+
+    private void lead() {
+        while (true) {
+            if (windowNanos > 0) {
+                sleep();
+            }
+            Round round;
+            synchronized (this) {
+                round = pending;
+                pending = new Round();
+            }
+            RuntimeException failure = null;
+            try {
+                action.run();
+            } catch (RuntimeException ex) {
+                failure = ex;
+            }
+            synchronized (this) {
+                round.failure = failure;
+                round.done = true;
+                notifyAll();
+                if (pending.members == 0) {
+                    leading = false;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sleep() {
+        try {
+            TimeUnit.NANOSECONDS.sleep(windowNanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Round {
+        private int members;
+        private boolean done;
+        private RuntimeException failure;
+    }
+}
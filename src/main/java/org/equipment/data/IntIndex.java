@@ -0,0 +1,133 @@
+package org.equipment.data;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map keyed by primitive {@code int} ids. Used for the store's primary-key
+ * lookups so that finding an entity neither scans a list nor boxes the id.
+ */
+final class IntIndex<T> {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    IntIndex() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (T) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value previously stored under {@code key}, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    T put(int key, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Index values cannot be null.");
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                T previous = (T) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    T remove(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                T previous = (T) values[slot];
+                closeGap(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<T> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((T) value);
+            }
+        }
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones.
+    private void closeGap(int gap) {
+        int mask = keys.length - 1;
+        int slot = (gap + 1) & mask;
+        while (values[slot] != null) {
+            int home = mix(keys[slot]) & mask;
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,193 @@
+package org.equipment.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from primitive {@code int} keys to {@code long} counters, the counting counterpart of
+ * {@link IntIndex}. Entries are never removed; a key that was never added reads as {@code 0}.
+ */
+final class IntLongMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+
+    IntLongMap() {
+        keys = new int[MIN_CAPACITY];
+        values = new long[MIN_CAPACITY];
+        used = new boolean[MIN_CAPACITY];
+    }
+
+    long get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return 0;
+    }
+
+    void add(int key, long delta) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        used[slot] = true;
+        size++;
+    }
+
+    /**
+     * Adds every counter of {@code other} to this map.
+     */
+    void addAll(IntLongMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.used[i]) {
+                add(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Bytes {@link #writeTo(ByteBuffer)} takes: the entry count, then each key and counter.
+     */
+    int encodedBytes() {
+        return 4 + size * (4 + 8);
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                out.putInt(keys[i]).putLong(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds the counters written by {@link #writeTo(ByteBuffer)}.
+     */
+    void readFrom(ByteBuffer in) {
+        for (int entries = in.getInt(); entries > 0; entries--) {
+            add(in.getInt(), in.getLong());
+        }
+    }
+
+    void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Keys of the {@code k} largest positive counters, largest first, ties broken by the lower key. Selected
+     * with a bounded min-heap in O(n log k) without sorting or boxing every entry.
+     */
+    int[] top(int k) {
+        int[] heapKeys = new int[Math.max(0, Math.min(k, size))];
+        long[] heapValues = new long[heapKeys.length];
+        int filled = 0;
+        for (int i = 0; i < keys.length && heapKeys.length > 0; i++) {
+            if (!used[i] || values[i] <= 0) {
+                continue;
+            }
+            if (filled < heapKeys.length) {
+                heapKeys[filled] = keys[i];
+                heapValues[filled] = values[i];
+                siftUp(heapKeys, heapValues, filled++);
+            } else if (ranksAbove(keys[i], values[i], heapKeys[0], heapValues[0])) {
+                heapKeys[0] = keys[i];
+                heapValues[0] = values[i];
+                siftDown(heapKeys, heapValues, 0, filled);
+            }
+        }
+        // Popping the weakest entry into the last free slot leaves the array sorted best first.
+        for (int end = filled - 1; end > 0; end--) {
+            swap(heapKeys, heapValues, 0, end);
+            siftDown(heapKeys, heapValues, 0, end);
+        }
+        return Arrays.copyOf(heapKeys, filled);
+    }
+
+    private static boolean ranksAbove(int key, long value, int otherKey, long otherValue) {
+        return value > otherValue || (value == otherValue && key < otherKey);
+    }
+
+    private static void siftUp(int[] heapKeys, long[] heapValues, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(heapKeys[parent], heapValues[parent], heapKeys[index], heapValues[index])) {
+                return;
+            }
+            swap(heapKeys, heapValues, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heapKeys, long[] heapValues, int index, int length) {
+        while (true) {
+            int weakest = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < length; child++) {
+                if (ranksAbove(heapKeys[weakest], heapValues[weakest], heapKeys[child], heapValues[child])) {
+                    weakest = child;
+                }
+            }
+            if (weakest == index) {
+                return;
+            }
+            swap(heapKeys, heapValues, index, weakest);
+            index = weakest;
+        }
+    }
+
+    private static void swap(int[] heapKeys, long[] heapValues, int a, int b) {
+        int key = heapKeys[a];
+        heapKeys[a] = heapKeys[b];
+        heapKeys[b] = key;
+        long value = heapValues[a];
+        heapValues[a] = heapValues[b];
+        heapValues[b] = value;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
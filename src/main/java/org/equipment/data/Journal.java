@@ -0,0 +1,384 @@
+package org.equipment.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Append-only journal of entity mutations stored next to the JSON snapshots. Each line holds the full
+ * state of one entity after a change, so replaying the file in order on top of the snapshots yields
+ * the latest state, and replaying it twice is harmless.
+ * <p>
+ * Appends are flushed to the operating system immediately. How they reach the disk follows
+ * {@link JsonStore#durability()}: {@code sync} forces each record inside {@link #append}, {@code group}
+ * leaves it to {@link #sync()}, where concurrent callers share one fsync, and {@code os} never forces.
+ */
+final class Journal {
+    enum Kind {
+        EQUIPMENT(Equipment.class, "equipment"),
+        CUSTOMER(Customer.class, "customers"),
+        RENTAL(Rental.class, "rentals"),
+        RESERVATION(Reservation.class, "reservations");
+
+        private final Class<?> type;
+        private final String collection;
+
+        Kind(Class<?> type, String collection) {
+            this.type = type;
+            this.collection = collection;
+        }
+
+        Class<?> type() {
+            return type;
+        }
+
+        /**
+         * Base name of the files holding this collection, e.g. {@code rentals.dat} and {@code rentals.json}.
+         */
+        String collection() {
+            return collection;
+        }
+    }
+
+    interface Replayer {
+        void apply(Kind kind, JsonNode data);
+    }
+
+    private final Path path;
+    private final GroupCommit syncs;
+    private FileChannel channel;
+    private BufferedWriter writer;
+    private int records;
+    private long appended;
+    // Bumped whenever the file is cut or swapped, which invalidates earlier positions.
+    private int generation;
+    private volatile long forced;
+
+    Journal(Path path) {
+        this.path = path;
+        this.syncs = new GroupCommit(this::force, 0);
+    }
+
+    /**
+     * One record in the journal's line format, without the line separator.
+     */
+    static String line(Kind kind, Object entity) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("kind", kind);
+        entry.put("data", entity);
+        return JsonStore.toLine(entry);
+    }
+
+    synchronized void append(Kind kind, Object entity) {
+        String line = line(kind, entity);
+        try {
+            if (writer == null) {
+                Files.createDirectories(path.getParent());
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                        StandardCharsets.UTF_8));
+            }
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+            if (JsonStore.durability() == JsonStore.Durability.SYNC) {
+                channel.force(false);
+            }
+            records++;
+            appended++;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed appending to " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Blocks until every record appended so far is on disk under the {@code group} durability mode. Meant
+     * to be called after releasing any lock that appenders need, so that their records join the same fsync.
+     */
+    void sync() {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        if (JsonStore.durability() == JsonStore.Durability.GROUP && forced < target) {
+            syncs.commit();
+        }
+    }
+
+    // Runs outside the monitor so appends continue while the disk catches up.
+    private void force() {
+        FileChannel current;
+        long target;
+        synchronized (this) {
+            current = channel;
+            target = appended;
+        }
+        try {
+            if (current != null) {
+                current.force(false);
+            }
+            forced = Math.max(forced, target);
+        } catch (ClosedChannelException ex) {
+            // Truncated meanwhile: the records are part of a snapshot that was synced itself.
+            forced = Math.max(forced, target);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed syncing " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Replays every complete record in order. A torn final record left behind by a crash is ignored and cut
+     * off the file, so that later appends start on a fresh line instead of being glued onto the fragment.
+     *
+     * @return number of records applied
+     */
+    synchronized int replay(Replayer replayer) {
+        if (!Files.exists(path)) {
+            records = 0;
+            return 0;
+        }
+        close();
+        int applied = 0;
+        // End of the last record that was applied, including its line separator when it had one.
+        long good = 0;
+        boolean terminated = true;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            int next;
+            do {
+                next = in.read();
+                if (next >= 0) {
+                    offset++;
+                    if (next != '\n') {
+                        line.write(next);
+                        continue;
+                    }
+                }
+                String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                line.reset();
+                if (text.trim().isEmpty()) {
+                    if (next >= 0) {
+                        good = offset;
+                    }
+                    continue;
+                }
+                JsonNode node;
+                try {
+                    node = JsonStore.readTree(text);
+                } catch (IOException ex) {
+                    System.err.println("Ignoring torn journal record in " + path + ": " + ex.getMessage());
+                    break;
+                }
+                replayer.apply(Kind.valueOf(node.get("kind").asText()), node.get("data"));
+                applied++;
+                good = offset;
+                terminated = next >= 0;
+            } while (next >= 0);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed reading " + path + ": " + ex.getMessage(), ex);
+        }
+        repairTail(good, terminated);
+        generation++;
+        records = applied;
+        return applied;
+    }
+
+    // Drops whatever follows the last good record and ends that record's line if the crash cut its separator.
+    private void repairTail(long good, boolean terminated) {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (file.size() == good && terminated) {
+                return;
+            }
+            file.truncate(good);
+            if (!terminated) {
+                file.write(ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.UTF_8)), good);
+            }
+            file.force(false);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed repairing " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Drops all records once their effects are part of a snapshot.
+     */
+    synchronized void truncate() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed truncating " + path + ": " + ex.getMessage(), ex);
+        }
+        generation++;
+        records = 0;
+    }
+
+    /**
+     * Position just past the last record appended so far, for {@link #truncate(long)}.
+     */
+    synchronized long mark() {
+        return appended;
+    }
+
+    /**
+     * Drops the records appended up to {@code mark} once their effects are part of a snapshot, keeping any
+     * appended since.
+     */
+    synchronized void truncate(long mark) {
+        int drop = (int) Math.min(records, mark - (appended - records));
+        if (drop == records) {
+            truncate();
+            return;
+        }
+        if (drop <= 0) {
+            return;
+        }
+        close();
+        Path rest = path.resolveSibling(path.getFileName() + ".rest");
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+                FileChannel out = FileChannel.open(rest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(out),
+                        StandardCharsets.UTF_8))) {
+            int skipped = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (skipped < drop) {
+                    skipped++;
+                    continue;
+                }
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+            if (JsonStore.durability() != JsonStore.Durability.OS) {
+                out.force(false);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed truncating " + path + ": " + ex.getMessage(), ex);
+        }
+        replaceWith(rest, records - drop);
+    }
+
+    /**
+     * Where the file ends after the records appended so far, for {@link #replaceWith(Path, int, Position)}.
+     */
+    synchronized Position end() {
+        try {
+            long length = channel != null ? channel.size() : Files.exists(path) ? Files.size(path) : 0;
+            return new Position(generation, length, appended);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed reading " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Swaps in {@code rewritten}, which holds {@code records} records covering everything appended before
+     * {@code end}, after copying the records appended since onto it. Only that tail is copied and synced while
+     * appends wait. If the file was cut or swapped since {@code end}, {@code rewritten} is deleted instead.
+     *
+     * @return whether the file was replaced
+     */
+    synchronized boolean replaceWith(Path rewritten, int records, Position end) {
+        try {
+            if (end.generation != generation) {
+                Files.deleteIfExists(rewritten);
+                return false;
+            }
+            close();
+            if (Files.exists(path)) {
+                try (FileChannel from = FileChannel.open(path, StandardOpenOption.READ);
+                        FileChannel to = FileChannel.open(rewritten, StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND)) {
+                    long length = from.size();
+                    for (long copied = end.length; copied < length; ) {
+                        copied += from.transferTo(copied, length - copied, to);
+                    }
+                    if (JsonStore.durability() != JsonStore.Durability.OS) {
+                        to.force(false);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed replacing " + path + ": " + ex.getMessage(), ex);
+        }
+        replaceWith(rewritten, records + (int) (appended - end.appended));
+        return true;
+    }
+
+    /**
+     * Swaps in a rewritten file holding {@code records} records in place of the current one.
+     */
+    synchronized void replaceWith(Path rewritten, int records) {
+        close();
+        try {
+            Files.move(rewritten, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed replacing " + path + ": " + ex.getMessage(), ex);
+        }
+        if (JsonStore.durability() != JsonStore.Durability.OS) {
+            JsonStore.syncDirectory(path.toAbsolutePath().getParent());
+        }
+        generation++;
+        this.records = records;
+    }
+
+    synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            System.err.println("Failed closing journal: " + ex.getMessage());
+        }
+        writer = null;
+        channel = null;
+    }
+
+    /**
+     * End of the file at one moment, see {@link #end()}.
+     */
+    static final class Position {
+        private final int generation;
+        private final long length;
+        private final long appended;
+
+        private Position(int generation, long length, long appended) {
+            this.generation = generation;
+            this.length = length;
+            this.appended = appended;
+        }
+    }
+}
@@ -1,28 +1,68 @@
 package org.equipment.data;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 /**
  * Small wrapper around Jackson to simplify reading/writing JSON payloads.
+ * <p>
+ * Files are never rewritten in place: {@link #write(Path, Object)} serializes to a temporary sibling and
+ * atomically renames it over the target, so a crash leaves either the old or the new content. The
+ * durability mode ({@code equipment.store.durability}) is {@code group} (default: fsync before the rename,
+ * with concurrent writes of the same file coalesced into one physical write, optionally held open for
+ * {@code equipment.store.groupCommitMillis}), {@code sync} (fsync on every caller's thread) or {@code os}
+ * (no fsync; survives a process crash but not a power loss).
  */
 final class JsonStore {
+    enum Durability {
+        SYNC,
+        GROUP,
+        OS
+    }
+
     private static final ObjectMapper MAPPER = new ObjectMapper()
             .registerModule(new JavaTimeModule())
             .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
             .enable(SerializationFeature.INDENT_OUTPUT);
+    private static final long GROUP_COMMIT_MILLIS = Long.getLong("equipment.store.groupCommitMillis", 0L);
+    private static final Map<Path, PendingWrite> PENDING = new ConcurrentHashMap<>();
+
+    private static volatile Durability durability = parseDurability(System.getProperty("equipment.store.durability"));
 
     private JsonStore() {
     }
 
+    static Durability durability() {
+        return durability;
+    }
+
+    static void durability(Durability mode) {
+        durability = mode;
+    }
+
     static <T> T read(Path path, TypeReference<T> type, T fallback) {
         if (!Files.exists(path)) {
             return fallback;
@@ -34,13 +74,142 @@ final class JsonStore {
         }
     }
 
+    /**
+     * Reads a top-level JSON array one element at a time, handing each to {@code sink} as soon as it is
+     * bound, so the file is never materialized as a list.
+     *
+     * @return {@code false} if the file does not exist
+     */
+    static <T> boolean stream(Path path, Class<T> type, Consumer<T> sink) {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        ObjectReader reader = MAPPER.readerFor(type);
+        try (JsonParser parser = MAPPER.getFactory().createParser(path.toFile())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                sink.accept(reader.readValue(parser));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected " + parser.currentToken() + " in array");
+            }
+            return true;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed reading " + path + ": " + ex.getMessage(), ex);
+        }
+    }
+
     static void write(Path path, Object data) {
+        replace(path, out -> MAPPER.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, data));
+    }
+
+    /**
+     * Writes already serialized content, such as the output of {@link #serialize(Object)}, under the same
+     * durability rules.
+     */
+    static void writeSerialized(Path path, byte[] content) {
+        replace(path, out -> out.write(content));
+    }
+
+    static byte[] serialize(Object data) {
+        try {
+            return MAPPER.writeValueAsBytes(data);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed serializing " + data + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static void replace(Path path, Content content) {
+        if (durability != Durability.GROUP) {
+            replace(path, content, durability == Durability.SYNC);
+            return;
+        }
+        PendingWrite pending = PENDING.computeIfAbsent(path.toAbsolutePath(), PendingWrite::new);
+        // The leader writes whatever was submitted last; earlier content in the same round is superseded.
+        pending.latest = content;
+        pending.commit.commit();
+    }
+
+    private static void replace(Path path, Content content, boolean fsync) {
         try {
-            Files.createDirectories(path.getParent());
-            MAPPER.writeValue(path.toFile(), data);
+            Path dir = path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, path.getFileName() + ".", ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+                    content.writeTo(out);
+                    out.flush();
+                    if (fsync) {
+                        channel.force(true);
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            if (fsync) {
+                syncDirectory(dir);
+            }
         } catch (IOException ex) {
             throw new IllegalStateException("Failed writing " + path + ": " + ex.getMessage(), ex);
         }
     }
-}
 
+    /**
+     * Makes a rename durable. Not every platform can open a directory for syncing; there the rename is
+     * left to the file system.
+     */
+    static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Unsupported on this platform.
+        }
+    }
+
+    private static Durability parseDurability(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Durability.GROUP;
+        }
+        return Durability.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Serializes a value onto a single line, suitable for line-oriented files such as the journal.
+     */
+    static String toLine(Object data) {
+        try {
+            return MAPPER.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsString(data);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed serializing " + data + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    static JsonNode readTree(String line) throws IOException {
+        return MAPPER.readTree(line);
+    }
+
+    static <T> T convert(JsonNode node, Class<T> type) {
+        return MAPPER.convertValue(node, type);
+    }
+
+    static JsonNode valueToTree(Object data) {
+        return MAPPER.valueToTree(data);
+    }
+
+    private interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final class PendingWrite {
+        private final GroupCommit commit;
+        private volatile Content latest;
+
+        private PendingWrite(Path path) {
+            this.commit = new GroupCommit(() -> replace(path, latest, true), GROUP_COMMIT_MILLIS);
+        }
+    }
+}
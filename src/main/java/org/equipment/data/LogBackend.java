@@ -0,0 +1,123 @@
+package org.equipment.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Embedded log-structured store: every collection lives in one append-only {@code store.log} in the journal's
+ * line format, and loading replays it from the start. Checkpoints compact the log by writing one record per
+ * live entity to a new file that atomically replaces the old one. A checkpoint is requested once the log
+ * holds at least {@code equipment.journal.compactThreshold} records and twice as many as the last compaction
+ * kept, so compaction costs O(1) amortized per change and the log never grows past about twice the live data.
+ */
+final class LogBackend implements StoreBackend {
+    private static final int COMPACT_THRESHOLD = Integer.getInteger("equipment.journal.compactThreshold", 500);
+
+    private final Path file;
+    private final Journal log;
+    private final State state;
+    private volatile int compactedRecords;
+
+    LogBackend(Path dataDir, State state) {
+        this.file = dataDir.resolve("store.log");
+        this.log = new Journal(file);
+        this.state = state;
+    }
+
+    @Override
+    public boolean load(Loader loader) {
+        if (!Files.exists(file)) {
+            for (Journal.Kind kind : Journal.Kind.values()) {
+                loader.missing(kind);
+            }
+            return true;
+        }
+        int records = log.replay((kind, data) -> loader.upsert(kind, JsonStore.convert(data, kind.type())));
+        compactedRecords = records;
+        return false;
+    }
+
+    @Override
+    public boolean record(Journal.Kind kind, Object entity) {
+        log.append(kind, entity);
+        int records = log.size();
+        return records >= COMPACT_THRESHOLD && records >= 2 * compactedRecords;
+    }
+
+    @Override
+    public void sync() {
+        log.sync();
+    }
+
+    /**
+     * Compacts the log. The live entities are serialized in memory under the read lock; the new file is written
+     * and synced after it is released, and only the records appended meanwhile are copied over while appends
+     * wait. A compaction overtaken by another one, or by {@link #clear()}, is dropped.
+     */
+    @Override
+    public void checkpoint() {
+        Compaction compaction = state.read(() -> {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            int records = 0;
+            for (Journal.Kind kind : Journal.Kind.values()) {
+                for (Object entity : state.items(kind)) {
+                    byte[] line = (Journal.line(kind, entity) + System.lineSeparator())
+                            .getBytes(StandardCharsets.UTF_8);
+                    lines.write(line, 0, line.length);
+                    records++;
+                }
+            }
+            return new Compaction(lines.toByteArray(), records, log.end());
+        });
+        // Holds no store lock, so writers that checkpoint under the write lock cannot deadlock with it.
+        synchronized (this) {
+            Path compacted = file.resolveSibling("store.log.compact");
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(compaction.lines);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    if (JsonStore.durability() != JsonStore.Durability.OS) {
+                        channel.force(true);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed compacting " + file + ": " + ex.getMessage(), ex);
+            }
+            if (log.replaceWith(compacted, compaction.records, compaction.end)) {
+                compactedRecords = compaction.records;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void clear() {
+        log.truncate();
+        compactedRecords = 0;
+    }
+
+    private static final class Compaction {
+        private final byte[] lines;
+        private final int records;
+        private final Journal.Position end;
+
+        private Compaction(byte[] lines, int records, Journal.Position end) {
+            this.lines = lines;
+            this.records = records;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.equipment.data;
+
+/**
+ * Keeps nothing on disk: every start seeds the defaults and every change lives only as long as the JVM.
+ * Meant for tests and for measuring the store without I/O.
+ */
+final class MemoryBackend implements StoreBackend {
+
+    @Override
+    public boolean load(Loader loader) {
+        for (Journal.Kind kind : Journal.Kind.values()) {
+            loader.missing(kind);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean record(Journal.Kind kind, Object entity) {
+        return false;
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void checkpoint() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void clear() {
+    }
+}
@@ -0,0 +1,115 @@
+package org.equipment.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list stored as a 32-way trie. {@link #with(int, Object)} and {@link #plus(Object)} return a new
+ * list that copies only the path to the changed element, O(log32 n) small arrays, and shares everything else
+ * with the original, so older versions stay valid and cheap to keep.
+ */
+final class PersistentList<T> extends AbstractList<T> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentList<Object> EMPTY = new PersistentList<>(0, 0, new Object[WIDTH]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+
+    private PersistentList(int size, int shift, Object[] root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    /**
+     * Builds a list holding {@code items} in one pass, filling the trie level by level.
+     */
+    static <T> PersistentList<T> of(List<? extends T> items) {
+        if (items.isEmpty()) {
+            return empty();
+        }
+        List<Object[]> level = new ArrayList<>((items.size() + MASK) >>> BITS);
+        for (int from = 0; from < items.size(); from += WIDTH) {
+            Object[] leaf = new Object[WIDTH];
+            for (int i = from; i < Math.min(from + WIDTH, items.size()); i++) {
+                leaf[i - from] = items.get(i);
+            }
+            level.add(leaf);
+        }
+        int shift = 0;
+        while (level.size() > 1) {
+            List<Object[]> parents = new ArrayList<>((level.size() + MASK) >>> BITS);
+            for (int from = 0; from < level.size(); from += WIDTH) {
+                Object[] node = new Object[WIDTH];
+                for (int i = from; i < Math.min(from + WIDTH, level.size()); i++) {
+                    node[i - from] = level.get(i);
+                }
+                parents.add(node);
+            }
+            level = parents;
+            shift += BITS;
+        }
+        return new PersistentList<>(items.size(), shift, level.get(0));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (T) node[index & MASK];
+    }
+
+    /**
+     * This list with the element at {@code index} replaced; {@code index == size()} appends.
+     */
+    PersistentList<T> with(int index, T value) {
+        if (index == size) {
+            return plus(value);
+        }
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return new PersistentList<>(size, shift, assoc(root, shift, index, value));
+    }
+
+    PersistentList<T> plus(T value) {
+        if (size == 1 << (shift + BITS)) {
+            Object[] grown = new Object[WIDTH];
+            grown[0] = root;
+            return new PersistentList<>(size + 1, shift + BITS, assoc(grown, shift + BITS, size, value));
+        }
+        return new PersistentList<>(size + 1, shift, assoc(root, shift, size, value));
+    }
+
+    private static Object[] assoc(Object[] node, int level, int index, Object value) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        if (level == 0) {
+            copy[index & MASK] = value;
+        } else {
+            int slot = (index >>> level) & MASK;
+            copy[slot] = assoc((Object[]) copy[slot], level - BITS, index, value);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,338 @@
+package org.equipment.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.equipment.domain.Rental;
+
+/**
+ * Append-only archive of returned rentals kept off the heap: gzip-compressed segments
+ * ({@code rentals-000001.seg}, ...) in the {@link BinarySnapshot} rental format, described by a sidecar
+ * index {@code archive.idx} holding one {@code number|batch|count|min id|max id|late fees} line per segment.
+ * Next to each segment, {@code rentals-000001.cus} lists the distinct customer ids in it, so a customer's
+ * history only decompresses the segments they appear in. Only the index is held in memory; customer lists are
+ * read on first use. Segments are never rewritten; a segment is visible once its index line exists,
+ * so a crash while archiving leaves at most an orphan file that the next segment overwrites.
+ */
+final class RentalArchive {
+    static final int SEGMENT_RECORDS = 10_000;
+
+    private final Path dir;
+    private final Path indexFile;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    RentalArchive(Path dir) {
+        this.dir = dir;
+        this.indexFile = dir.resolve("archive.idx");
+    }
+
+    /**
+     * Reads the segment index. Called once the store has been loaded, before the archive is used.
+     */
+    void open() {
+        segments.clear();
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\\|");
+                if (parts.length == 6) {
+                    segments.add(new Segment(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                            Double.parseDouble(parts[5])));
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new IllegalStateException("Failed reading " + indexFile + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Writes {@code rentals} as one batch of new segments. Each segment is durable before its index line is
+     * appended, and the index is forced before returning.
+     */
+    void append(List<Rental> rentals) {
+        if (rentals.isEmpty()) {
+            return;
+        }
+        int batch = segments.isEmpty() ? 1 : last().batch + 1;
+        try {
+            Files.createDirectories(dir);
+            for (int from = 0; from < rentals.size(); from += SEGMENT_RECORDS) {
+                List<Rental> chunk = rentals.subList(from, Math.min(rentals.size(), from + SEGMENT_RECORDS));
+                int number = segments.isEmpty() ? 1 : last().number + 1;
+                byte[] content = BinarySnapshot.encode(Journal.Kind.RENTAL, chunk);
+                JsonStore.writeSerialized(segment(number), compress(content));
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                double lateFees = 0;
+                int[] customers = new int[chunk.size()];
+                for (int i = 0; i < chunk.size(); i++) {
+                    Rental rental = chunk.get(i);
+                    min = Math.min(min, rental.getId());
+                    max = Math.max(max, rental.getId());
+                    lateFees += rental.getLateFeeCharged();
+                    customers[i] = rental.getCustomerId();
+                }
+                Segment segment = new Segment(number, batch, chunk.size(), min, max, lateFees);
+                segment.customers = writeCustomers(number, customers);
+                appendIndex(segment);
+                segments.add(segment);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed archiving rentals: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Looks for an archived rental, reading only segments whose id range covers {@code id}, newest first.
+     */
+    Optional<Rental> find(int id) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (id < segment.minId || id > segment.maxId) {
+                continue;
+            }
+            Rental[] found = new Rental[1];
+            read(segment, rental -> {
+                if (rental.getId() == id) {
+                    found[0] = rental;
+                }
+            });
+            if (found[0] != null) {
+                return Optional.of(found[0]);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Visits the archived rentals of one customer, oldest first, decompressing only the segments whose customer
+     * list names them.
+     */
+    void forEachOfCustomer(int customerId, Consumer<Rental> visitor) {
+        for (Segment segment : segments) {
+            if (Arrays.binarySearch(customers(segment), customerId) < 0) {
+                continue;
+            }
+            read(segment, rental -> {
+                if (rental.getCustomerId() == customerId) {
+                    visitor.accept(rental);
+                }
+            });
+        }
+    }
+
+    /**
+     * Streams every archived rental, oldest segment first, decompressing one segment at a time.
+     */
+    void forEach(Consumer<Rental> visitor) {
+        for (Segment segment : segments) {
+            read(segment, visitor);
+        }
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Streams the rentals of the segment at {@code index}, oldest first being index 0, so that several segments
+     * can be read at once. An index the archive no longer has, e.g. after a reset, visits nothing.
+     */
+    void forEach(int index, Consumer<Rental> visitor) {
+        Segment segment;
+        try {
+            segment = segments.get(index);
+        } catch (IndexOutOfBoundsException ex) {
+            return;
+        }
+        read(segment, visitor);
+    }
+
+    /**
+     * Ids written by the most recent batch. A crash between archiving a batch and checkpointing the store
+     * leaves those rentals in both places; the store drops them again at startup.
+     */
+    Set<Integer> lastBatchIds() {
+        Set<Integer> ids = new HashSet<>();
+        if (segments.isEmpty()) {
+            return ids;
+        }
+        int batch = last().batch;
+        for (Segment segment : segments) {
+            if (segment.batch == batch) {
+                read(segment, rental -> ids.add(rental.getId()));
+            }
+        }
+        return ids;
+    }
+
+    int maxId() {
+        int max = Integer.MIN_VALUE;
+        for (Segment segment : segments) {
+            max = Math.max(max, segment.maxId);
+        }
+        return max;
+    }
+
+    /**
+     * Late fees charged on archived rentals, summed from the index.
+     */
+    double lateFees() {
+        double total = 0;
+        for (Segment segment : segments) {
+            total += segment.lateFees;
+        }
+        return total;
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    void clear() {
+        try {
+            for (Segment segment : segments) {
+                Files.deleteIfExists(segment(segment.number));
+                Files.deleteIfExists(customersFile(segment.number));
+            }
+            Files.deleteIfExists(indexFile);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to reset archive: " + ex.getMessage(), ex);
+        }
+        segments.clear();
+    }
+
+    private Path segment(int number) {
+        return dir.resolve(String.format("rentals-%06d.seg", number));
+    }
+
+    private Path customersFile(int number) {
+        return dir.resolve(String.format("rentals-%06d.cus", number));
+    }
+
+    // Segments archived before customer lists existed get theirs built from the segment once.
+    private int[] customers(Segment segment) {
+        int[] customers = segment.customers;
+        if (customers != null) {
+            return customers;
+        }
+        Path file = customersFile(segment.number);
+        if (Files.exists(file)) {
+            try {
+                ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+                customers = new int[in.getInt()];
+                in.asIntBuffer().get(customers);
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Rebuilding unreadable " + file + ": " + ex.getMessage());
+                customers = null;
+            }
+        }
+        if (customers == null) {
+            int[] ids = new int[segment.count];
+            int[] next = new int[1];
+            read(segment, rental -> ids[next[0]++] = rental.getCustomerId());
+            customers = writeCustomers(segment.number, Arrays.copyOf(ids, next[0]));
+        }
+        segment.customers = customers;
+        return customers;
+    }
+
+    // Sorts and dedupes the ids in place, then writes them as a count followed by the ids.
+    private int[] writeCustomers(int number, int[] ids) {
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        int[] customers = Arrays.copyOf(ids, distinct);
+        ByteBuffer out = ByteBuffer.allocate(4 + 4 * distinct);
+        out.putInt(distinct);
+        out.asIntBuffer().put(customers);
+        JsonStore.writeSerialized(customersFile(number), out.array());
+        return customers;
+    }
+
+    private Segment last() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void appendIndex(Segment segment) throws IOException {
+        String line = segment.number + "|" + segment.batch + "|" + segment.count + "|" + segment.minId + "|"
+                + segment.maxId + "|" + segment.lateFees + System.lineSeparator();
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+            if (JsonStore.durability() != JsonStore.Durability.OS) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private void read(Segment segment, Consumer<Rental> visitor) {
+        Path file = segment(segment.number);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                content.write(buffer, 0, read);
+            }
+            BinarySnapshot.decode(ByteBuffer.wrap(content.toByteArray()), Journal.Kind.RENTAL,
+                    rental -> visitor.accept((Rental) rental));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed reading " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static final class Segment {
+        private final int number;
+        private final int batch;
+        private final int count;
+        private final int minId;
+        private final int maxId;
+        private final double lateFees;
+        // Sorted distinct customer ids, loaded on first use.
+        private volatile int[] customers;
+
+        private Segment(int number, int batch, int count, int minId, int maxId, double lateFees) {
+            this.number = number;
+            this.batch = batch;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.lateFees = lateFees;
+        }
+    }
+}
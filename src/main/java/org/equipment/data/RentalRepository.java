@@ -0,0 +1,125 @@
+package org.equipment.data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+
+public interface RentalRepository {
+    /**
+     * Rentals in the working set: every active rental plus those returned recently enough not to be archived.
+     */
+    List<Rental> findAll();
+
+    /**
+     * Also finds archived rentals.
+     */
+    Optional<Rental> findById(int id);
+
+    /**
+     * Visits every archived rental, oldest first, reading the archive sequentially. Together with
+     * {@link #findAll()} this covers the complete rental history.
+     */
+    void forEachArchived(Consumer<Rental> visitor);
+
+    /**
+     * Number of parts the archive is stored in, such as its segments, which
+     * {@link #forEachArchived(int, Consumer)} reads independently of each other.
+     */
+    int archivedParts();
+
+    /**
+     * Visits the archived rentals of one part, {@code 0 <= part < archivedParts()}. Together the parts hold the
+     * rentals {@link #forEachArchived(Consumer)} visits, in the same order.
+     */
+    void forEachArchived(int part, Consumer<Rental> visitor);
+
+    /**
+     * Adds a rental unless the equipment's category already has {@code maxActiveInCategory} active rentals,
+     * checked atomically with the insert.
+     *
+     * @throws IllegalStateException if the category is full
+     */
+    Rental add(int equipmentId, int customerId, LocalDate start, LocalDate due, double deposit,
+            int maxActiveInCategory);
+
+    /**
+     * Claims a unit of {@code equipment} and adds a rental for it, with the same category check as
+     * {@link #add}, as one change: snapshots show both or neither. A {@code fulfilling} reservation, if not
+     * {@code null}, is marked fulfilled in the same change.
+     *
+     * @throws IllegalStateException if no unit is free or the category is full
+     */
+    Rental checkOut(Equipment equipment, int customerId, LocalDate start, LocalDate due, double deposit,
+            int maxActiveInCategory, Reservation fulfilling);
+
+    /**
+     * The customer's complete rental history, archived rentals included, oldest first.
+     */
+    List<Rental> findByCustomer(int customerId);
+
+    List<Rental> findByEquipment(int equipmentId);
+
+    /**
+     * Unreturned rentals due strictly before {@code asOf}, earliest first.
+     */
+    List<Rental> findOverdue(LocalDate asOf);
+
+    /**
+     * Number of unreturned rentals in {@code category}, compared case-insensitively.
+     */
+    int countActiveInCategory(String category);
+
+    /**
+     * Running totals maintained as rentals are created, returned and extended; each read is O(1).
+     */
+    int countActive();
+
+    double heldDeposits();
+
+    /**
+     * Includes fees charged on archived rentals.
+     */
+    double lateFeesCollected();
+
+    /**
+     * Unreturned rentals due strictly before {@code asOf}, counted per equipment category.
+     */
+    Map<String, Long> countOverdueByCategory(LocalDate asOf);
+
+    /**
+     * Customer ids with the most rentals, archived ones included, mapped to their counts in descending order.
+     */
+    Map<Integer, Long> topCustomers(int limit);
+
+    /**
+     * Like {@link #topCustomers(int)}, counting only rentals started between {@code from} and {@code to}
+     * inclusive.
+     */
+    Map<Integer, Long> topCustomers(int limit, LocalDate from, LocalDate to);
+
+    /**
+     * Revenue, late fees and units out between {@code from} and {@code to} inclusive, one summary per period
+     * with activity; {@code category} narrows it to one category, {@code null} covers all.
+     */
+    List<UsageSummary> usage(LocalDate from, LocalDate to, UsageSummary.Period period, String category);
+
+    /**
+     * @throws IllegalStateException if the rental was already returned
+     */
+    void markReturned(Rental rental, LocalDate returnedOn, double lateFee);
+
+    /**
+     * Marks the rental returned and gives its unit back to {@code equipment} as one change.
+     *
+     * @throws IllegalStateException if the rental was already returned
+     */
+    void checkIn(Rental rental, Equipment equipment, LocalDate returnedOn, double lateFee);
+
+    void changeDueDate(Rental rental, LocalDate dueDate);
+}
@@ -0,0 +1,89 @@
+package org.equipment.data;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.equipment.domain.Rental;
+
+/**
+ * Running rental figures for the dashboard, kept in step with {@link DataStore}'s indexes so that reading
+ * them costs O(1) instead of a scan: active count, deposits held, late fees collected (including archived
+ * rentals) and overdue rentals per category. Overdue counts are held for one as-of date at a time; rentals
+ * entering or leaving the due-date index before that date adjust them, and moving the date only visits the
+ * due-date buckets in between. Not thread-safe: the store guards it with its lock.
+ */
+final class RentalTotals {
+    private int active;
+    private double heldDeposits;
+    private double lateFees;
+    private LocalDate overdueAsOf = LocalDate.MIN;
+    private final Map<String, Long> overdue = new HashMap<>();
+
+    /**
+     * Starts over before the store re-adds every rental, keeping only what the archive already holds.
+     */
+    void reset(double archivedLateFees) {
+        active = 0;
+        heldDeposits = 0;
+        lateFees = archivedLateFees;
+        overdueAsOf = LocalDate.MIN;
+        overdue.clear();
+    }
+
+    /**
+     * A rental became active ({@code delta} 1) or stopped being active ({@code -1}).
+     */
+    void active(Rental rental, int delta) {
+        active += delta;
+        heldDeposits += delta * rental.getDepositAmount();
+    }
+
+    void collected(double lateFee) {
+        lateFees += lateFee;
+    }
+
+    /**
+     * A rental was filed under ({@code delta} 1) or removed from ({@code -1}) the due-date bucket
+     * {@code dueDate}.
+     */
+    void due(LocalDate dueDate, String category, int delta) {
+        if (dueDate.isBefore(overdueAsOf)) {
+            overdue(category, delta);
+        }
+    }
+
+    void overdue(String category, int delta) {
+        long count = overdue.getOrDefault(category, 0L) + delta;
+        if (count == 0) {
+            overdue.remove(category);
+        } else {
+            overdue.put(category, count);
+        }
+    }
+
+    LocalDate overdueAsOf() {
+        return overdueAsOf;
+    }
+
+    void overdueAsOf(LocalDate asOf) {
+        overdueAsOf = asOf;
+    }
+
+    Map<String, Long> overdue() {
+        return Collections.unmodifiableMap(new HashMap<>(overdue));
+    }
+
+    int active() {
+        return active;
+    }
+
+    double heldDeposits() {
+        return heldDeposits;
+    }
+
+    double lateFees() {
+        return lateFees;
+    }
+}
@@ -0,0 +1,302 @@
+package org.equipment.data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+
+/**
+ * The four repositories a service may need, handed to it as one unit. {@link #store()} returns the ones
+ * backed by {@link DataStore}, whose storage engine is chosen with {@code equipment.store.backend}
+ * ({@code snapshot}, {@code log} or {@code memory}).
+ */
+public final class Repositories {
+    // Versioned by the published snapshot, which trails the live version inside a command batch, so that
+    // results derived from a snapshot are never filed under a version they do not reflect.
+    private static final Repositories STORE = new Repositories(new StoreEquipment(), new StoreCustomers(),
+            new StoreRentals(), new StoreReservations(), () -> DataStore.snapshot().version(), true);
+
+    private final EquipmentRepository equipment;
+    private final CustomerRepository customers;
+    private final RentalRepository rentals;
+    private final ReservationRepository reservations;
+    private final LongSupplier version;
+    private final boolean store;
+
+    /**
+     * Repositories without a version source. {@link #version()} then changes on every call, so nothing
+     * derived from them is ever reused.
+     */
+    public Repositories(EquipmentRepository equipment, CustomerRepository customers, RentalRepository rentals,
+            ReservationRepository reservations) {
+        this(equipment, customers, rentals, reservations, new AtomicLong()::incrementAndGet);
+    }
+
+    public Repositories(EquipmentRepository equipment, CustomerRepository customers, RentalRepository rentals,
+            ReservationRepository reservations, LongSupplier version) {
+        this(equipment, customers, rentals, reservations, version, false);
+    }
+
+    private Repositories(EquipmentRepository equipment, CustomerRepository customers, RentalRepository rentals,
+            ReservationRepository reservations, LongSupplier version, boolean store) {
+        this.store = store;
+        this.equipment = equipment;
+        this.customers = customers;
+        this.rentals = rentals;
+        this.reservations = reservations;
+        this.version = version;
+    }
+
+    public static Repositories store() {
+        return STORE;
+    }
+
+    public EquipmentRepository equipment() {
+        return equipment;
+    }
+
+    public CustomerRepository customers() {
+        return customers;
+    }
+
+    public RentalRepository rentals() {
+        return rentals;
+    }
+
+    public ReservationRepository reservations() {
+        return reservations;
+    }
+
+    /**
+     * Version of the data behind these repositories; it moves forward whenever any of it changes.
+     */
+    public long version() {
+        return version.getAsLong();
+    }
+
+    /**
+     * Point-in-time view of the data. For {@link #store()} this is {@link DataStore#snapshot()}, taken in O(1);
+     * for other repositories it is assembled from their {@code findAll()} copies.
+     */
+    public StoreSnapshot snapshot() {
+        if (store) {
+            return DataStore.snapshot();
+        }
+        return new StoreSnapshot(version(), equipment.findAll(), customers.findAll(), rentals.findAll(),
+                reservations.findAll());
+    }
+
+    /**
+     * Runs one mutating service operation. For {@link #store()} this is {@link DataStore#execute(Supplier)},
+     * which may run it on the store's writer thread; other repositories run it on the caller's thread.
+     */
+    public <T> T execute(Supplier<T> operation) {
+        return store ? DataStore.execute(operation) : operation.get();
+    }
+
+    private static final class StoreEquipment implements EquipmentRepository {
+        @Override
+        public List<Equipment> findAll() {
+            return DataStore.getEquipment();
+        }
+
+        @Override
+        public Optional<Equipment> findById(int id) {
+            return DataStore.findEquipment(id);
+        }
+
+        @Override
+        public Equipment add(String name, String category, double dailyRate, double depositAmount, int stock,
+                boolean maintenance) {
+            return DataStore.addEquipment(name, category, dailyRate, depositAmount, stock, maintenance);
+        }
+
+        @Override
+        public void save(Equipment equipment) {
+            DataStore.saveEquipment(equipment);
+        }
+
+        @Override
+        public void update(Equipment equipment, long expectedVersion, Consumer<Equipment> change) {
+            DataStore.updateEquipment(equipment, expectedVersion, change);
+        }
+
+        @Override
+        public Lock lockFor(int equipmentId) {
+            return DataStore.equipmentLock(equipmentId);
+        }
+    }
+
+    private static final class StoreCustomers implements CustomerRepository {
+        @Override
+        public List<Customer> findAll() {
+            return DataStore.getCustomers();
+        }
+
+        @Override
+        public Optional<Customer> findById(int id) {
+            return DataStore.findCustomer(id);
+        }
+
+        @Override
+        public Customer add(String name, String phone) {
+            return DataStore.addCustomer(name, phone);
+        }
+    }
+
+    private static final class StoreRentals implements RentalRepository {
+        @Override
+        public List<Rental> findAll() {
+            return DataStore.getRentals();
+        }
+
+        @Override
+        public Optional<Rental> findById(int id) {
+            return DataStore.findRental(id);
+        }
+
+        @Override
+        public void forEachArchived(Consumer<Rental> visitor) {
+            DataStore.forEachArchivedRental(visitor);
+        }
+
+        @Override
+        public int archivedParts() {
+            return DataStore.archivedSegments();
+        }
+
+        @Override
+        public void forEachArchived(int part, Consumer<Rental> visitor) {
+            DataStore.forEachArchivedRental(part, visitor);
+        }
+
+        @Override
+        public Rental add(int equipmentId, int customerId, LocalDate start, LocalDate due, double deposit,
+                int maxActiveInCategory) {
+            return DataStore.addRental(equipmentId, customerId, start, due, deposit, maxActiveInCategory);
+        }
+
+        @Override
+        public Rental checkOut(Equipment equipment, int customerId, LocalDate start, LocalDate due, double deposit,
+                int maxActiveInCategory, Reservation fulfilling) {
+            return DataStore.checkOut(equipment, customerId, start, due, deposit, maxActiveInCategory, fulfilling);
+        }
+
+        @Override
+        public List<Rental> findByCustomer(int customerId) {
+            return DataStore.rentalsByCustomer(customerId);
+        }
+
+        @Override
+        public List<Rental> findByEquipment(int equipmentId) {
+            return DataStore.rentalsByEquipment(equipmentId);
+        }
+
+        @Override
+        public List<Rental> findOverdue(LocalDate asOf) {
+            return DataStore.overdueRentals(asOf);
+        }
+
+        @Override
+        public int countActiveInCategory(String category) {
+            return DataStore.activeRentalsInCategory(category);
+        }
+
+        @Override
+        public int countActive() {
+            return DataStore.activeRentalCount();
+        }
+
+        @Override
+        public double heldDeposits() {
+            return DataStore.heldDeposits();
+        }
+
+        @Override
+        public double lateFeesCollected() {
+            return DataStore.lateFeesCollected();
+        }
+
+        @Override
+        public Map<String, Long> countOverdueByCategory(LocalDate asOf) {
+            return DataStore.overdueByCategory(asOf);
+        }
+
+        @Override
+        public Map<Integer, Long> topCustomers(int limit) {
+            return DataStore.topCustomers(limit);
+        }
+
+        @Override
+        public Map<Integer, Long> topCustomers(int limit, LocalDate from, LocalDate to) {
+            return DataStore.topCustomers(limit, from, to);
+        }
+
+        @Override
+        public List<UsageSummary> usage(LocalDate from, LocalDate to, UsageSummary.Period period, String category) {
+            return DataStore.usage(from, to, period, category);
+        }
+
+        @Override
+        public void markReturned(Rental rental, LocalDate returnedOn, double lateFee) {
+            DataStore.markReturned(rental, returnedOn, lateFee);
+        }
+
+        @Override
+        public void checkIn(Rental rental, Equipment equipment, LocalDate returnedOn, double lateFee) {
+            DataStore.checkIn(rental, equipment, returnedOn, lateFee);
+        }
+
+        @Override
+        public void changeDueDate(Rental rental, LocalDate dueDate) {
+            DataStore.changeDueDate(rental, dueDate);
+        }
+    }
+
+    private static final class StoreReservations implements ReservationRepository {
+        @Override
+        public List<Reservation> findAll() {
+            return DataStore.getReservations();
+        }
+
+        @Override
+        public Optional<Reservation> findById(int id) {
+            return DataStore.findReservation(id);
+        }
+
+        @Override
+        public Reservation add(int equipmentId, int customerId) {
+            return DataStore.addReservation(equipmentId, customerId);
+        }
+
+        @Override
+        public List<Reservation> findByCustomer(int customerId) {
+            return DataStore.reservationsByCustomer(customerId);
+        }
+
+        @Override
+        public List<Reservation> findByStatus(Reservation.Status status) {
+            return DataStore.reservationsByStatus(status);
+        }
+
+        @Override
+        public List<Reservation> findByEquipment(int equipmentId, Reservation.Status status) {
+            return DataStore.reservationsByEquipment(equipmentId, status);
+        }
+
+        @Override
+        public void changeStatus(Reservation reservation, Reservation.Status status) {
+            DataStore.changeReservationStatus(reservation, status);
+        }
+    }
+}
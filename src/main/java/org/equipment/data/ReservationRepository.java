@@ -0,0 +1,22 @@
+package org.equipment.data;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.equipment.domain.Reservation;
+
+public interface ReservationRepository {
+    List<Reservation> findAll();
+
+    Optional<Reservation> findById(int id);
+
+    Reservation add(int equipmentId, int customerId);
+
+    List<Reservation> findByCustomer(int customerId);
+
+    List<Reservation> findByStatus(Reservation.Status status);
+
+    List<Reservation> findByEquipment(int equipmentId, Reservation.Status status);
+
+    void changeStatus(Reservation reservation, Reservation.Status status);
+}
@@ -0,0 +1,220 @@
+package org.equipment.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * One binary snapshot file per collection ({@code equipment.dat}, ... in the {@link BinarySnapshot} format)
+ * plus {@code journal.log}. Every change is appended to the journal and replayed on top of the snapshots at
+ * startup. Once the journal holds at least {@code equipment.journal.compactThreshold} records and as many as
+ * the snapshots did when last written, the store checkpoints, which rewrites the snapshots and empties the
+ * journal; checkpoints therefore cost O(1) amortized per change however large the store grows. A collection
+ * without a snapshot is read from the older {@code equipment.json}, ... files if present, and checkpointed in
+ * the binary format right away.
+ * <p>
+ * In write-behind mode ({@code equipment.store.writeBehind}) changes only mark their collection dirty, and a
+ * background flusher rewrites each dirty snapshot at most once every {@code equipment.store.flushMillis}.
+ */
+final class SnapshotBackend implements StoreBackend {
+    private static final int COMPACT_THRESHOLD = Integer.getInteger("equipment.journal.compactThreshold", 500);
+    private static final long FLUSH_MILLIS = Long.getLong("equipment.store.flushMillis", 1000L);
+
+    private final Path dataDir;
+    private final Map<Journal.Kind, Path> files = new EnumMap<>(Journal.Kind.class);
+    private final Journal journal;
+    private final State state;
+    private final Object flushLock = new Object();
+    private final Set<Journal.Kind> dirty = ConcurrentHashMap.newKeySet();
+    private final Object checkpointLock = new Object();
+    private final AtomicLong checkpoints = new AtomicLong();
+    // Guarded by checkpointLock: the newest checkpoint on disk.
+    private long written;
+    private volatile int snapshotRecords;
+
+    private volatile boolean writeBehind = Boolean.getBoolean("equipment.store.writeBehind");
+    private ScheduledExecutorService flusher;
+
+    SnapshotBackend(Path dataDir, State state) {
+        this.dataDir = dataDir;
+        this.state = state;
+        this.journal = new Journal(dataDir.resolve("journal.log"));
+        for (Journal.Kind kind : Journal.Kind.values()) {
+            files.put(kind, dataDir.resolve(kind.collection() + ".dat"));
+        }
+        if (writeBehind) {
+            startFlusher();
+        }
+    }
+
+    /**
+     * Switches between journaling every change and write-behind. Dirty snapshots are flushed when leaving
+     * write-behind.
+     */
+    synchronized void writeBehind(boolean enabled) {
+        if (!enabled) {
+            flush();
+        }
+        writeBehind = enabled;
+        if (enabled) {
+            startFlusher();
+        }
+    }
+
+    @Override
+    public boolean load(Loader loader) {
+        boolean rewrite = false;
+        int[] loaded = new int[1];
+        for (Map.Entry<Journal.Kind, Path> file : files.entrySet()) {
+            Journal.Kind kind = file.getKey();
+            Consumer<Object> upsert = entity -> {
+                loader.upsert(kind, entity);
+                loaded[0]++;
+            };
+            if (BinarySnapshot.stream(file.getValue(), kind, upsert)) {
+                continue;
+            }
+            Path legacy = dataDir.resolve(kind.collection() + ".json");
+            if (!JsonStore.stream(legacy, kind.type(), upsert::accept)) {
+                loader.missing(kind);
+            }
+            rewrite = true;
+        }
+        snapshotRecords = loaded[0];
+        int replayed = journal.replay((kind, data) -> loader.upsert(kind, JsonStore.convert(data, kind.type())));
+        // Write-behind never appends to the journal, so records left from journal mode are folded in now
+        // rather than replayed later over newer snapshots.
+        return rewrite || (writeBehind && replayed > 0);
+    }
+
+    @Override
+    public boolean record(Journal.Kind kind, Object entity) {
+        if (writeBehind) {
+            dirty.add(kind);
+            return false;
+        }
+        journal.append(kind, entity);
+        int records = journal.size();
+        return records >= COMPACT_THRESHOLD && records >= snapshotRecords;
+    }
+
+    @Override
+    public void sync() {
+        journal.sync();
+    }
+
+    /**
+     * Rewrites every snapshot and drops the journal records they now contain. Like {@link #flush()}, the
+     * snapshots are serialized in memory under the read lock and written after it is released; records
+     * appended meanwhile stay in the journal. A checkpoint overtaken by a newer one is not written.
+     */
+    @Override
+    public void checkpoint() {
+        Checkpoint checkpoint = state.read(() -> {
+            Map<Path, byte[]> serialized = new LinkedHashMap<>();
+            int records = 0;
+            for (Map.Entry<Journal.Kind, Path> file : files.entrySet()) {
+                Journal.Kind kind = file.getKey();
+                List<?> items = state.items(kind);
+                serialized.put(file.getValue(), BinarySnapshot.encode(kind, items));
+                records += items.size();
+            }
+            return new Checkpoint(checkpoints.incrementAndGet(), journal.mark(), serialized, records);
+        });
+        // Not the flush lock: the flusher takes the read lock while holding that one.
+        synchronized (checkpointLock) {
+            if (checkpoint.sequence < written) {
+                return;
+            }
+            for (Map.Entry<Path, byte[]> snapshot : checkpoint.snapshots.entrySet()) {
+                JsonStore.writeSerialized(snapshot.getKey(), snapshot.getValue());
+            }
+            journal.truncate(checkpoint.journalMark);
+            written = checkpoint.sequence;
+            snapshotRecords = checkpoint.records;
+        }
+    }
+
+    /**
+     * Writes every snapshot marked dirty in write-behind mode. Each one is serialized in memory under the
+     * read lock and written to disk after the lock is released, so writers never wait on file I/O.
+     */
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Path, byte[]> snapshots = state.read(() -> {
+                Map<Path, byte[]> serialized = new LinkedHashMap<>();
+                for (Journal.Kind kind : Journal.Kind.values()) {
+                    if (dirty.remove(kind)) {
+                        serialized.put(files.get(kind), BinarySnapshot.encode(kind, state.items(kind)));
+                    }
+                }
+                return serialized;
+            });
+            for (Map.Entry<Path, byte[]> snapshot : snapshots.entrySet()) {
+                JsonStore.writeSerialized(snapshot.getKey(), snapshot.getValue());
+            }
+        }
+    }
+
+    // Holding the flush lock keeps a write-behind flush from recreating a file mid-reset.
+    @Override
+    public void clear() {
+        synchronized (flushLock) {
+            dirty.clear();
+            journal.truncate();
+            try {
+                for (Map.Entry<Journal.Kind, Path> file : files.entrySet()) {
+                    Files.deleteIfExists(file.getValue());
+                    Files.deleteIfExists(dataDir.resolve(file.getKey().collection() + ".json"));
+                }
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to reset data files: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private synchronized void startFlusher() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "datastore-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                System.err.println("Write-behind flush failed: " + ex.getMessage());
+            }
+        }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "datastore-flush"));
+    }
+
+    private static final class Checkpoint {
+        private final long sequence;
+        private final long journalMark;
+        private final Map<Path, byte[]> snapshots;
+        private final int records;
+
+        private Checkpoint(long sequence, long journalMark, Map<Path, byte[]> snapshots, int records) {
+            this.sequence = sequence;
+            this.journalMark = journalMark;
+            this.snapshots = snapshots;
+            this.records = records;
+        }
+    }
+}
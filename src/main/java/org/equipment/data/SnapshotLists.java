@@ -0,0 +1,148 @@
+package org.equipment.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+
+/**
+ * Copies of every stored entity in {@link PersistentList}s, kept in step with the live collections as changes
+ * are recorded. Taking a {@link StoreSnapshot} then only reads the four current lists. Not thread-safe: the
+ * store updates it under its write lock.
+ */
+final class SnapshotLists {
+    private final Tracked<Equipment> equipment = new Tracked<>(Equipment::getId, SnapshotLists::copy);
+    private final Tracked<Customer> customers = new Tracked<>(Customer::getId, SnapshotLists::copy);
+    private final Tracked<Rental> rentals = new Tracked<>(Rental::getId, SnapshotLists::copy);
+    private final Tracked<Reservation> reservations = new Tracked<>(Reservation::getId, SnapshotLists::copy);
+    private boolean changed = true;
+
+    /**
+     * Records the current state of one entity, appending it if it is new.
+     */
+    void put(Journal.Kind kind, Object entity) {
+        switch (kind) {
+            case EQUIPMENT:
+                equipment.put((Equipment) entity);
+                break;
+            case CUSTOMER:
+                customers.put((Customer) entity);
+                break;
+            case RENTAL:
+                rentals.put((Rental) entity);
+                break;
+            case RESERVATION:
+                reservations.put((Reservation) entity);
+                break;
+            default:
+                throw new IllegalStateException("Unknown collection " + kind);
+        }
+        changed = true;
+    }
+
+    /**
+     * Copies a whole collection again, after it was reloaded, shrunk or edited in place.
+     */
+    @SuppressWarnings("unchecked")
+    void rebuild(Journal.Kind kind, List<?> items) {
+        switch (kind) {
+            case EQUIPMENT:
+                equipment.rebuild((List<Equipment>) items);
+                break;
+            case CUSTOMER:
+                customers.rebuild((List<Customer>) items);
+                break;
+            case RENTAL:
+                rentals.rebuild((List<Rental>) items);
+                break;
+            case RESERVATION:
+                reservations.rebuild((List<Reservation>) items);
+                break;
+            default:
+                throw new IllegalStateException("Unknown collection " + kind);
+        }
+        changed = true;
+    }
+
+    /**
+     * Whether anything was recorded since the last {@link #snapshot(long)}.
+     */
+    boolean changed() {
+        return changed;
+    }
+
+    StoreSnapshot snapshot(long version) {
+        changed = false;
+        return new StoreSnapshot(version, equipment.list, customers.list, rentals.list, reservations.list);
+    }
+
+    private static Equipment copy(Equipment source) {
+        Equipment copy = new Equipment(source.getId(), source.getName(), source.getCategory(),
+                source.getDailyRate(), source.getDepositAmount(), source.getAvailableUnits(),
+                source.isUnderMaintenance());
+        copy.setVersion(source.getVersion());
+        return copy;
+    }
+
+    private static Customer copy(Customer source) {
+        Customer copy = new Customer(source.getId(), source.getName(), source.getPhone());
+        copy.setVersion(source.getVersion());
+        return copy;
+    }
+
+    private static Rental copy(Rental source) {
+        Rental copy = new Rental(source.getId(), source.getEquipmentId(), source.getCustomerId(),
+                source.getStartDate(), source.getDueDate(), source.getDepositAmount());
+        copy.setReturnedOn(source.getReturnedOn());
+        copy.setLateFeeCharged(source.getLateFeeCharged());
+        copy.setVersion(source.getVersion());
+        return copy;
+    }
+
+    private static Reservation copy(Reservation source) {
+        Reservation copy = new Reservation(source.getId(), source.getEquipmentId(), source.getCustomerId(),
+                source.getRequestedOn(), source.getStatus());
+        copy.setVersion(source.getVersion());
+        return copy;
+    }
+
+    private static final class Tracked<T> {
+        private final ToIntFunction<T> id;
+        private final Function<T, T> copy;
+        private final IntIndex<Integer> positions = new IntIndex<>();
+        private PersistentList<T> list = PersistentList.empty();
+
+        private Tracked(ToIntFunction<T> id, Function<T, T> copy) {
+            this.id = id;
+            this.copy = copy;
+        }
+
+        private void put(T entity) {
+            Integer position = positions.get(id.applyAsInt(entity));
+            if (position == null) {
+                positions.put(id.applyAsInt(entity), list.size());
+                list = list.plus(copy.apply(entity));
+            } else {
+                list = list.with(position, copy.apply(entity));
+            }
+        }
+
+        private void rebuild(List<T> items) {
+            positions.clear();
+            Object[] copies = new Object[items.size()];
+            for (int i = 0; i < copies.length; i++) {
+                T item = items.get(i);
+                positions.put(id.applyAsInt(item), i);
+                copies[i] = copy.apply(item);
+            }
+            @SuppressWarnings("unchecked")
+            List<T> copied = (List<T>) Arrays.asList(copies);
+            list = PersistentList.of(copied);
+        }
+    }
+}
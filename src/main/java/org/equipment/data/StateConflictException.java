@@ -0,0 +1,14 @@
+package org.equipment.data;
+
+/**
+ * Thrown when a request is well-formed but the current state does not allow it: no stock left, a full category,
+ * a reservation or rental in the wrong state, or a stale version. Failures of the store itself, such as I/O
+ * errors, are not conflicts.
+ */
+public class StateConflictException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public StateConflictException(String message) {
+        super(message);
+    }
+}
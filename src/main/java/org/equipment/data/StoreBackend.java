@@ -0,0 +1,91 @@
+package org.equipment.data;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Storage engine behind {@link DataStore}. The store always serves entities and indexes from memory; a
+ * backend only decides how that state is loaded at startup and made durable afterwards. Chosen with
+ * {@code equipment.store.backend}: {@code snapshot} (default, binary snapshots plus a journal; also accepted
+ * under its former name {@code json}), {@code log} (a single append-only log that is compacted in place) or
+ * {@code memory} (nothing is stored).
+ */
+interface StoreBackend {
+
+    /**
+     * Receives stored entities while {@link #load(Loader)} runs.
+     */
+    interface Loader {
+        /**
+         * Adds an entity, or replaces the one already loaded with the same id.
+         */
+        void upsert(Journal.Kind kind, Object entity);
+
+        /**
+         * Nothing is stored for {@code kind}, so the store seeds its defaults. Called in kind order.
+         */
+        void missing(Journal.Kind kind);
+    }
+
+    /**
+     * Read access to the store's in-memory state.
+     */
+    interface State {
+        /**
+         * Live collection for {@code kind}; only safe to use inside {@link #read(Supplier)}.
+         */
+        List<?> items(Journal.Kind kind);
+
+        <T> T read(Supplier<T> action);
+    }
+
+    /**
+     * @return {@code true} if the complete state should be checkpointed once loading finishes
+     */
+    boolean load(Loader loader);
+
+    /**
+     * Records the state of one entity after a change. Called under the store's write lock.
+     *
+     * @return {@code true} once enough has been recorded that a checkpoint is due
+     */
+    boolean record(Journal.Kind kind, Object entity);
+
+    /**
+     * Waits until recorded changes are durable. Called after the write lock is released so that
+     * concurrent writers can share the wait.
+     */
+    void sync();
+
+    /**
+     * Persists the complete state, taking the store's read lock through {@link State#read(Supplier)} for as
+     * long as the state is being copied.
+     */
+    void checkpoint();
+
+    /**
+     * Writes out anything the backend still holds only in memory.
+     */
+    void flush();
+
+    /**
+     * Deletes everything stored.
+     */
+    void clear();
+
+    static StoreBackend create(String name, Path dataDir, State state) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "snapshot":
+            case "json":
+                return new SnapshotBackend(dataDir, state);
+            case "log":
+                return new LogBackend(dataDir, state);
+            case "memory":
+                return new MemoryBackend();
+            default:
+                throw new IllegalArgumentException("Unknown store backend: " + name);
+        }
+    }
+}
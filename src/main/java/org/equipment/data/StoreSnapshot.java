@@ -0,0 +1,62 @@
+package org.equipment.data;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+
+/**
+ * Consistent point-in-time view of the four collections, as returned by {@link DataStore#snapshot()}. The
+ * lists and the entities in them are copies taken as each change was recorded: later writes never show up
+ * here, and reading a snapshot takes no lock. Entities must not be modified. Archived rentals are not
+ * included.
+ */
+public final class StoreSnapshot {
+    private final long version;
+    private final List<Equipment> equipment;
+    private final List<Customer> customers;
+    private final List<Rental> rentals;
+    private final List<Reservation> reservations;
+
+    /**
+     * Wraps lists the caller no longer changes, e.g. copies read from other repositories.
+     */
+    public StoreSnapshot(long version, List<Equipment> equipment, List<Customer> customers, List<Rental> rentals,
+            List<Reservation> reservations) {
+        this.version = version;
+        this.equipment = readOnly(equipment);
+        this.customers = readOnly(customers);
+        this.rentals = readOnly(rentals);
+        this.reservations = readOnly(reservations);
+    }
+
+    /**
+     * Store version the snapshot was taken at; see {@link DataStore#version()}.
+     */
+    public long version() {
+        return version;
+    }
+
+    public List<Equipment> equipment() {
+        return equipment;
+    }
+
+    public List<Customer> customers() {
+        return customers;
+    }
+
+    public List<Rental> rentals() {
+        return rentals;
+    }
+
+    public List<Reservation> reservations() {
+        return reservations;
+    }
+
+    private static <T> List<T> readOnly(List<T> items) {
+        return items instanceof PersistentList ? items : Collections.unmodifiableList(items);
+    }
+}
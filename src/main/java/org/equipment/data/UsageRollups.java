@@ -0,0 +1,204 @@
+package org.equipment.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Daily rental rollups keyed by (epoch day, category, equipment id): revenue, late fees and units out. The
+ * store moves them incrementally as rentals are created, extended and returned, so range queries visit one
+ * bucket per equipment item and day instead of every rental. Not thread-safe: the store guards it with its
+ * lock.
+ * <p>
+ * Saved as {@code rollups.dat} at every checkpoint: a header of magic, version and the fingerprint of the
+ * rentals the rollups describe, a string table of categories, then fixed-width cells. A file whose
+ * fingerprint no longer matches the loaded rentals, e.g. after journal records were replayed, is ignored and
+ * the rollups are rebuilt from a scan.
+ */
+final class UsageRollups {
+    static final int MAGIC = 0x45525231; // "ERR1"
+    static final short VERSION = 1;
+    // epochDay, equipmentId, category, revenue, lateFees, unitDays
+    private static final int CELL_BYTES = 4 + 4 + 4 + 8 + 8 + 8;
+
+    private final TreeMap<Long, IntIndex<Cell>> days = new TreeMap<>();
+
+    void clear() {
+        days.clear();
+    }
+
+    /**
+     * Moves the end of a unit's time out from {@code oldEnd} to {@code newEnd} (exclusive), adding or removing
+     * one unit for every day in between.
+     */
+    void unitsOut(int equipmentId, String category, LocalDate oldEnd, LocalDate newEnd) {
+        int sign = newEnd.isAfter(oldEnd) ? 1 : -1;
+        for (long day = Math.min(oldEnd.toEpochDay(), newEnd.toEpochDay());
+                day < Math.max(oldEnd.toEpochDay(), newEnd.toEpochDay()); day++) {
+            cell(day, equipmentId, category).unitDays += sign;
+        }
+    }
+
+    /**
+     * Moves the end of a rental's charged days from {@code oldEnd} to {@code newEnd} (exclusive), adding or
+     * removing {@code dailyRate} for every day in between.
+     */
+    void revenue(int equipmentId, String category, double dailyRate, LocalDate oldEnd, LocalDate newEnd) {
+        int sign = newEnd.isAfter(oldEnd) ? 1 : -1;
+        for (long day = Math.min(oldEnd.toEpochDay(), newEnd.toEpochDay());
+                day < Math.max(oldEnd.toEpochDay(), newEnd.toEpochDay()); day++) {
+            cell(day, equipmentId, category).revenue += sign * dailyRate;
+        }
+    }
+
+    void lateFee(int equipmentId, String category, LocalDate day, double fee) {
+        if (fee != 0) {
+            cell(day.toEpochDay(), equipmentId, category).lateFees += fee;
+        }
+    }
+
+    /**
+     * Sums the days from {@code from} to {@code to} inclusive into one summary per period, optionally only for
+     * one category (compared case-insensitively). Periods without activity are left out.
+     */
+    List<UsageSummary> summarize(LocalDate from, LocalDate to, UsageSummary.Period period, String category) {
+        Map<LocalDate, double[]> totals = new LinkedHashMap<>();
+        if (!from.isAfter(to)) {
+            for (Map.Entry<Long, IntIndex<Cell>> day : days.subMap(from.toEpochDay(), true, to.toEpochDay(), true)
+                    .entrySet()) {
+                LocalDate start = period.start(LocalDate.ofEpochDay(day.getKey()));
+                day.getValue().forEach(cell -> {
+                    if (category == null
+                            || DataStore.categoryKey(category).equals(DataStore.categoryKey(cell.category))) {
+                        double[] sums = totals.computeIfAbsent(start, key -> new double[3]);
+                        sums[0] += cell.revenue;
+                        sums[1] += cell.lateFees;
+                        sums[2] += cell.unitDays;
+                    }
+                });
+            }
+        }
+        List<UsageSummary> summaries = new ArrayList<>();
+        for (Map.Entry<LocalDate, double[]> entry : totals.entrySet()) {
+            double[] sums = entry.getValue();
+            if (sums[0] == 0 && sums[1] == 0 && sums[2] == 0) {
+                continue;
+            }
+            summaries.add(new UsageSummary(entry.getKey(), sums[0], sums[1], (long) sums[2]));
+        }
+        return summaries;
+    }
+
+    byte[] encode(long fingerprint) {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        List<byte[]> table = new ArrayList<>();
+        int tableBytes = 4;
+        int cells = 0;
+        for (IntIndex<Cell> day : days.values()) {
+            cells += day.size();
+        }
+        List<Cell> ordered = new ArrayList<>(cells);
+        List<Long> orderedDays = new ArrayList<>(cells);
+        for (Map.Entry<Long, IntIndex<Cell>> day : days.entrySet()) {
+            List<Cell> dayCells = new ArrayList<>();
+            day.getValue().forEach(dayCells::add);
+            for (Cell cell : dayCells) {
+                if (!strings.containsKey(cell.category)) {
+                    strings.put(cell.category, table.size());
+                    byte[] utf8 = cell.category.getBytes(StandardCharsets.UTF_8);
+                    table.add(utf8);
+                    tableBytes += 4 + utf8.length;
+                }
+                ordered.add(cell);
+                orderedDays.add(day.getKey());
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(4 + 2 + 8 + tableBytes + 4 + CELL_BYTES * cells);
+        out.putInt(MAGIC).putShort(VERSION).putLong(fingerprint);
+        out.putInt(table.size());
+        for (byte[] utf8 : table) {
+            out.putInt(utf8.length).put(utf8);
+        }
+        out.putInt(cells);
+        for (int i = 0; i < cells; i++) {
+            Cell cell = ordered.get(i);
+            out.putInt(Math.toIntExact(orderedDays.get(i))).putInt(cell.equipmentId).putInt(strings.get(cell.category))
+                    .putDouble(cell.revenue).putDouble(cell.lateFees).putLong(cell.unitDays);
+        }
+        return out.array();
+    }
+
+    /**
+     * Replaces the rollups with the saved ones if {@code path} describes rentals with {@code fingerprint}.
+     *
+     * @return {@code false} if the file is missing or stale, leaving the rollups empty
+     */
+    boolean load(Path path, long fingerprint) {
+        clear();
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getShort() != VERSION || in.getLong() != fingerprint) {
+                return false;
+            }
+            String[] table = new String[in.getInt()];
+            for (int i = 0; i < table.length; i++) {
+                byte[] utf8 = new byte[in.getInt()];
+                in.get(utf8);
+                table[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            int cells = in.getInt();
+            for (int i = 0; i < cells; i++) {
+                Cell cell = cell(in.getInt(), in.getInt(), table[in.getInt()]);
+                cell.revenue = in.getDouble();
+                cell.lateFees = in.getDouble();
+                cell.unitDays = in.getLong();
+            }
+            return true;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException ex) {
+            System.err.println("Ignoring unreadable " + path + ": " + ex.getMessage());
+            clear();
+            return false;
+        }
+    }
+
+    private Cell cell(long day, int equipmentId, String category) {
+        IntIndex<Cell> cells = days.get(day);
+        if (cells == null) {
+            cells = new IntIndex<>();
+            days.put(day, cells);
+        }
+        Cell cell = cells.get(equipmentId);
+        if (cell == null) {
+            cell = new Cell(equipmentId, category);
+            cells.put(equipmentId, cell);
+        }
+        return cell;
+    }
+
+    private static final class Cell {
+        private final int equipmentId;
+        private final String category;
+        private double revenue;
+        private double lateFees;
+        private long unitDays;
+
+        private Cell(int equipmentId, String category) {
+            this.equipmentId = equipmentId;
+            this.category = category;
+        }
+    }
+}
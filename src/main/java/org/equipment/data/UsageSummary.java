@@ -0,0 +1,68 @@
+package org.equipment.data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Rental revenue, late fees and units out for one day, week or month, read from the store's daily rollups.
+ * Revenue is the daily rate for every booked day a unit was out, valued at the rate in effect when the day
+ * was booked; late days are charged through the late fee, booked on the day of return.
+ */
+public final class UsageSummary {
+    public enum Period {
+        DAY,
+        WEEK,
+        MONTH;
+
+        /**
+         * First day of the period containing {@code day}. Weeks start on Monday.
+         */
+        public LocalDate start(LocalDate day) {
+            switch (this) {
+                case WEEK:
+                    return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH:
+                    return day.withDayOfMonth(1);
+                default:
+                    return day;
+            }
+        }
+    }
+
+    private final LocalDate periodStart;
+    private final double revenue;
+    private final double lateFees;
+    private final long unitDays;
+
+    public UsageSummary(LocalDate periodStart, double revenue, double lateFees, long unitDays) {
+        this.periodStart = periodStart;
+        this.revenue = revenue;
+        this.lateFees = lateFees;
+        this.unitDays = unitDays;
+    }
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public double getLateFees() {
+        return lateFees;
+    }
+
+    /**
+     * Units out summed over the days of the period.
+     */
+    public long getUnitDays() {
+        return unitDays;
+    }
+
+    @Override
+    public String toString() {
+        return periodStart + " | revenue: " + revenue + " | late fees: " + lateFees + " | unit-days: " + unitDays;
+    }
+}
@@ -0,0 +1,27 @@
+package org.equipment.data;
+
+/**
+ * Thrown when an update names a version of an entity that is no longer current: someone else changed it
+ * after the caller read it. Re-read the entity and retry.
+ */
+public class VersionConflictException extends StateConflictException {
+    private static final long serialVersionUID = 1L;
+
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    public VersionConflictException(String entity, long expectedVersion, long actualVersion) {
+        super(entity + " was changed concurrently: expected version " + expectedVersion + ", found "
+                + actualVersion + ".");
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
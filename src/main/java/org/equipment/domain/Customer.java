@@ -3,10 +3,11 @@ package org.equipment.domain;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-public class Customer {
+public class Customer implements Versioned {
     private final int id;
     private final String name;
     private final String phone;
+    private volatile long version;
 
     @JsonCreator
     public Customer(
@@ -30,6 +31,16 @@ public class Customer {
         return phone;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return id + " | " + name + " | " + phone;
@@ -1,16 +1,22 @@
 package org.equipment.domain;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-public class Equipment {
+public class Equipment implements Versioned {
+    private static final AtomicIntegerFieldUpdater<Equipment> UNITS =
+            AtomicIntegerFieldUpdater.newUpdater(Equipment.class, "availableUnits");
+
     private final int id;
     private final String name;
     private final String category;
     private double dailyRate;
     private double depositAmount;
-    private int availableUnits;
+    private volatile int availableUnits;
     private boolean underMaintenance;
+    private volatile long version;
 
     @JsonCreator
     public Equipment(
@@ -66,6 +72,31 @@ public class Equipment {
         this.availableUnits = availableUnits;
     }
 
+    /**
+     * Takes one unit out of stock if any is left. Many threads may claim at once without a lock; a claim
+     * only retries when another claim or release changed the stock in between.
+     *
+     * @return {@code false} if no unit was available
+     */
+    public boolean tryClaimUnit() {
+        while (true) {
+            int units = availableUnits;
+            if (units <= 0) {
+                return false;
+            }
+            if (UNITS.compareAndSet(this, units, units - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts one unit back into stock.
+     */
+    public void releaseUnit() {
+        UNITS.incrementAndGet(this);
+    }
+
     public boolean isUnderMaintenance() {
         return underMaintenance;
     }
@@ -74,6 +105,16 @@ public class Equipment {
         this.underMaintenance = underMaintenance;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return id + " | " + name + " | " + category + " | rate: " + dailyRate + " | deposit: " + depositAmount
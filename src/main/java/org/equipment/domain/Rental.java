@@ -5,7 +5,7 @@ import java.time.LocalDate;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-public class Rental {
+public class Rental implements Versioned {
     private final int id;
     private final int equipmentId;
     private final int customerId;
@@ -14,6 +14,7 @@ public class Rental {
     private final double depositAmount;
     private LocalDate returnedOn;
     private double lateFeeCharged;
+    private volatile long version;
 
     @JsonCreator
     public Rental(
@@ -79,6 +80,16 @@ public class Rental {
         this.lateFeeCharged = lateFeeCharged;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return id + " | eq:" + equipmentId + " | cust:" + customerId + " | start:" + startDate + " | due:" + dueDate
@@ -5,7 +5,7 @@ import java.time.LocalDate;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-public class Reservation {
+public class Reservation implements Versioned {
     public enum Status {
         WAITING,
         APPROVED,
@@ -18,6 +18,7 @@ public class Reservation {
     private final int customerId;
     private final LocalDate requestedOn;
     private Status status;
+    private volatile long version;
 
     @JsonCreator
     public Reservation(
@@ -57,6 +58,16 @@ public class Reservation {
         this.status = status;
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return id + " | eq:" + equipmentId + " | cust:" + customerId + " | on:" + requestedOn + " | " + status;
@@ -0,0 +1,14 @@
+package org.equipment.domain;
+
+/**
+ * An entity stamped with a version that the store advances each time it records a change to it. Updates
+ * name the version they were based on and are rejected when it has moved on, so readers need no locks.
+ */
+public interface Versioned {
+    long getVersion();
+
+    /**
+     * Set by the store; a freshly constructed entity is at version {@code 0}.
+     */
+    void setVersion(long version);
+}
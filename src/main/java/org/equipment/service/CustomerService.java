@@ -3,24 +3,36 @@ package org.equipment.service;
 import java.util.List;
 import java.util.Optional;
 
-import org.equipment.data.DataStore;
+import org.equipment.data.CustomerRepository;
+import org.equipment.data.Repositories;
 import org.equipment.domain.Customer;
 import org.equipment.utils.ValidationUtils;
 
 public class CustomerService {
+    private final CustomerRepository customerRepository;
+    private final Repositories repositories;
+
+    public CustomerService() {
+        this(Repositories.store());
+    }
+
+    public CustomerService(Repositories repositories) {
+        this.customerRepository = repositories.customers();
+        this.repositories = repositories;
+    }
 
     public List<Customer> listCustomers() {
-        return DataStore.getCustomers();
+        return customerRepository.findAll();
     }
 
     public Customer register(String name, String phone) {
         String normalizedName = ValidationUtils.normalizeName(name);
         String normalizedPhone = ValidationUtils.normalizePhone(phone);
-        return DataStore.addCustomer(normalizedName, normalizedPhone);
+        return repositories.execute(() -> customerRepository.add(normalizedName, normalizedPhone));
     }
 
     public Optional<Customer> find(int customerId) {
-        return DataStore.findCustomer(customerId);
+        return customerRepository.findById(customerId);
     }
 }
 
@@ -2,14 +2,28 @@ package org.equipment.service;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
-import org.equipment.data.DataStore;
+import org.equipment.data.EquipmentRepository;
+import org.equipment.data.Repositories;
+import org.equipment.data.VersionConflictException;
 import org.equipment.domain.Equipment;
 
 public class InventoryService {
+    private final EquipmentRepository equipmentRepository;
+    private final Repositories repositories;
+
+    public InventoryService() {
+        this(Repositories.store());
+    }
+
+    public InventoryService(Repositories repositories) {
+        this.equipmentRepository = repositories.equipment();
+        this.repositories = repositories;
+    }
 
     public List<Equipment> listAll() {
-        return DataStore.getEquipment();
+        return equipmentRepository.findAll();
     }
 
     public Equipment addEquipment(String name, String category, double rate, double deposit, int stock,
@@ -17,48 +31,92 @@ public class InventoryService {
         validateRate(rate);
         validateDeposit(deposit);
         validateStock(stock);
-        return DataStore.addEquipment(name, category, rate, deposit, stock, maintenance);
+        return repositories.execute(
+                () -> equipmentRepository.add(name, category, rate, deposit, stock, maintenance));
     }
 
     public Optional<Equipment> find(int equipmentId) {
-        return DataStore.findEquipment(equipmentId);
+        return equipmentRepository.findById(equipmentId);
     }
 
     public boolean updateRate(int equipmentId, double newRate) {
         validateRate(newRate);
-        Optional<Equipment> equipment = find(equipmentId);
-        equipment.ifPresent(eq -> {
-            eq.setDailyRate(newRate);
-            DataStore.persistEquipment();
-        });
-        return equipment.isPresent();
+        return update(equipmentId, eq -> eq.setDailyRate(newRate));
+    }
+
+    /**
+     * Sets the rate only if the item is still at {@code expectedVersion}.
+     *
+     * @return {@code false} if the item does not exist
+     * @throws VersionConflictException if the item was changed since that version was read
+     */
+    public boolean updateRate(int equipmentId, double newRate, long expectedVersion) {
+        validateRate(newRate);
+        return update(equipmentId, expectedVersion, eq -> eq.setDailyRate(newRate));
     }
 
     public boolean updateStock(int equipmentId, int newStock) {
         validateStock(newStock);
-        Optional<Equipment> equipment = find(equipmentId);
-        equipment.ifPresent(eq -> {
-            eq.setAvailableUnits(newStock);
-            DataStore.persistEquipment();
-        });
-        return equipment.isPresent();
+        return update(equipmentId, eq -> eq.setAvailableUnits(newStock));
+    }
+
+    /**
+     * Sets the stock only if the item is still at {@code expectedVersion}.
+     *
+     * @throws VersionConflictException if the item was changed since that version was read
+     */
+    public boolean updateStock(int equipmentId, int newStock, long expectedVersion) {
+        validateStock(newStock);
+        return update(equipmentId, expectedVersion, eq -> eq.setAvailableUnits(newStock));
     }
 
     public boolean flipMaintenance(int equipmentId) {
-        Optional<Equipment> equipment = find(equipmentId);
-        equipment.ifPresent(eq -> {
-            eq.setUnderMaintenance(!eq.isUnderMaintenance());
-            DataStore.persistEquipment();
-        });
-        return equipment.isPresent();
+        return update(equipmentId, eq -> eq.setUnderMaintenance(!eq.isUnderMaintenance()));
+    }
+
+    /**
+     * Toggles maintenance only if the item is still at {@code expectedVersion}.
+     *
+     * @throws VersionConflictException if the item was changed since that version was read
+     */
+    public boolean flipMaintenance(int equipmentId, long expectedVersion) {
+        return update(equipmentId, expectedVersion, eq -> eq.setUnderMaintenance(!eq.isUnderMaintenance()));
     }
 
     public List<Equipment> lowStockReport(int threshold) {
-        return DataStore.getEquipment().stream()
+        return equipmentRepository.findAll().stream()
                 .filter(eq -> eq.getAvailableUnits() <= threshold)
                 .collect(java.util.stream.Collectors.toList());
     }
 
+    // Applies the change on top of whatever version is current, re-reading and retrying after a conflict.
+    private boolean update(int equipmentId, Consumer<Equipment> change) {
+        return repositories.execute(() -> {
+            while (true) {
+                Optional<Equipment> equipment = find(equipmentId);
+                if (!equipment.isPresent()) {
+                    return false;
+                }
+                try {
+                    equipmentRepository.update(equipment.get(), equipment.get().getVersion(), change);
+                    return true;
+                } catch (VersionConflictException changedMeanwhile) {
+                    // retry against the new version
+                }
+            }
+        });
+    }
+
+    // Checkouts claim stock by compare-and-set outside the version check, so a new stock figure replaces
+    // whatever count it lands on.
+    private boolean update(int equipmentId, long expectedVersion, Consumer<Equipment> change) {
+        return repositories.execute(() -> {
+            Optional<Equipment> equipment = find(equipmentId);
+            equipment.ifPresent(eq -> equipmentRepository.update(eq, expectedVersion, change));
+            return equipment.isPresent();
+        });
+    }
+
     private void validateRate(double rate) {
         if (rate <= 0) {
             throw new IllegalArgumentException("Daily rate must be positive.");
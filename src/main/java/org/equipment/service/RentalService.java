@@ -4,123 +4,169 @@ import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Lock;
 
 import org.equipment.data.AuditLog;
-import org.equipment.data.DataStore;
+import org.equipment.data.CustomerRepository;
+import org.equipment.data.EquipmentRepository;
+import org.equipment.data.RentalRepository;
+import org.equipment.data.Repositories;
+import org.equipment.data.ReservationRepository;
+import org.equipment.data.StateConflictException;
 import org.equipment.domain.Customer;
 import org.equipment.domain.Equipment;
 import org.equipment.domain.Rental;
 import org.equipment.domain.Reservation;
 
+/**
+ * Rental lifecycle operations. Stock is taken and given back with {@link Equipment#tryClaimUnit()} and
+ * {@link Equipment#releaseUnit()}, compare-and-set operations on the equipment record, so concurrent
+ * {@link #rent} calls for one popular item can never oversell it. The repository applies each claim or release
+ * in the same change as the rental it belongs to ({@link RentalRepository#checkOut},
+ * {@link RentalRepository#checkIn}), so snapshots never show stock and rentals out of step.
+ * {@link #fulfillReservation}, {@link #returnRental} and {@link #extendRental} also hold
+ * {@link EquipmentRepository#lockFor(int)} for the item while they move a reservation or rental from one
+ * state to the next, so each of those transitions happens exactly once.
+ * <p>
+ * Every operation that changes state runs through {@link Repositories#execute}, so with
+ * {@code equipment.store.writer=queue} it is applied as one command on the store's writer thread.
+ */
 public class RentalService {
     private static final int MAX_ACTIVE_RENTALS_PER_CATEGORY = 3;
+    private static final boolean VERIFY_INDEXES = Boolean.getBoolean("equipment.debug.verifyIndexes");
+
+    private final EquipmentRepository equipmentRepository;
+    private final CustomerRepository customerRepository;
+    private final RentalRepository rentalRepository;
+    private final ReservationRepository reservationRepository;
+    private final Repositories repositories;
+
+    public RentalService() {
+        this(Repositories.store());
+    }
+
+    public RentalService(Repositories repositories) {
+        this.equipmentRepository = repositories.equipment();
+        this.customerRepository = repositories.customers();
+        this.rentalRepository = repositories.rentals();
+        this.reservationRepository = repositories.reservations();
+        this.repositories = repositories;
+    }
 
     public List<Rental> listAll() {
-        return DataStore.getRentals();
+        return rentalRepository.findAll();
     }
 
     public List<Rental> listByCustomer(int customerId) {
-        return listAll().stream()
-                .filter(r -> r.getCustomerId() == customerId)
-                .collect(Collectors.toList());
+        return rentalRepository.findByCustomer(customerId);
+    }
+
+    public List<Rental> listByEquipment(int equipmentId) {
+        return rentalRepository.findByEquipment(equipmentId);
     }
 
     public Optional<Rental> find(int rentalId) {
-        return DataStore.findRental(rentalId);
+        return rentalRepository.findById(rentalId);
     }
 
     public Rental rent(int equipmentId, int customerId, int days) {
         validateDuration(days);
-        Equipment equipment = DataStore.findEquipment(equipmentId)
-                .orElseThrow(() -> new IllegalArgumentException("Equipment not found."));
-        ensureRentable(equipment);
-
-        if (equipment.getAvailableUnits() <= 0) {
-            throw new IllegalStateException("Equipment unavailable.");
-        }
-
-        Customer customer = DataStore.findCustomer(customerId)
-                .orElseThrow(() -> new IllegalArgumentException("Customer not found."));
-
-        return createRental(equipment, customer, days, "customer:" + customer.getId());
+        return repositories.execute(() -> {
+            Equipment equipment = equipmentRepository.findById(equipmentId)
+                    .orElseThrow(() -> new IllegalArgumentException("Equipment not found."));
+            ensureRentable(equipment);
+            if (equipment.getAvailableUnits() <= 0) {
+                throw new StateConflictException("Equipment unavailable.");
+            }
+            Customer customer = customerRepository.findById(customerId)
+                    .orElseThrow(() -> new IllegalArgumentException("Customer not found."));
+            return createRental(equipment, customer, days, "customer:" + customer.getId(), null);
+        });
     }
 
     public Rental fulfillReservation(int reservationId, int days, String actor) {
         validateDuration(days);
-        Reservation reservation = DataStore.findReservation(reservationId)
-                .orElseThrow(() -> new IllegalArgumentException("Reservation not found."));
-        if (reservation.getStatus() != Reservation.Status.WAITING) {
-            throw new IllegalStateException("Reservation is not waiting.");
-        }
-        Equipment equipment = DataStore.findEquipment(reservation.getEquipmentId())
-                .orElseThrow(() -> new IllegalArgumentException("Equipment missing."));
-        ensureRentable(equipment);
-        if (equipment.getAvailableUnits() <= 0) {
-            throw new IllegalStateException("No stock available to fulfill reservation.");
-        }
-        Customer customer = DataStore.findCustomer(reservation.getCustomerId())
-                .orElseThrow(() -> new IllegalArgumentException("Customer missing."));
-
-        Rental rental = createRental(equipment, customer, days, actor);
-        reservation.setStatus(Reservation.Status.FULFILLED);
-        DataStore.persistReservations();
-        return rental;
+        return repositories.execute(() -> {
+            Reservation reservation = reservationRepository.findById(reservationId)
+                    .orElseThrow(() -> new IllegalArgumentException("Reservation not found."));
+            Lock lock = equipmentRepository.lockFor(reservation.getEquipmentId());
+            lock.lock();
+            try {
+                if (reservation.getStatus() != Reservation.Status.WAITING) {
+                    throw new StateConflictException("Reservation is not waiting.");
+                }
+                Equipment equipment = equipmentRepository.findById(reservation.getEquipmentId())
+                        .orElseThrow(() -> new IllegalArgumentException("Equipment missing."));
+                ensureRentable(equipment);
+                if (equipment.getAvailableUnits() <= 0) {
+                    throw new StateConflictException("No stock available to fulfill reservation.");
+                }
+                Customer customer = customerRepository.findById(reservation.getCustomerId())
+                        .orElseThrow(() -> new IllegalArgumentException("Customer missing."));
+                return createRental(equipment, customer, days, actor, reservation);
+            } finally {
+                lock.unlock();
+            }
+        });
     }
 
     public double returnRental(int rentalId) {
-        Rental rental = DataStore.findRental(rentalId)
-                .orElseThrow(() -> new IllegalArgumentException("Rental not found."));
-
-        if (rental.isReturned()) {
-            return rental.getLateFeeCharged();
-        }
-
-        Equipment equipment = DataStore.findEquipment(rental.getEquipmentId())
-                .orElseThrow(() -> new IllegalStateException("Equipment missing from catalog."));
-
-        equipment.setAvailableUnits(equipment.getAvailableUnits() + 1);
-        DataStore.persistEquipment();
-        LocalDate returnDate = LocalDate.now();
-        rental.setReturnedOn(returnDate);
-
-        double fee = calculateLateFee(equipment, rental, returnDate);
-        rental.setLateFeeCharged(fee);
-        DataStore.persistRentals();
-        AuditLog.write("customer:" + rental.getCustomerId(), "Returned rental " + rental.getId() + " fee=" + fee);
-        return fee;
+        return repositories.execute(() -> {
+            Rental rental = rentalRepository.findById(rentalId)
+                    .orElseThrow(() -> new IllegalArgumentException("Rental not found."));
+            Lock lock = equipmentRepository.lockFor(rental.getEquipmentId());
+            lock.lock();
+            try {
+                if (rental.isReturned()) {
+                    return rental.getLateFeeCharged();
+                }
+
+                Equipment equipment = equipmentRepository.findById(rental.getEquipmentId())
+                        .orElseThrow(() -> new IllegalStateException("Equipment missing from catalog."));
+
+                LocalDate returnDate = LocalDate.now();
+                double fee = calculateLateFee(equipment, rental, returnDate);
+                rentalRepository.checkIn(rental, equipment, returnDate, fee);
+                AuditLog.write("customer:" + rental.getCustomerId(),
+                        "Returned rental " + rental.getId() + " fee=" + fee);
+                return fee;
+            } finally {
+                lock.unlock();
+            }
+        });
     }
 
     public Rental extendRental(int rentalId, int extraDays) {
         validateDuration(extraDays);
-        Rental rental = DataStore.findRental(rentalId)
-                .orElseThrow(() -> new IllegalArgumentException("Rental not found."));
-        if (rental.isReturned()) {
-            throw new IllegalStateException("Returned rentals cannot be extended.");
-        }
-        rental.setDueDate(rental.getDueDate().plusDays(extraDays));
-        DataStore.persistRentals();
-        AuditLog.write("customer:" + rental.getCustomerId(),
-                "Extended rental " + rental.getId() + " by " + extraDays + " days");
-        return rental;
+        return repositories.execute(() -> {
+            Rental rental = rentalRepository.findById(rentalId)
+                    .orElseThrow(() -> new IllegalArgumentException("Rental not found."));
+            Lock lock = equipmentRepository.lockFor(rental.getEquipmentId());
+            lock.lock();
+            try {
+                if (rental.isReturned()) {
+                    throw new StateConflictException("Returned rentals cannot be extended.");
+                }
+                rentalRepository.changeDueDate(rental, rental.getDueDate().plusDays(extraDays));
+            } finally {
+                lock.unlock();
+            }
+            AuditLog.write("customer:" + rental.getCustomerId(),
+                    "Extended rental " + rental.getId() + " by " + extraDays + " days");
+            return rental;
+        });
     }
 
     public double totalHeldDeposits() {
-        return DataStore.getRentals().stream()
-                .filter(r -> !r.isReturned())
-                .mapToDouble(Rental::getDepositAmount)
-                .sum();
+        return rentalRepository.heldDeposits();
     }
 
     public List<Rental> overdueRentals() {
-        LocalDate today = LocalDate.now();
-        return DataStore.getRentals().stream()
-                .filter(r -> !r.isReturned() && r.getDueDate().isBefore(today))
-                .collect(Collectors.toList());
+        return rentalRepository.findOverdue(LocalDate.now());
     }
 
     public double projectedLateFee(Rental rental) {
-        Equipment equipment = DataStore.findEquipment(rental.getEquipmentId())
+        Equipment equipment = equipmentRepository.findById(rental.getEquipmentId())
                 .orElseThrow(() -> new IllegalStateException("Equipment missing from catalog."));
         return calculateLateFee(equipment, rental, LocalDate.now());
     }
@@ -133,40 +179,59 @@ public class RentalService {
 
     private void ensureRentable(Equipment equipment) {
         if (equipment.isUnderMaintenance()) {
-            throw new IllegalStateException("Equipment is under maintenance.");
+            throw new StateConflictException("Equipment is under maintenance.");
         }
         enforceCategoryCapacity(equipment);
     }
 
-    private Rental createRental(Equipment equipment, Customer customer, int days, String actor) {
-        equipment.setAvailableUnits(equipment.getAvailableUnits() - 1);
-        DataStore.persistEquipment();
-
+    // The unit is claimed and the category limit re-checked by the repository as the rental is added, since
+    // concurrent checkouts share no lock.
+    private Rental createRental(Equipment equipment, Customer customer, int days, String actor,
+            Reservation fulfilling) {
         LocalDate start = LocalDate.now();
         LocalDate due = start.plusDays(days);
         double deposit = equipment.getDepositAmount() > 0 ? equipment.getDepositAmount() : equipment.getDailyRate();
-        Rental rental = DataStore.addRental(equipment.getId(), customer.getId(), start, due, deposit);
+        Rental rental = rentalRepository.checkOut(equipment, customer.getId(), start, due, deposit,
+                MAX_ACTIVE_RENTALS_PER_CATEGORY, fulfilling);
         AuditLog.write(actor, "Created rental " + rental.getId() + " for equipment " + equipment.getId());
         return rental;
     }
 
     private void enforceCategoryCapacity(Equipment requestEquipment) {
-        long activeInCategory = DataStore.getRentals().stream()
+        int activeInCategory = rentalRepository.countActiveInCategory(requestEquipment.getCategory());
+        if (VERIFY_INDEXES) {
+            long scanned = scanActiveInCategory(requestEquipment.getCategory());
+            // A counter that moved during the scan means another checkout raced it; only a stable one is compared.
+            boolean stable = rentalRepository.countActiveInCategory(requestEquipment.getCategory())
+                    == activeInCategory;
+            if (stable && scanned != activeInCategory) {
+                throw new IllegalStateException("Category counter drift for " + requestEquipment.getCategory()
+                        + ": indexed " + activeInCategory + ", scanned " + scanned);
+            }
+        }
+        if (activeInCategory >= MAX_ACTIVE_RENTALS_PER_CATEGORY) {
+            throw new StateConflictException("Category capacity reached for " + requestEquipment.getCategory());
+        }
+    }
+
+    private long scanActiveInCategory(String category) {
+        return rentalRepository.findAll().stream()
                 .filter(r -> !r.isReturned())
-                .map(r -> DataStore.findEquipment(r.getEquipmentId()))
+                .map(r -> equipmentRepository.findById(r.getEquipmentId()))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
-                .filter(eq -> eq.getCategory().equalsIgnoreCase(requestEquipment.getCategory()))
+                .filter(eq -> eq.getCategory().trim().equalsIgnoreCase(category.trim()))
                 .count();
-        if (activeInCategory >= MAX_ACTIVE_RENTALS_PER_CATEGORY) {
-            throw new IllegalStateException("Category capacity reached for " + requestEquipment.getCategory());
-        }
     }
 
     private double calculateLateFee(Equipment equipment, Rental rental, LocalDate returnDate) {
-        if (returnDate.isAfter(rental.getDueDate())) {
-            long overdueDays = ChronoUnit.DAYS.between(rental.getDueDate(), returnDate);
-            return overdueDays * equipment.getDailyRate() * 1.25;
+        return lateFee(equipment.getDailyRate(), rental.getDueDate(), returnDate);
+    }
+
+    static double lateFee(double dailyRate, LocalDate dueDate, LocalDate returnDate) {
+        if (returnDate.isAfter(dueDate)) {
+            long overdueDays = ChronoUnit.DAYS.between(dueDate, returnDate);
+            return overdueDays * dailyRate * 1.25;
         }
         return 0.0;
     }
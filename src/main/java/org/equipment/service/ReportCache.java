@@ -0,0 +1,113 @@
+package org.equipment.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Report results keyed by report name and parameters. An entry is only reused while the store version it was
+ * computed at is still current and its optional time-to-live has not run out; the least recently used entry is
+ * evicted once the cache is full. Values are shared between callers and must not be modified.
+ */
+public final class ReportCache {
+    private final int maxEntries;
+    private final LongSupplier version;
+    private final LongSupplier clock;
+    private final Map<List<Object>, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ReportCache(int maxEntries, LongSupplier version) {
+        this(maxEntries, version, System::nanoTime);
+    }
+
+    ReportCache(int maxEntries, LongSupplier version, LongSupplier clock) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative.");
+        }
+        this.maxEntries = maxEntries;
+        this.version = version;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                return size() > ReportCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of {@code report} for {@code parameters}, computing and caching it on a miss.
+     * The computation runs outside the cache lock; a result computed while the store changed is stored under
+     * the version read beforehand and so is never served as current.
+     *
+     * @param ttl how long the result may be served, or {@code null} for as long as the store is unchanged
+     */
+    public <T> T get(String report, Duration ttl, Supplier<T> compute, Object... parameters) {
+        List<Object> key = key(report, parameters);
+        long current = version.getAsLong();
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == current && (!entry.expires || now - entry.expiresAt < 0)) {
+                hits.incrementAndGet();
+                @SuppressWarnings("unchecked")
+                T value = (T) entry.value;
+                return value;
+            }
+        }
+        misses.incrementAndGet();
+        T value = compute.get();
+        if (maxEntries > 0) {
+            synchronized (entries) {
+                entries.put(key, new Entry(current, ttl, now, value));
+            }
+        }
+        return value;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static List<Object> key(String report, Object[] parameters) {
+        Object[] key = Arrays.copyOf(parameters, parameters.length + 1);
+        key[parameters.length] = report;
+        return Arrays.asList(key);
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final boolean expires;
+        private final long expiresAt;
+        private final Object value;
+
+        private Entry(long version, Duration ttl, long computedAt, Object value) {
+            this.version = version;
+            this.expires = ttl != null;
+            this.expiresAt = ttl == null ? 0 : computedAt + ttl.toNanos();
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package org.equipment.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+import org.equipment.data.RentalRepository;
+import org.equipment.data.Repositories;
+import org.equipment.data.StoreSnapshot;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+
+/**
+ * Ad-hoc reports that cannot be served from the store's running aggregates, such as overdue counts as of an
+ * arbitrary date. Each report reads one {@link Repositories#snapshot()}, so it sees a consistent state and never
+ * holds up writers. The rentals are split into chunks that are filtered and aggregated as fork-join tasks, each
+ * archive segment is decompressed and aggregated as a task of its own, and equipment attributes come from a
+ * lookup built once per report rather than a repository call per row.
+ * <p>
+ * {@code equipment.reports.parallelism} (default: the common pool's parallelism) sets how many workers a
+ * report may use. At the default the common pool runs the chunks; {@code 1} runs them on the calling thread.
+ */
+public class ReportEngine {
+    private static final int DEFAULT_PARALLELISM = Integer.getInteger("equipment.reports.parallelism",
+            ForkJoinPool.getCommonPoolParallelism());
+    private static final int MIN_CHUNK = 4096;
+    // Pools for non-default parallelism, shared by every engine; their workers are daemon threads.
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private final Repositories repositories;
+    private final RentalRepository rentalRepository;
+    private final int parallelism;
+    private final int minChunk;
+
+    public ReportEngine() {
+        this(Repositories.store());
+    }
+
+    public ReportEngine(Repositories repositories) {
+        this(repositories, DEFAULT_PARALLELISM);
+    }
+
+    public ReportEngine(Repositories repositories, int parallelism) {
+        this(repositories, parallelism, MIN_CHUNK);
+    }
+
+    ReportEngine(Repositories repositories, int parallelism, int minChunk) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        this.repositories = repositories;
+        this.rentalRepository = repositories.rentals();
+        this.parallelism = parallelism;
+        this.minChunk = minChunk;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Rentals that were overdue on {@code asOf}: due before it and not yet returned by then, counted per
+     * equipment category over the full history, archived rentals included.
+     */
+    public Map<String, Long> overdueByCategory(LocalDate asOf) {
+        StoreSnapshot snapshot = repositories.snapshot();
+        EquipmentLookup equipment = new EquipmentLookup(snapshot.equipment());
+        return this.<Map<String, Long>>aggregate(snapshot.rentals(), true, HashMap::new, (counts, rental) -> {
+            if (rental.getDueDate().isBefore(asOf)
+                    && (!rental.isReturned() || rental.getReturnedOn().isAfter(asOf))) {
+                counts.merge(equipment.category(rental.getEquipmentId()), 1L, Long::sum);
+            }
+        }, ReportEngine::mergeCounts);
+    }
+
+    /**
+     * Late fees the open rentals would be charged if they were all returned on {@code asOf}, per equipment
+     * category. Categories without a fee are left out.
+     */
+    public Map<String, Double> projectedLateFeesByCategory(LocalDate asOf) {
+        StoreSnapshot snapshot = repositories.snapshot();
+        EquipmentLookup equipment = new EquipmentLookup(snapshot.equipment());
+        return this.<Map<String, Double>>aggregate(snapshot.rentals(), false, HashMap::new, (fees, rental) -> {
+            if (!rental.isReturned() && rental.getDueDate().isBefore(asOf)) {
+                double fee = RentalService.lateFee(equipment.dailyRate(rental.getEquipmentId()),
+                        rental.getDueDate(), asOf);
+                fees.merge(equipment.category(rental.getEquipmentId()), fee, Double::sum);
+            }
+        }, ReportEngine::mergeFees);
+    }
+
+    public double projectedLateFees(LocalDate asOf) {
+        return projectedLateFeesByCategory(asOf).values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    /**
+     * Aggregates {@code rentals} in chunks and, if {@code archived}, every archive part as a separate task.
+     * Rentals archived after the snapshot was taken are already in {@code rentals}; their archived copies are
+     * skipped using a bitset of the snapshot's ids.
+     */
+    private <A> A aggregate(List<Rental> rentals, boolean archived, Supplier<A> identity,
+            BiConsumer<A, Rental> accumulator, BinaryOperator<A> combiner) {
+        int chunk = Math.max(minChunk, rentals.size() / (parallelism * 4) + 1);
+        List<RecursiveTask<A>> parts = new ArrayList<>();
+        parts.add(new Chunk<>(rentals, 0, rentals.size(), chunk, identity, accumulator, combiner));
+        if (archived) {
+            int base = Integer.MAX_VALUE;
+            for (Rental rental : rentals) {
+                base = Math.min(base, rental.getId());
+            }
+            BitSet inSnapshot = new BitSet();
+            for (Rental rental : rentals) {
+                inSnapshot.set(rental.getId() - base);
+            }
+            for (int part = 0, count = rentalRepository.archivedParts(); part < count; part++) {
+                parts.add(new ArchivedPart<>(rentalRepository, part, inSnapshot, base, identity, accumulator));
+            }
+        }
+        boolean inline = parallelism == 1 || (parts.size() == 1 && rentals.size() <= chunk);
+        Parts<A> task = new Parts<>(parts, inline, combiner);
+        if (inline) {
+            return task.invoke();
+        }
+        ForkJoinPool pool = parallelism == ForkJoinPool.getCommonPoolParallelism()
+                ? ForkJoinPool.commonPool()
+                : POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        return pool.invoke(task);
+    }
+
+    private static <K> Map<K, Long> mergeCounts(Map<K, Long> left, Map<K, Long> right) {
+        right.forEach((key, count) -> left.merge(key, count, Long::sum));
+        return left;
+    }
+
+    private static <K> Map<K, Double> mergeFees(Map<K, Double> left, Map<K, Double> right) {
+        right.forEach((key, fee) -> left.merge(key, fee, Double::sum));
+        return left;
+    }
+
+    // Runs the parts as tasks of their own, or one after another when inline, and combines them in order.
+    private static final class Parts<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<RecursiveTask<A>> parts;
+        private final boolean inline;
+        private final BinaryOperator<A> combiner;
+
+        private Parts(List<RecursiveTask<A>> parts, boolean inline, BinaryOperator<A> combiner) {
+            this.parts = parts;
+            this.inline = inline;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (!inline) {
+                invokeAll(parts);
+            }
+            A result = null;
+            for (RecursiveTask<A> part : parts) {
+                A partial = inline ? part.invoke() : part.join();
+                result = result == null ? partial : combiner.apply(result, partial);
+            }
+            return result;
+        }
+    }
+
+    // Decompresses one archive part and aggregates the rentals that are not also in the snapshot.
+    private static final class ArchivedPart<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final RentalRepository rentals;
+        private final int part;
+        private final BitSet inSnapshot;
+        private final int base;
+        private final Supplier<A> identity;
+        private final BiConsumer<A, Rental> accumulator;
+
+        private ArchivedPart(RentalRepository rentals, int part, BitSet inSnapshot, int base, Supplier<A> identity,
+                BiConsumer<A, Rental> accumulator) {
+            this.rentals = rentals;
+            this.part = part;
+            this.inSnapshot = inSnapshot;
+            this.base = base;
+            this.identity = identity;
+            this.accumulator = accumulator;
+        }
+
+        @Override
+        protected A compute() {
+            A result = identity.get();
+            rentals.forEachArchived(part, rental -> {
+                if (rental.getId() < base || !inSnapshot.get(rental.getId() - base)) {
+                    accumulator.accept(result, rental);
+                }
+            });
+            return result;
+        }
+    }
+
+    private static final class Chunk<A> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Rental> rentals;
+        private final int from;
+        private final int to;
+        private final int size;
+        private final Supplier<A> identity;
+        private final BiConsumer<A, Rental> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        private Chunk(List<Rental> rentals, int from, int to, int size, Supplier<A> identity,
+                BiConsumer<A, Rental> accumulator, BinaryOperator<A> combiner) {
+            this.rentals = rentals;
+            this.from = from;
+            this.to = to;
+            this.size = size;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= size) {
+                A result = identity.get();
+                for (int i = from; i < to; i++) {
+                    accumulator.accept(result, rentals.get(i));
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            Chunk<A> left = new Chunk<>(rentals, from, middle, size, identity, accumulator, combiner);
+            Chunk<A> right = new Chunk<>(rentals, middle, to, size, identity, accumulator, combiner);
+            left.fork();
+            A rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+
+    /**
+     * Catalog snapshot indexed by id: a dense array when ids are close together, as the store assigns them,
+     * otherwise a hash map.
+     */
+    private static final class EquipmentLookup {
+        private final int base;
+        private final Equipment[] dense;
+        private final Map<Integer, Equipment> sparse;
+
+        private EquipmentLookup(List<Equipment> catalog) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (Equipment equipment : catalog) {
+                min = Math.min(min, equipment.getId());
+                max = Math.max(max, equipment.getId());
+            }
+            if (catalog.isEmpty() || (long) max - min > catalog.size() * 4L + 1024) {
+                base = 0;
+                dense = null;
+                sparse = new HashMap<>();
+                catalog.forEach(equipment -> sparse.put(equipment.getId(), equipment));
+            } else {
+                base = min;
+                dense = new Equipment[max - min + 1];
+                sparse = null;
+                catalog.forEach(equipment -> dense[equipment.getId() - base] = equipment);
+            }
+        }
+
+        private Equipment get(int id) {
+            if (dense == null) {
+                return sparse.get(id);
+            }
+            int slot = id - base;
+            return slot >= 0 && slot < dense.length ? dense[slot] : null;
+        }
+
+        private String category(int id) {
+            Equipment equipment = get(id);
+            return equipment == null ? "Unknown" : equipment.getCategory();
+        }
+
+        private double dailyRate(int id) {
+            Equipment equipment = get(id);
+            return equipment == null ? 0 : equipment.getDailyRate();
+        }
+    }
+}
@@ -1,55 +1,251 @@
 package org.equipment.service;
 
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Comparator;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import org.equipment.data.DataStore;
+import org.equipment.data.CustomerRepository;
+import org.equipment.data.EquipmentRepository;
+import org.equipment.data.RentalRepository;
+import org.equipment.data.Repositories;
+import org.equipment.data.UsageSummary;
 import org.equipment.domain.Customer;
 import org.equipment.domain.Equipment;
 import org.equipment.domain.Rental;
 
+/**
+ * Dashboard figures. Totals and overdue counts are read from running aggregates kept by the store; with
+ * {@code equipment.debug.verifyIndexes} each read is also recomputed from a full scan and any drift is
+ * reported as an {@link IllegalStateException}.
+ * <p>
+ * Results are kept in a {@link ReportCache} of {@code equipment.reports.cacheSize} entries (default 64) and
+ * served again until the store changes. Reports for "today" also expire at midnight. Returned collections
+ * are shared and read-only.
+ */
 public class ReportService {
+    private static final boolean VERIFY_TOTALS = Boolean.getBoolean("equipment.debug.verifyIndexes");
+    // Running sums add and subtract doubles, so they may differ from a fresh sum in the last bits.
+    private static final double DRIFT_TOLERANCE = 0.005;
+    private static final int CACHE_SIZE = Integer.getInteger("equipment.reports.cacheSize", 64);
+
+    private final EquipmentRepository equipmentRepository;
+    private final CustomerRepository customerRepository;
+    private final RentalRepository rentalRepository;
+    private final ReportEngine engine;
+    private final ReportCache cache;
+
+    public ReportService() {
+        this(Repositories.store());
+    }
+
+    public ReportService(Repositories repositories) {
+        this.equipmentRepository = repositories.equipment();
+        this.customerRepository = repositories.customers();
+        this.rentalRepository = repositories.rentals();
+        this.engine = new ReportEngine(repositories);
+        this.cache = new ReportCache(CACHE_SIZE, repositories::version);
+    }
+
+    /**
+     * The result cache, e.g. to read its hit and miss counters.
+     */
+    public ReportCache cache() {
+        return cache;
+    }
 
     public double totalHeldDeposits() {
-        return DataStore.getRentals().stream()
-                .filter(r -> !r.isReturned())
-                .mapToDouble(Rental::getDepositAmount)
-                .sum();
+        return cache.get("totalHeldDeposits", null, this::computeHeldDeposits);
+    }
+
+    private double computeHeldDeposits() {
+        double held = rentalRepository.heldDeposits();
+        if (VERIFY_TOTALS) {
+            checkDrift("Held deposits", held, rentalRepository::heldDeposits, () -> rentalRepository.findAll().stream()
+                    .filter(r -> !r.isReturned())
+                    .mapToDouble(Rental::getDepositAmount)
+                    .sum());
+        }
+        return held;
     }
 
     public double totalLateFeesCollected() {
-        return DataStore.getRentals().stream()
-                .mapToDouble(Rental::getLateFeeCharged)
-                .sum();
+        return cache.get("totalLateFeesCollected", null, this::computeLateFeesCollected);
+    }
+
+    private double computeLateFeesCollected() {
+        double fees = rentalRepository.lateFeesCollected();
+        if (VERIFY_TOTALS) {
+            checkDrift("Late fees", fees, rentalRepository::lateFeesCollected, () -> {
+                DoubleAdder archived = new DoubleAdder();
+                rentalRepository.forEachArchived(rental -> archived.add(rental.getLateFeeCharged()));
+                return rentalRepository.findAll().stream()
+                        .mapToDouble(Rental::getLateFeeCharged)
+                        .sum() + archived.sum();
+            });
+        }
+        return fees;
+    }
+
+    public int activeRentalCount() {
+        return cache.get("activeRentalCount", null, this::computeActiveRentalCount);
+    }
+
+    private int computeActiveRentalCount() {
+        int active = rentalRepository.countActive();
+        if (VERIFY_TOTALS) {
+            checkDrift("Active rentals", active, rentalRepository::countActive,
+                    () -> rentalRepository.findAll().stream().filter(r -> !r.isReturned()).count());
+        }
+        return active;
+    }
+
+    /**
+     * Overdue rentals per category as of an arbitrary date, past or future, computed by the parallel
+     * {@link ReportEngine} over the full rental history.
+     */
+    public Map<String, Long> overdueByCategory(LocalDate asOf) {
+        return cache.get("overdueByCategoryAsOf", null,
+                () -> Collections.unmodifiableMap(engine.overdueByCategory(asOf)), asOf);
+    }
+
+    /**
+     * Late fees the open rentals would owe if all were returned on {@code asOf}, per category.
+     */
+    public Map<String, Double> projectedLateFeesByCategory(LocalDate asOf) {
+        return cache.get("projectedLateFeesByCategory", null,
+                () -> Collections.unmodifiableMap(engine.projectedLateFeesByCategory(asOf)), asOf);
+    }
+
+    /**
+     * Rentals overdue today, earliest due first, mapped to the late fee each would be charged if returned today.
+     */
+    public Map<Rental, Double> overdueWithProjectedFees() {
+        return cache.get("overdueWithProjectedFees", untilMidnight(), () -> {
+            LocalDate today = LocalDate.now();
+            Map<Rental, Double> fees = new LinkedHashMap<>();
+            for (Rental rental : rentalRepository.findOverdue(today)) {
+                double dailyRate = equipmentRepository.findById(rental.getEquipmentId())
+                        .map(Equipment::getDailyRate)
+                        .orElse(0.0);
+                fees.put(rental, RentalService.lateFee(dailyRate, rental.getDueDate(), today));
+            }
+            return Collections.unmodifiableMap(fees);
+        });
     }
 
     public Map<String, Long> overdueByCategory() {
+        return cache.get("overdueByCategory", untilMidnight(), this::computeOverdueByCategory);
+    }
+
+    private Map<String, Long> computeOverdueByCategory() {
         LocalDate today = LocalDate.now();
-        return DataStore.getRentals().stream()
-                .filter(r -> !r.isReturned() && r.getDueDate().isBefore(today))
-                .collect(Collectors.groupingBy(
-                        rental -> DataStore.findEquipment(rental.getEquipmentId())
-                                .map(Equipment::getCategory)
-                                .orElse("Unknown"),
-                        Collectors.counting()));
+        Map<String, Long> overdue = rentalRepository.countOverdueByCategory(today);
+        if (VERIFY_TOTALS) {
+            Map<String, Long> scanned = engine.overdueByCategory(today);
+            if (rentalRepository.countOverdueByCategory(today).equals(overdue) && !scanned.equals(overdue)) {
+                throw new IllegalStateException("Overdue count drift: indexed " + overdue + ", scanned " + scanned);
+            }
+        }
+        return Collections.unmodifiableMap(overdue);
+    }
+
+    // Overdue status moves at midnight even when the store does not change.
+    private static Duration untilMidnight() {
+        return Duration.between(LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay());
+    }
+
+    // Only a figure that stayed put across the scan is compared, so concurrent rentals are not reported as drift.
+    private static void checkDrift(String figure, double indexed, DoubleSupplier current, DoubleSupplier scan) {
+        double scanned = scan.getAsDouble();
+        if (current.getAsDouble() == indexed && Math.abs(scanned - indexed) > DRIFT_TOLERANCE) {
+            throw new IllegalStateException(figure + " drift: indexed " + indexed + ", scanned " + scanned);
+        }
     }
 
     public List<CustomerSummary> topCustomersByRentals(int limit) {
-        Map<Integer, Long> counts = DataStore.getRentals().stream()
-                .collect(Collectors.groupingBy(Rental::getCustomerId, Collectors.counting()));
+        return cache.get("topCustomersByRentals", null, () -> {
+            Map<Integer, Long> top = rentalRepository.topCustomers(limit);
+            if (VERIFY_TOTALS) {
+                checkTopDrift(top, limit, rental -> true);
+            }
+            return summaries(top);
+        }, limit);
+    }
 
-        return counts.entrySet().stream()
-                .sorted(Map.Entry.<Integer, Long>comparingByValue(Comparator.reverseOrder()))
-                .limit(limit)
+    /**
+     * Top customers by rentals started between {@code from} and {@code to} inclusive, e.g. the last 30 days.
+     */
+    public List<CustomerSummary> topCustomersByRentals(int limit, LocalDate from, LocalDate to) {
+        return cache.get("topCustomersByRentalsBetween", null, () -> {
+            Map<Integer, Long> top = rentalRepository.topCustomers(limit, from, to);
+            if (VERIFY_TOTALS) {
+                checkTopDrift(top, limit, rental -> !rental.getStartDate().isBefore(from)
+                        && !rental.getStartDate().isAfter(to));
+            }
+            return summaries(top);
+        }, limit, from, to);
+    }
+
+    private List<CustomerSummary> summaries(Map<Integer, Long> top) {
+        return top.entrySet().stream()
                 .map(entry -> {
-                    Customer customer = DataStore.findCustomer(entry.getKey())
+                    Customer customer = customerRepository.findById(entry.getKey())
                             .orElse(new Customer(entry.getKey(), "Unknown", ""));
                     return new CustomerSummary(customer.getId(), customer.getName(), entry.getValue());
                 })
-                .collect(Collectors.toList());
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+    }
+
+    // Winners must carry their scanned counts, and nobody left out may have more rentals than the last winner.
+    private void checkTopDrift(Map<Integer, Long> top, int limit, Predicate<Rental> counted) {
+        Map<Integer, Long> scanned = new HashMap<>();
+        Consumer<Rental> count = rental -> {
+            if (counted.test(rental)) {
+                scanned.merge(rental.getCustomerId(), 1L, Long::sum);
+            }
+        };
+        rentalRepository.findAll().forEach(count);
+        rentalRepository.forEachArchived(count);
+        long cutoff = top.size() < limit ? 0 : top.values().stream().mapToLong(Long::longValue).min().orElse(0);
+        for (Integer customerId : top.keySet()) {
+            scanned.putIfAbsent(customerId, 0L);
+        }
+        for (Map.Entry<Integer, Long> entry : scanned.entrySet()) {
+            Long indexed = top.get(entry.getKey());
+            boolean drift = indexed == null ? entry.getValue() > cutoff : !indexed.equals(entry.getValue());
+            if (drift) {
+                throw new IllegalStateException("Top customer drift for " + entry.getKey() + ": indexed " + indexed
+                        + ", scanned " + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Revenue, late fees and units out per day, week or month between {@code from} and {@code to} inclusive,
+     * answered from the store's daily rollups in time proportional to the buckets in range.
+     */
+    public List<UsageSummary> usage(LocalDate from, LocalDate to, UsageSummary.Period period) {
+        return usage(from, to, period, null);
+    }
+
+    /**
+     * Like {@link #usage(LocalDate, LocalDate, UsageSummary.Period)} for one equipment category, compared
+     * case-insensitively.
+     */
+    public List<UsageSummary> usage(LocalDate from, LocalDate to, UsageSummary.Period period, String category) {
+        return cache.get("usage", null,
+                () -> Collections.unmodifiableList(rentalRepository.usage(from, to, period, category)),
+                from, to, period, category);
     }
 
     public static class CustomerSummary {
@@ -1,67 +1,85 @@
 package org.equipment.service;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.equipment.data.AuditLog;
-import org.equipment.data.DataStore;
+import org.equipment.data.CustomerRepository;
+import org.equipment.data.EquipmentRepository;
+import org.equipment.data.Repositories;
+import org.equipment.data.ReservationRepository;
+import org.equipment.data.StateConflictException;
 import org.equipment.domain.Customer;
 import org.equipment.domain.Equipment;
 import org.equipment.domain.Reservation;
 
 public class ReservationService {
+    private final EquipmentRepository equipmentRepository;
+    private final CustomerRepository customerRepository;
+    private final ReservationRepository reservationRepository;
+    private final Repositories repositories;
+
+    public ReservationService() {
+        this(Repositories.store());
+    }
+
+    public ReservationService(Repositories repositories) {
+        this.equipmentRepository = repositories.equipment();
+        this.customerRepository = repositories.customers();
+        this.reservationRepository = repositories.reservations();
+        this.repositories = repositories;
+    }
 
     public List<Reservation> listAll() {
-        return DataStore.getReservations();
+        return reservationRepository.findAll();
     }
 
     public List<Reservation> listWaiting() {
-        return DataStore.getReservations().stream()
-                .filter(r -> r.getStatus() == Reservation.Status.WAITING)
-                .collect(Collectors.toList());
+        return reservationRepository.findByStatus(Reservation.Status.WAITING);
+    }
+
+    public List<Reservation> listWaitingFor(int equipmentId) {
+        return reservationRepository.findByEquipment(equipmentId, Reservation.Status.WAITING);
     }
 
     public List<Reservation> listByCustomer(int customerId) {
-        return DataStore.getReservations().stream()
-                .filter(r -> r.getCustomerId() == customerId)
-                .collect(Collectors.toList());
+        return reservationRepository.findByCustomer(customerId);
     }
 
     public Reservation requestReservation(int equipmentId, int customerId) {
-        Equipment equipment = DataStore.findEquipment(equipmentId)
-                .orElseThrow(() -> new IllegalArgumentException("Equipment not found."));
-        Customer customer = DataStore.findCustomer(customerId)
-                .orElseThrow(() -> new IllegalArgumentException("Customer not found."));
+        return repositories.execute(() -> {
+            Equipment equipment = equipmentRepository.findById(equipmentId)
+                    .orElseThrow(() -> new IllegalArgumentException("Equipment not found."));
+            Customer customer = customerRepository.findById(customerId)
+                    .orElseThrow(() -> new IllegalArgumentException("Customer not found."));
 
-        if (!equipment.isUnderMaintenance() && equipment.getAvailableUnits() > 0) {
-            throw new IllegalStateException("Equipment currently available; please rent directly.");
-        }
+            if (!equipment.isUnderMaintenance() && equipment.getAvailableUnits() > 0) {
+                throw new StateConflictException("Equipment currently available; please rent directly.");
+            }
 
-        Reservation created = DataStore.addReservation(equipment.getId(), customer.getId());
-        AuditLog.write("customer:" + customer.getId(), "Requested reservation " + created.getId());
-        return created;
+            Reservation created = reservationRepository.add(equipment.getId(), customer.getId());
+            AuditLog.write("customer:" + customer.getId(), "Requested reservation " + created.getId());
+            return created;
+        });
     }
 
     public boolean declineReservation(int reservationId, String actor) {
-        return DataStore.findReservation(reservationId)
+        return repositories.execute(() -> reservationRepository.findById(reservationId)
                 .map(res -> {
-                    res.setStatus(Reservation.Status.DECLINED);
-                    DataStore.persistReservations();
+                    reservationRepository.changeStatus(res, Reservation.Status.DECLINED);
                     AuditLog.write(actor, "Declined reservation " + reservationId);
                     return true;
                 })
-                .orElse(false);
+                .orElse(false));
     }
 
     public boolean markFulfilled(int reservationId, String actor) {
-        return DataStore.findReservation(reservationId)
+        return repositories.execute(() -> reservationRepository.findById(reservationId)
                 .map(res -> {
-                    res.setStatus(Reservation.Status.FULFILLED);
-                    DataStore.persistReservations();
+                    reservationRepository.changeStatus(res, Reservation.Status.FULFILLED);
                     AuditLog.write(actor, "Fulfilled reservation " + reservationId);
                     return true;
                 })
-                .orElse(false);
+                .orElse(false));
     }
 }
 
@@ -0,0 +1,196 @@
+package org.equipment.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.equipment.data.DataStore;
+import org.equipment.data.RentalRepository;
+import org.equipment.data.Repositories;
+import org.equipment.support.TestDataSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ApiServerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ApiServer server;
+
+    @BeforeClass
+    public static void setupStore() {
+        TestDataSupport.initStore();
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        TestDataSupport.resetStore();
+        server = new ApiServer(Repositories.store(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void rentExtendAndReturnOverHttp() throws IOException {
+        Reply rented = call("POST", "/rentals", "{\"equipmentId\": 1001, \"customerId\": 5000, \"days\": 2}", false);
+        assertEquals(201, rented.status);
+        int rentalId = rented.json.get("id").asInt();
+        assertEquals(1001, rented.json.get("equipmentId").asInt());
+
+        Reply extended = call("POST", "/rentals/" + rentalId + "/extend", "{\"days\": 3}", false);
+        assertEquals(200, extended.status);
+        assertEquals(LocalDate.parse(rented.json.get("dueDate").asText()).plusDays(3),
+                LocalDate.parse(extended.json.get("dueDate").asText()));
+
+        Reply returned = call("POST", "/rentals/" + rentalId + "/return", "", false);
+        assertEquals(200, returned.status);
+        assertEquals(0.0, returned.json.get("lateFee").asDouble(), 0.0001);
+        assertTrue(DataStore.findRental(rentalId).get().isReturned());
+    }
+
+    @Test
+    public void invalidRequestsAreRejectedWithTheirStatus() throws IOException {
+        assertEquals(400, call("POST", "/rentals", "{\"equipmentId\": 1001}", false).status);
+        assertEquals(400, call("POST", "/rentals", "not json", false).status);
+        assertEquals(400, call("POST", "/rentals", "{\"equipmentId\": 1001, \"customerId\": 5000, \"days\": 2.5}",
+                false).status);
+        assertEquals(400, call("POST", "/rentals",
+                "{\"equipmentId\": 4294968297, \"customerId\": 5000, \"days\": 2}", false).status);
+        assertEquals(400, call("PUT", "/equipment/1001/stock", "{\"stock\": 1e12}", true).status);
+        assertEquals(404, call("GET", "/equipment/999999", null, false).status);
+        assertEquals(404, call("DELETE", "/equipment", null, false).status);
+        Reply unavailable = call("POST", "/rentals/424242/return", "", false);
+        assertEquals(400, unavailable.status);
+        assertTrue(unavailable.json.get("error").asText().contains("not found"));
+    }
+
+    @Test
+    public void storeFailuresAreInternalErrorsWithoutDetails() throws IOException {
+        Repositories store = Repositories.store();
+        RentalRepository failing = (RentalRepository) Proxy.newProxyInstance(RentalRepository.class.getClassLoader(),
+                new Class<?>[] {RentalRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("checkOut")) {
+                        throw new IllegalStateException("Failed writing /var/equipment/journal.log: disk full");
+                    }
+                    try {
+                        return method.invoke(store.rentals(), args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+        server.close();
+        server = new ApiServer(new Repositories(store.equipment(), store.customers(), failing, store.reservations()),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+
+        Reply failed = call("POST", "/rentals", "{\"equipmentId\": 1001, \"customerId\": 5000, \"days\": 2}", false);
+        assertEquals(500, failed.status);
+        assertEquals("Internal error.", failed.json.get("error").asText());
+    }
+
+    @Test
+    public void inventoryChangesNeedManagerCredentials() throws IOException {
+        assertEquals(401, call("PUT", "/equipment/1001/rate", "{\"dailyRate\": 21.0}", false).status);
+
+        long version = DataStore.findEquipment(1001).get().getVersion();
+        Reply updated = call("PUT", "/equipment/1001/rate",
+                "{\"dailyRate\": 21.0, \"expectedVersion\": " + version + "}", true);
+        assertEquals(200, updated.status);
+        assertEquals(21.0, updated.json.get("dailyRate").asDouble(), 0.0001);
+
+        assertEquals(400, call("PUT", "/equipment/1001/rate",
+                "{\"dailyRate\": 22.0, \"expectedVersion\": \"latest\"}", true).status);
+        assertEquals(400, call("PUT", "/equipment/1001/rate",
+                "{\"dailyRate\": 22.0, \"expectedVersion\": " + version + ".5}", true).status);
+        assertEquals(400, call("POST", "/equipment", "{\"name\": \"Tripod\", \"category\": \"Camera\", "
+                + "\"dailyRate\": 5.0, \"depositAmount\": \"abc\", \"stock\": 1}", true).status);
+
+        Reply stale = call("PUT", "/equipment/1001/rate",
+                "{\"dailyRate\": 22.0, \"expectedVersion\": " + version + "}", true);
+        assertEquals(409, stale.status);
+        assertEquals(21.0, DataStore.findEquipment(1001).get().getDailyRate(), 0.0001);
+    }
+
+    @Test
+    public void reportsAreServedToManagers() throws IOException {
+        Reply dashboard = call("GET", "/reports/dashboard", null, true);
+        assertEquals(200, dashboard.status);
+        assertEquals(DataStore.activeRentalCount(), dashboard.json.get("activeRentals").asInt());
+
+        assertEquals(200, call("GET", "/reports/usage?period=month", null, true).status);
+        assertEquals(400, call("GET", "/reports/usage?period=decade", null, true).status);
+    }
+
+    @Test
+    public void saturatedServerAnswers503() throws Exception {
+        server.inFlight().acquire(4);
+        try {
+            HttpURLConnection connection = open("GET", "/equipment", false);
+            assertEquals(503, connection.getResponseCode());
+            assertEquals("1", connection.getHeaderField("Retry-After"));
+        } finally {
+            server.inFlight().release(4);
+        }
+        assertEquals(200, call("GET", "/equipment", null, false).status);
+    }
+
+    private Reply call(String method, String path, String body, boolean manager) throws IOException {
+        HttpURLConnection connection = open(method, path, manager);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[4096];
+            for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return new Reply(status, MAPPER.readTree(new String(bytes.toByteArray(), StandardCharsets.UTF_8)));
+    }
+
+    private HttpURLConnection open(String method, String path, boolean manager) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port() + path)
+                .openConnection();
+        connection.setRequestMethod(method);
+        if (manager) {
+            connection.setRequestProperty("X-Manager-User", "admin");
+            connection.setRequestProperty("X-Manager-Pin", "1234");
+        }
+        return connection;
+    }
+
+    private static final class Reply {
+        private final int status;
+        private final JsonNode json;
+
+        private Reply(int status, JsonNode json) {
+            this.status = status;
+            this.json = json;
+        }
+    }
+}
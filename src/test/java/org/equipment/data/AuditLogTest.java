@@ -6,9 +6,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
 
 import org.equipment.support.TestDataSupport;
 import org.junit.After;
@@ -35,6 +38,8 @@ public class AuditLogTest {
 
     @After
     public void cleanup() throws IOException {
+        AuditLog.policies(AuditLog.FlushPolicy.TIME, AuditLog.OverflowPolicy.BLOCK);
+        AuditLog.rotation(AuditLog.RotationPolicy.SIZE, 1L << 20);
         if (testLogPath != null && Files.exists(testLogPath)) {
             Files.deleteIfExists(testLogPath);
         }
@@ -104,5 +109,119 @@ public class AuditLogTest {
         String content = AuditLog.readAll();
         assertTrue(content.contains("configure test"));
     }
-}
 
+    @Test
+    public void syncPolicyWritesOnCallerThread() throws IOException {
+        AuditLog.policies(AuditLog.FlushPolicy.SYNC, AuditLog.OverflowPolicy.BLOCK);
+        AuditLog.write("sync", "immediate");
+        String content = new String(Files.readAllBytes(testLogPath), StandardCharsets.UTF_8);
+        assertTrue(content.contains("sync | immediate"));
+    }
+
+    @Test
+    public void flushDrainsBufferedEntries() throws IOException {
+        AuditLog.policies(AuditLog.FlushPolicy.COUNT, AuditLog.OverflowPolicy.DROP);
+        for (int i = 0; i < 10; i++) {
+            AuditLog.write("batch", "entry " + i);
+        }
+        AuditLog.flush();
+        List<String> lines = Files.readAllLines(testLogPath, StandardCharsets.UTF_8);
+        assertEquals(10, lines.size());
+        assertTrue(lines.get(9).endsWith("batch | entry 9"));
+    }
+
+    @Test
+    public void shutdownClosesAndLaterWritesReopen() {
+        AuditLog.write("before", "shutdown");
+        AuditLog.shutdown();
+        AuditLog.write("after", "shutdown");
+        String content = AuditLog.readAll();
+        assertTrue(content.contains("before | shutdown"));
+        assertTrue(content.contains("after | shutdown"));
+        assertEquals(0, AuditLog.droppedEntries());
+    }
+
+    @Test
+    public void sizeRotationKeepsEntriesReadableAcrossSegments() throws IOException {
+        Path dir = Paths.get("target", "test-audit-rotation-" + System.nanoTime()).toAbsolutePath();
+        AuditLog.configure(dir);
+        AuditLog.rotation(AuditLog.RotationPolicy.SIZE, 200);
+        for (int i = 0; i < 30; i++) {
+            AuditLog.write("rotor", "entry " + i);
+        }
+        AuditLog.flush();
+
+        assertTrue(Files.exists(dir.resolve("audit-000001.log")));
+        assertTrue(Files.exists(dir.resolve("audit.idx")));
+        List<String> tail = AuditLog.tail(5);
+        assertEquals(5, tail.size());
+        assertTrue(tail.get(4).endsWith("entry 29"));
+        assertTrue(tail.get(0).endsWith("entry 25"));
+
+        List<String> older = AuditLog.page(5, 5);
+        assertTrue(older.get(0).endsWith("entry 0"));
+        assertTrue(older.get(4).endsWith("entry 4"));
+        assertTrue(AuditLog.page(6, 5).isEmpty());
+        assertTrue(AuditLog.readAll().contains("entry 0"));
+    }
+
+    @Test
+    public void segmentMovedButNotIndexedIsRecoveredOnOpen() throws IOException {
+        Path dir = Paths.get("target", "test-audit-recover-" + System.nanoTime()).toAbsolutePath();
+        AuditLog.configure(dir);
+        AuditLog.rotation(AuditLog.RotationPolicy.SIZE, 200);
+        for (int i = 0; i < 10; i++) {
+            AuditLog.write("rotor", "entry " + i);
+        }
+        AuditLog.shutdown();
+        Path index = dir.resolve("audit.idx");
+        List<String> indexed = Files.readAllLines(index, StandardCharsets.UTF_8);
+        int crashed = indexed.size() + 1;
+        Files.move(dir.resolve("audit.log"), dir.resolve(String.format("audit-%06d.log", crashed)));
+
+        AuditLog.configure(dir);
+
+        assertEquals(crashed, Files.readAllLines(index, StandardCharsets.UTF_8).size());
+        List<String> tail = AuditLog.tail(1);
+        assertEquals(1, tail.size());
+        assertTrue(tail.get(0).endsWith("entry 9"));
+        AuditLog.write("rotor", "after recovery");
+        AuditLog.flush();
+        assertTrue(AuditLog.tail(1).get(0).endsWith("after recovery"));
+        assertTrue(AuditLog.readAll().contains("entry 0"));
+    }
+
+    @Test
+    public void betweenSelectsEntriesByTimestamp() {
+        Path dir = Paths.get("target", "test-audit-range-" + System.nanoTime()).toAbsolutePath();
+        AuditLog.configure(dir);
+        AuditLog.rotation(AuditLog.RotationPolicy.SIZE, 300);
+        LocalDateTime before = LocalDateTime.now().minusSeconds(1);
+        for (int i = 0; i < 20; i++) {
+            AuditLog.write("range", "entry " + i);
+        }
+        LocalDateTime after = LocalDateTime.now().plusSeconds(2);
+
+        assertEquals(20, AuditLog.between(before, after).size());
+        assertTrue(AuditLog.between(after, after.plusDays(1)).isEmpty());
+        assertTrue(AuditLog.between(before.minusDays(1), before.minusHours(1)).isEmpty());
+    }
+
+    @Test
+    public void malformedFirstLineDoesNotStopTheWriter() throws IOException {
+        Path dir = Paths.get("target", "test-audit-malformed-" + System.nanoTime()).toAbsolutePath();
+        Files.createDirectories(dir);
+        Files.write(dir.resolve("audit.log"), ("not a timestamp | someone | edited by hand"
+                + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        AuditLog.configure(dir);
+        AuditLog.rotation(AuditLog.RotationPolicy.DAILY, 1L << 20);
+
+        AuditLog.write("after", "malformed line");
+        AuditLog.write("after", "second entry");
+        AuditLog.flush();
+
+        List<String> tail = AuditLog.tail(2);
+        assertEquals(2, tail.size());
+        assertTrue(tail.get(1).endsWith("second entry"));
+    }
+}
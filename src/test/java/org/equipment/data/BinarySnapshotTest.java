@@ -0,0 +1,136 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.equipment.domain.Customer;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinarySnapshotTest {
+
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        Path dir = Paths.get("target", "test-snapshots").toAbsolutePath();
+        Files.createDirectories(dir);
+        file = dir.resolve("snapshot.dat");
+        Files.deleteIfExists(file);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void equipmentRoundTripsWithSharedStrings() throws IOException {
+        List<Equipment> items = Arrays.asList(
+                new Equipment(1000, "Drill", "Tool", 18.0, 75.0, 5, false),
+                new Equipment(1001, "Saw", "Tool", 12.5, 40.0, 0, true));
+
+        List<Object> loaded = roundTrip(Journal.Kind.EQUIPMENT, items);
+
+        Equipment saw = (Equipment) loaded.get(1);
+        assertEquals(1001, saw.getId());
+        assertEquals("Saw", saw.getName());
+        assertEquals("Tool", saw.getCategory());
+        assertEquals(12.5, saw.getDailyRate(), 0.0);
+        assertEquals(40.0, saw.getDepositAmount(), 0.0);
+        assertEquals(0, saw.getAvailableUnits());
+        assertEquals(true, saw.isUnderMaintenance());
+        // "Tool" is stored once: header, table of three strings, two fixed-width records.
+        int table = 4 + (4 + 5) + (4 + 4) + (4 + 3);
+        assertEquals(12 + table + 2 * BinarySnapshot.width(Journal.Kind.EQUIPMENT), Files.size(file));
+    }
+
+    @Test
+    public void rentalsKeepDatesAndReturnState() throws IOException {
+        Rental open = new Rental(9000, 1000, 5000, LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 5), 75.0);
+        Rental returned = new Rental(9001, 1001, 5001, LocalDate.of(1969, 12, 31), LocalDate.of(2024, 2, 1), 40.0);
+        returned.setReturnedOn(LocalDate.of(2024, 2, 3));
+        returned.setLateFeeCharged(7.5);
+
+        List<Object> loaded = roundTrip(Journal.Kind.RENTAL, Arrays.asList(open, returned));
+
+        Rental first = (Rental) loaded.get(0);
+        assertEquals(LocalDate.of(2024, 1, 5), first.getDueDate());
+        assertFalse(first.isReturned());
+        Rental second = (Rental) loaded.get(1);
+        assertEquals(LocalDate.of(1969, 12, 31), second.getStartDate());
+        assertEquals(LocalDate.of(2024, 2, 3), second.getReturnedOn());
+        assertEquals(7.5, second.getLateFeeCharged(), 0.0);
+    }
+
+    @Test
+    public void customersAndReservationsKeepNulls() throws IOException {
+        List<Object> customers = roundTrip(Journal.Kind.CUSTOMER,
+                Arrays.asList(new Customer(5000, "Asha Gupta", null)));
+        assertEquals("Asha Gupta", ((Customer) customers.get(0)).getName());
+        assertNull(((Customer) customers.get(0)).getPhone());
+
+        List<Object> reservations = roundTrip(Journal.Kind.RESERVATION, Arrays.asList(
+                new Reservation(12000, 1000, 5000, LocalDate.of(2024, 3, 1), Reservation.Status.APPROVED),
+                new Reservation(12001, 1000, 5000, null, null)));
+        assertEquals(Reservation.Status.APPROVED, ((Reservation) reservations.get(0)).getStatus());
+        assertNull(((Reservation) reservations.get(1)).getRequestedOn());
+        assertNull(((Reservation) reservations.get(1)).getStatus());
+    }
+
+    @Test
+    public void versionStampsAreKept() throws IOException {
+        Customer customer = new Customer(5000, "Asha Gupta", "999-111-2222");
+        customer.setVersion(7);
+        List<Object> loaded = roundTrip(Journal.Kind.CUSTOMER, Arrays.asList(customer));
+        assertEquals(7, ((Customer) loaded.get(0)).getVersion());
+    }
+
+    @Test
+    public void missingFileIsReported() {
+        assertFalse(BinarySnapshot.stream(file, Journal.Kind.CUSTOMER, entity -> { }));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsFilesInAnotherFormat() throws IOException {
+        Files.write(file, "[ ]".getBytes(StandardCharsets.UTF_8));
+        BinarySnapshot.stream(file, Journal.Kind.CUSTOMER, entity -> { });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSnapshotOfAnotherCollection() throws IOException {
+        Files.write(file, BinarySnapshot.encode(Journal.Kind.CUSTOMER, new ArrayList<>()));
+        BinarySnapshot.stream(file, Journal.Kind.RENTAL, entity -> { });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTruncatedFiles() throws IOException {
+        byte[] full = BinarySnapshot.encode(Journal.Kind.CUSTOMER,
+                Arrays.asList(new Customer(5000, "Asha Gupta", "999-111-2222")));
+        Files.write(file, Arrays.copyOf(full, full.length - 1));
+        BinarySnapshot.stream(file, Journal.Kind.CUSTOMER, entity -> { });
+    }
+
+    private List<Object> roundTrip(Journal.Kind kind, List<?> items) throws IOException {
+        Files.write(file, BinarySnapshot.encode(kind, items));
+        List<Object> loaded = new ArrayList<>();
+        BinarySnapshot.stream(file, kind, loaded::add);
+        assertEquals(items.size(), loaded.size());
+        return loaded;
+    }
+}
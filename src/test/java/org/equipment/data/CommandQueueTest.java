@@ -0,0 +1,155 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CommandQueueTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        CommandQueue queue = new CommandQueue(5, () -> { });
+        try {
+            assertEquals(8, queue.capacity());
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void commandsRunInOrderOnTheWriterThread() throws Exception {
+        List<Integer> applied = new ArrayList<>();
+        CommandQueue queue = new CommandQueue(4, () -> { });
+        try {
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                int value = i;
+                futures.add(queue.submit(() -> {
+                    applied.add(value);
+                    return queue.isWriter();
+                }));
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                assertTrue(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            queue.close();
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), applied.get(i));
+        }
+        assertFalse(queue.isWriter());
+    }
+
+    @Test
+    public void failuresCompleteOnlyTheirOwnCommand() {
+        CommandQueue queue = new CommandQueue(8, () -> { });
+        try {
+            try {
+                queue.call(() -> {
+                    throw new IllegalStateException("Equipment unavailable.");
+                });
+                fail("Expected the command's exception");
+            } catch (IllegalStateException expected) {
+                assertEquals("Equipment unavailable.", expected.getMessage());
+            }
+            assertEquals("next", queue.call(() -> "next"));
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void oneDrainCycleCoversEveryCommandQueuedDuringIt() throws Exception {
+        CountDownLatch firstRunning = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        CommandQueue queue = new CommandQueue(64, batches::incrementAndGet);
+        try {
+            CompletableFuture<Object> first = queue.submit(() -> {
+                firstRunning.countDown();
+                await(releaseFirst);
+                return null;
+            });
+            assertTrue(firstRunning.await(5, TimeUnit.SECONDS));
+            List<CompletableFuture<Integer>> queued = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int value = i;
+                queued.add(queue.submit(() -> value));
+            }
+            releaseFirst.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<Integer> future : queued) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            queue.close();
+        }
+        assertEquals(2, batches.get());
+    }
+
+    @Test
+    public void failedPersistenceFailsTheWholeBatch() throws InterruptedException {
+        CommandQueue queue = new CommandQueue(8, () -> {
+            throw new IllegalStateException("Disk full");
+        });
+        try {
+            queue.submit(() -> 1).get(5, TimeUnit.SECONDS);
+            fail("Expected the batch to fail");
+        } catch (ExecutionException expected) {
+            assertEquals("Disk full", expected.getCause().getMessage());
+        } catch (java.util.concurrent.TimeoutException ex) {
+            fail("Command never completed");
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void producersWaitForSlotsWhenTheRingIsFull() throws Exception {
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        CommandQueue queue = new CommandQueue(2, () -> { });
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                producers.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        int value = i;
+                        queue.call(() -> applied.add(value));
+                    }
+                }));
+            }
+            for (Future<?> producer : producers) {
+                producer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+            queue.close();
+        }
+        assertEquals(2000, applied.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
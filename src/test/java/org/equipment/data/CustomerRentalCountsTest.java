@@ -0,0 +1,63 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CustomerRentalCountsTest {
+
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        Path dir = Paths.get("target", "test-counts").toAbsolutePath();
+        Files.createDirectories(dir);
+        file = dir.resolve("counts.dat");
+        Files.deleteIfExists(file);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void savedCountsLoadBackForTheirFingerprint() {
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        CustomerRentalCounts counts = new CustomerRentalCounts();
+        counts.add(5000, day);
+        counts.add(5000, day.plusDays(1));
+        counts.add(5001, day);
+        JsonStore.writeSerialized(file, counts.encode(3));
+
+        CustomerRentalCounts loaded = new CustomerRentalCounts();
+        assertTrue(loaded.load(file, 3));
+
+        assertEquals(2, loaded.count(5000));
+        assertEquals(1, loaded.count(5001));
+        assertEquals(1, loaded.window(day.plusDays(1), day.plusDays(1)).get(5000));
+        assertEquals(0, loaded.window(day.plusDays(1), day.plusDays(1)).get(5001));
+    }
+
+    @Test
+    public void staleOrMissingFileLeavesCountsEmpty() {
+        CustomerRentalCounts counts = new CustomerRentalCounts();
+        counts.add(5000, LocalDate.of(2024, 3, 1));
+        JsonStore.writeSerialized(file, counts.encode(1));
+
+        CustomerRentalCounts loaded = new CustomerRentalCounts();
+        assertFalse(loaded.load(file, 2));
+        assertEquals(0, loaded.count(5000));
+        assertFalse(loaded.load(file.resolveSibling("missing.dat"), 1));
+    }
+}
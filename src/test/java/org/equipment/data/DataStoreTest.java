@@ -0,0 +1,382 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.domain.Reservation;
+import org.equipment.support.TestDataSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DataStoreTest {
+
+    @BeforeClass
+    public static void setupStore() {
+        TestDataSupport.initStore();
+    }
+
+    @Before
+    public void resetStore() {
+        TestDataSupport.resetStore();
+    }
+
+    @After
+    public void journalMode() {
+        DataStore.writeBehind(false);
+        DataStore.commandQueue(false);
+    }
+
+    @Test
+    public void writeBehindDefersWritesUntilFlush() throws IOException {
+        assumeTrue(snapshotBackend());
+        Path dir = Paths.get(System.getProperty("equipment.data.dir"));
+        DataStore.writeBehind(true);
+
+        Rental rental = DataStore.addRental(1001, 5000, LocalDate.now(), LocalDate.now().plusDays(2), 10.0);
+
+        assertFalse(Files.exists(dir.resolve("journal.log")));
+        assertFalse(storedRentalIds(dir).contains(rental.getId()));
+
+        DataStore.flush();
+
+        assertTrue(storedRentalIds(dir).contains(rental.getId()));
+    }
+
+    @Test
+    public void leavingWriteBehindFlushesDirtySnapshots() throws IOException {
+        assumeTrue(snapshotBackend());
+        Path dir = Paths.get(System.getProperty("equipment.data.dir"));
+        DataStore.writeBehind(true);
+        Rental rental = DataStore.addRental(1001, 5000, LocalDate.now(), LocalDate.now().plusDays(2), 10.0);
+
+        DataStore.writeBehind(false);
+
+        assertTrue(storedRentalIds(dir).contains(rental.getId()));
+    }
+
+    @Test
+    public void overdueRentalsIsRangeQueryOnDueDate() {
+        LocalDate today = LocalDate.now();
+        Rental early = DataStore.addRental(1001, 5000, today.minusDays(10), today.minusDays(5), 10.0);
+        Rental late = DataStore.addRental(1001, 5001, today.minusDays(10), today.minusDays(1), 10.0);
+        Rental current = DataStore.addRental(1001, 5001, today, today.plusDays(2), 10.0);
+
+        List<Rental> overdue = DataStore.overdueRentals(today);
+        assertTrue(overdue.indexOf(early) < overdue.indexOf(late));
+        assertFalse(overdue.contains(current));
+
+        List<Rental> asOfEarlier = DataStore.overdueRentals(today.minusDays(3));
+        assertTrue(asOfEarlier.contains(early));
+        assertFalse(asOfEarlier.contains(late));
+    }
+
+    @Test
+    public void changeDueDateRefilesRental() {
+        LocalDate today = LocalDate.now();
+        Rental rental = DataStore.addRental(1001, 5000, today.minusDays(4), today.minusDays(2), 10.0);
+        assertTrue(DataStore.overdueRentals(today).contains(rental));
+
+        DataStore.changeDueDate(rental, today.plusDays(1));
+        assertEquals(today.plusDays(1), rental.getDueDate());
+        assertFalse(DataStore.overdueRentals(today).contains(rental));
+    }
+
+    @Test
+    public void markReturnedDropsRentalFromOverdue() {
+        LocalDate today = LocalDate.now();
+        Rental rental = DataStore.addRental(1001, 5000, today.minusDays(4), today.minusDays(2), 10.0);
+
+        DataStore.markReturned(rental, today, 5.0);
+        assertTrue(rental.isReturned());
+        assertEquals(5.0, rental.getLateFeeCharged(), 0.001);
+        assertFalse(DataStore.overdueRentals(today).contains(rental));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void markReturnedRejectsSecondReturn() {
+        Rental rental = DataStore.addRental(1001, 5000, LocalDate.now(), LocalDate.now().plusDays(1), 10.0);
+        DataStore.markReturned(rental, LocalDate.now(), 0.0);
+        DataStore.markReturned(rental, LocalDate.now(), 0.0);
+    }
+
+    @Test
+    public void failedCheckoutRecordLeavesNoRentalAndFreesTheUnit() {
+        Equipment equipment = DataStore.findEquipment(1001).get();
+        int units = equipment.getAvailableUnits();
+        int rentals = DataStore.getRentals().size();
+        int active = DataStore.activeRentalCount();
+        int ofItem = DataStore.rentalsByEquipment(1001).size();
+        LocalDate today = LocalDate.now();
+
+        DataStore.failRecords(new IllegalStateException("Failed writing journal.log: disk full"));
+        try {
+            DataStore.checkOut(equipment, 5000, today, today.plusDays(2), 10.0, Integer.MAX_VALUE, null);
+            fail("Expected the failed append to surface");
+        } catch (IllegalStateException expected) {
+            // The append failed; nothing of the rental may remain.
+        } finally {
+            DataStore.failRecords(null);
+        }
+
+        assertEquals(units, equipment.getAvailableUnits());
+        assertEquals(rentals, DataStore.getRentals().size());
+        assertEquals(rentals, DataStore.snapshot().rentals().size());
+        assertEquals(active, DataStore.activeRentalCount());
+        assertEquals(ofItem, DataStore.rentalsByEquipment(1001).size());
+    }
+
+    @Test
+    public void reservationStatusIndexFollowsStatusChanges() {
+        Reservation reservation = DataStore.addReservation(1000, 5000);
+        assertTrue(DataStore.reservationsByEquipment(1000, Reservation.Status.WAITING).contains(reservation));
+
+        DataStore.changeReservationStatus(reservation, Reservation.Status.APPROVED);
+        assertFalse(DataStore.reservationsByStatus(Reservation.Status.WAITING).contains(reservation));
+        assertTrue(DataStore.reservationsByEquipment(1000, Reservation.Status.APPROVED).contains(reservation));
+    }
+
+    @Test
+    public void persistReservationsResyncsInPlaceStatusEdits() {
+        Reservation reservation = DataStore.addReservation(1000, 5000);
+        reservation.setStatus(Reservation.Status.DECLINED);
+        DataStore.persistReservations();
+
+        assertFalse(DataStore.reservationsByStatus(Reservation.Status.WAITING).contains(reservation));
+        assertTrue(DataStore.reservationsByStatus(Reservation.Status.DECLINED).contains(reservation));
+    }
+
+    @Test
+    public void customerIndexesCoverRentalsAndReservations() {
+        Rental rental = DataStore.addRental(1001, 5001, LocalDate.now(), LocalDate.now().plusDays(1), 10.0);
+        Reservation reservation = DataStore.addReservation(1000, 5001);
+
+        assertTrue(DataStore.rentalsByCustomer(5001).contains(rental));
+        assertTrue(DataStore.rentalsByEquipment(1001).contains(rental));
+        assertTrue(DataStore.reservationsByCustomer(5001).contains(reservation));
+        assertTrue(DataStore.rentalsByCustomer(4242).isEmpty());
+    }
+
+    @Test
+    public void findUsesPrimaryIndex() {
+        Rental rental = DataStore.addRental(1001, 5000, LocalDate.now(), LocalDate.now().plusDays(1), 10.0);
+        assertTrue(DataStore.findRental(rental.getId()).isPresent());
+        assertTrue(DataStore.findEquipment(1001).isPresent());
+        assertTrue(DataStore.findCustomer(5000).isPresent());
+        assertFalse(DataStore.findReservation(1).isPresent());
+    }
+
+    @Test
+    public void overdueCountsFollowTheAsOfDateAndDueDateChanges() {
+        LocalDate today = LocalDate.now();
+        Rental rental = DataStore.addRental(1001, 5000, today.minusDays(10), today.minusDays(3), 10.0);
+        assertEquals(Long.valueOf(1), DataStore.overdueByCategory(today).get("Tool"));
+        assertFalse(DataStore.overdueByCategory(today.minusDays(5)).containsKey("Tool"));
+        assertEquals(Long.valueOf(1), DataStore.overdueByCategory(today).get("Tool"));
+
+        DataStore.changeDueDate(rental, today.plusDays(1));
+        assertFalse(DataStore.overdueByCategory(today).containsKey("Tool"));
+        DataStore.changeDueDate(rental, today.minusDays(1));
+        assertEquals(Long.valueOf(1), DataStore.overdueByCategory(today).get("Tool"));
+        DataStore.markReturned(rental, today, 4.0);
+        assertFalse(DataStore.overdueByCategory(today).containsKey("Tool"));
+        assertEquals(4.0, DataStore.lateFeesCollected(), 0.001);
+    }
+
+    @Test
+    public void archivedRentalsLeaveMemoryButStayFindable() {
+        LocalDate longAgo = LocalDate.now().minusDays(200);
+        Rental old = DataStore.addRental(1001, 5001, longAgo, longAgo.plusDays(2), 10.0);
+        DataStore.markReturned(old, longAgo.plusDays(2), 1.5);
+        Rental recent = DataStore.addRental(1001, 5001, LocalDate.now(), LocalDate.now().plusDays(2), 10.0);
+
+        assertEquals(1, DataStore.archiveReturnedRentals(LocalDate.now().minusDays(90)));
+
+        assertFalse(DataStore.getRentals().contains(old));
+        List<Rental> byCustomer = DataStore.rentalsByCustomer(5001);
+        assertEquals(old.getId(), byCustomer.get(byCustomer.size() - 2).getId());
+        assertTrue(byCustomer.get(byCustomer.size() - 2).isReturned());
+        assertSame(recent, byCustomer.get(byCustomer.size() - 1));
+        Rental archived = DataStore.findRental(old.getId()).get();
+        assertEquals(longAgo.plusDays(2), archived.getReturnedOn());
+        assertEquals(1.5, archived.getLateFeeCharged(), 0.001);
+        List<Integer> history = new ArrayList<>();
+        DataStore.forEachArchivedRental(rental -> history.add(rental.getId()));
+        assertEquals(1, history.size());
+        assertEquals(0, DataStore.archiveReturnedRentals(LocalDate.now().minusDays(90)));
+        assertEquals(1.5, DataStore.lateFeesCollected(), 0.001);
+    }
+
+    @Test
+    public void usageRollupsFollowRentExtendAndReturn() {
+        LocalDate monday = LocalDate.now().minusDays(400).with(DayOfWeek.MONDAY);
+        double rate = DataStore.findEquipment(1001).get().getDailyRate();
+        Rental rental = DataStore.addRental(1001, 5000, monday, monday.plusDays(3), 10.0);
+        assertEquals(3 * rate, usage(monday, UsageSummary.Period.DAY).stream()
+                .mapToDouble(UsageSummary::getRevenue).sum(), 0.001);
+
+        DataStore.changeDueDate(rental, monday.plusDays(5));
+        DataStore.markReturned(rental, monday.plusDays(7), 4.0);
+        List<UsageSummary> weeks = usage(monday, UsageSummary.Period.WEEK);
+        assertEquals(2, weeks.size());
+        assertEquals(5 * rate, weeks.get(0).getRevenue(), 0.001);
+        assertEquals(7, weeks.get(0).getUnitDays());
+        assertEquals(4.0, weeks.get(1).getLateFees(), 0.001);
+        assertTrue(DataStore.usage(monday, monday.plusDays(13), UsageSummary.Period.WEEK, "Camera").isEmpty());
+
+        DataStore.archiveReturnedRentals(LocalDate.now());
+        DataStore.persistRentals();
+        assertEquals(7, usage(monday, UsageSummary.Period.MONTH).stream()
+                .mapToLong(UsageSummary::getUnitDays).sum());
+    }
+
+    @Test
+    public void rollupRebuildsReadTheSavedArchiveTotals() throws IOException {
+        LocalDate longAgo = LocalDate.now().minusDays(300);
+        Rental old = DataStore.addRental(1001, 5001, longAgo, longAgo.plusDays(2), 10.0);
+        DataStore.markReturned(old, longAgo.plusDays(4), 6.0);
+        assertEquals(1, DataStore.archiveReturnedRentals(LocalDate.now().minusDays(90)));
+
+        // A rebuild that rescanned the archive would fail without its only segment.
+        Path archive = Paths.get(System.getProperty("equipment.data.dir")).resolve("archive");
+        Files.delete(archive.resolve("rentals-000001.seg"));
+        DataStore.persistRentals();
+
+        assertEquals(6.0, DataStore.usage(longAgo, longAgo.plusDays(6), UsageSummary.Period.MONTH, null).stream()
+                .mapToDouble(UsageSummary::getLateFees).sum(), 0.001);
+    }
+
+    @Test
+    public void queuedCommandsRunOnTheWriterThread() {
+        DataStore.commandQueue(true);
+        Thread caller = Thread.currentThread();
+        LocalDate today = LocalDate.now();
+
+        Rental rental = DataStore.execute(() -> {
+            assertTrue(Thread.currentThread() != caller);
+            return DataStore.addRental(1001, 5000, today, today.plusDays(2), 10.0);
+        });
+        assertEquals(rental, DataStore.findRental(rental.getId()).get());
+
+        try {
+            DataStore.execute(() -> DataStore.addRental(1001, 5000, today, today.plusDays(2), 10.0, 0));
+            fail("Expected the command's exception");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("Category capacity reached"));
+        }
+        assertEquals(Integer.valueOf(7), DataStore.submit(() -> 7).join());
+    }
+
+    @Test
+    public void snapshotKeepsThePointInTimeState() {
+        LocalDate today = LocalDate.now();
+        Rental open = DataStore.addRental(1001, 5000, today, today.plusDays(2), 10.0);
+        StoreSnapshot before = DataStore.snapshot();
+        assertSame(before, DataStore.snapshot());
+
+        DataStore.markReturned(open, today, 0.0);
+        Rental added = DataStore.addRental(1001, 5000, today, today.plusDays(2), 10.0);
+
+        StoreSnapshot after = DataStore.snapshot();
+        assertEquals(DataStore.version(), after.version());
+        assertTrue(before.version() < after.version());
+        assertEquals(DataStore.getRentals().size(), after.rentals().size());
+        assertEquals(after.rentals().size() - 1, before.rentals().size());
+        assertFalse(rentalIn(before, open.getId()).isReturned());
+        assertTrue(rentalIn(after, open.getId()).isReturned());
+        assertEquals(added.getId(), after.rentals().get(after.rentals().size() - 1).getId());
+    }
+
+    @Test
+    public void listGettersReturnTheLiveEntities() {
+        LocalDate today = LocalDate.now();
+        Rental added = DataStore.addRental(1001, 5000, today, today.plusDays(2), 10.0);
+        List<Rental> rentals = DataStore.getRentals();
+        assertSame(added, rentals.get(rentals.size() - 1));
+        assertSame(DataStore.findEquipment(1001).get(), DataStore.getEquipment().stream()
+                .filter(eq -> eq.getId() == 1001).findFirst().get());
+        try {
+            rentals.add(added);
+            fail("Expected a read-only list");
+        } catch (UnsupportedOperationException expected) {
+            // The getters hand out read-only copies of the lists.
+        }
+    }
+
+    @Test
+    public void queuedCommandsPublishOneSnapshotPerBatch() {
+        DataStore.commandQueue(true);
+        long before = DataStore.snapshot().version();
+        LocalDate today = LocalDate.now();
+
+        DataStore.execute(() -> {
+            DataStore.addRental(1001, 5000, today, today.plusDays(2), 10.0);
+            assertEquals(before, DataStore.snapshot().version());
+            return null;
+        });
+
+        assertEquals(DataStore.version(), DataStore.snapshot().version());
+        assertTrue(DataStore.snapshot().version() > before);
+    }
+
+    private static Rental rentalIn(StoreSnapshot snapshot, int id) {
+        return snapshot.rentals().stream().filter(rental -> rental.getId() == id).findFirst().get();
+    }
+
+    private static List<UsageSummary> usage(LocalDate from, UsageSummary.Period period) {
+        return DataStore.usage(from, from.plusDays(13), period, "Tool");
+    }
+
+    @Test
+    public void jsonExportRoundTripsThroughImport() throws IOException {
+        Path exportDir = Paths.get("target", "test-export").toAbsolutePath();
+        Rental rental = DataStore.addRental(1001, 5000, LocalDate.now(), LocalDate.now().plusDays(2), 10.0);
+        DataStore.markReturned(rental, LocalDate.now(), 2.5);
+        DataStore.exportJson(exportDir);
+        String exported = new String(Files.readAllBytes(exportDir.resolve("rentals.json")), StandardCharsets.UTF_8);
+        assertTrue(exported.contains("\"id\" : " + rental.getId()));
+
+        TestDataSupport.resetStore();
+        assertFalse(DataStore.findRental(rental.getId()).isPresent());
+        DataStore.importJson(exportDir);
+
+        Rental imported = DataStore.findRental(rental.getId()).get();
+        assertEquals(LocalDate.now(), imported.getReturnedOn());
+        assertEquals(2.5, imported.getLateFeeCharged(), 0.001);
+        assertFalse(DataStore.rentalsByEquipment(1001).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void importJsonRequiresEveryCollection() {
+        DataStore.importJson(Paths.get("target", "no-such-export"));
+    }
+
+    private static boolean snapshotBackend() {
+        String backend = System.getProperty("equipment.store.backend", "snapshot");
+        return "snapshot".equals(backend) || "json".equals(backend);
+    }
+
+    private static List<Integer> storedRentalIds(Path dir) {
+        List<Integer> ids = new ArrayList<>();
+        BinarySnapshot.stream(dir.resolve("rentals.dat"), Journal.Kind.RENTAL,
+                rental -> ids.add(((Rental) rental).getId()));
+        return ids;
+    }
+}
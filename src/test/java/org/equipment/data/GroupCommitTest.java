@@ -0,0 +1,86 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class GroupCommitTest {
+
+    @Test
+    public void singleCallerRunsActionOnce() {
+        AtomicInteger runs = new AtomicInteger();
+        GroupCommit commit = new GroupCommit(runs::incrementAndGet, 0);
+
+        commit.commit();
+        commit.commit();
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void callersArrivingDuringARunShareTheNextOne() throws Exception {
+        CountDownLatch firstRunStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        GroupCommit commit = new GroupCommit(() -> {
+            if (runs.incrementAndGet() == 1) {
+                firstRunStarted.countDown();
+                await(releaseFirstRun);
+            }
+        }, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        try {
+            Future<?> leader = pool.submit(commit::commit);
+            assertTrue(firstRunStarted.await(5, TimeUnit.SECONDS));
+            List<Future<?>> followers = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                followers.add(pool.submit(commit::commit));
+            }
+            // Give the followers time to queue behind the running action.
+            Thread.sleep(100);
+            releaseFirstRun.countDown();
+
+            leader.get(5, TimeUnit.SECONDS);
+            for (Future<?> follower : followers) {
+                follower.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void failureIsReportedToTheCaller() {
+        GroupCommit commit = new GroupCommit(() -> {
+            throw new IllegalStateException("disk full");
+        }, 0);
+
+        try {
+            commit.commit();
+            fail("Expected the action failure");
+        } catch (IllegalStateException ex) {
+            assertEquals("disk full", ex.getMessage());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntIndexTest {
+
+    @Test
+    public void putAndGetRoundTrip() {
+        IntIndex<String> index = new IntIndex<>();
+        index.put(1000, "drill");
+        index.put(5000, "customer");
+
+        assertEquals("drill", index.get(1000));
+        assertEquals("customer", index.get(5000));
+        assertNull(index.get(42));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void putReplacesExistingValue() {
+        IntIndex<String> index = new IntIndex<>();
+        assertNull(index.put(7, "old"));
+        assertEquals("old", index.put(7, "new"));
+        assertEquals("new", index.get(7));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        IntIndex<Integer> index = new IntIndex<>();
+        for (int id = 9000; id < 19000; id++) {
+            index.put(id, id);
+        }
+        assertEquals(10000, index.size());
+        assertEquals(Integer.valueOf(15555), index.get(15555));
+    }
+
+    @Test
+    public void removeKeepsOtherKeysReachable() {
+        IntIndex<Integer> index = new IntIndex<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                index.put(key, i);
+                expected.put(key, i);
+            } else {
+                assertEquals(expected.remove(key), index.remove(key));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (int key = 0; key < 2000; key++) {
+            assertEquals(expected.get(key), index.get(key));
+        }
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        IntIndex<String> index = new IntIndex<>();
+        index.put(1, "a");
+        index.clear();
+        assertNull(index.get(1));
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,61 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntLongMapTest {
+
+    @Test
+    public void countersStartAtZeroAndAccumulate() {
+        IntLongMap counts = new IntLongMap();
+        counts.add(5000, 1);
+        counts.add(5000, 2);
+
+        assertEquals(3, counts.get(5000));
+        assertEquals(0, counts.get(5001));
+        assertEquals(1, counts.size());
+    }
+
+    @Test
+    public void topBreaksTiesByLowerKey() {
+        IntLongMap counts = new IntLongMap();
+        counts.add(7, 2);
+        counts.add(3, 5);
+        counts.add(9, 5);
+        counts.add(1, 2);
+
+        assertArrayEquals(new int[] {3, 9, 1}, counts.top(3));
+        assertArrayEquals(new int[] {3, 9, 1, 7}, counts.top(10));
+        assertArrayEquals(new int[0], counts.top(0));
+    }
+
+    @Test
+    public void topMatchesFullSort() {
+        Random random = new Random(11);
+        IntLongMap counts = new IntLongMap();
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = 5000 + random.nextInt(3000);
+            counts.add(key, 1);
+            expected.merge(key, 1L, Long::sum);
+        }
+        List<Map.Entry<Integer, Long>> sorted = new ArrayList<>(expected.entrySet());
+        sorted.sort((a, b) -> a.getValue().equals(b.getValue()) ? Integer.compare(a.getKey(), b.getKey())
+                : Long.compare(b.getValue(), a.getValue()));
+
+        int[] top = counts.top(25);
+
+        assertEquals(25, top.length);
+        for (int i = 0; i < top.length; i++) {
+            assertEquals(sorted.get(i).getKey().intValue(), top[i]);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+
+    private Path journalFile;
+    private Journal journal;
+
+    @Before
+    public void setup() throws IOException {
+        Path testDir = Paths.get("target", "test-journal").toAbsolutePath();
+        Files.createDirectories(testDir);
+        journalFile = testDir.resolve("journal.log");
+        Files.deleteIfExists(journalFile);
+        journal = new Journal(journalFile);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        journal.close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Test
+    public void appendWritesOneLinePerRecord() throws IOException {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(2, "Saw", "Tool", 12.0, 5.0, 1, false));
+
+        assertEquals(2, Files.readAllLines(journalFile).size());
+        assertEquals(2, journal.size());
+    }
+
+    @Test
+    public void replayAppliesRecordsInOrder() {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 15.0, 5.0, 2, false));
+        journal.close();
+
+        List<Equipment> replayed = new ArrayList<>();
+        int applied = new Journal(journalFile).replay((kind, data) -> {
+            assertEquals(Journal.Kind.EQUIPMENT, kind);
+            replayed.add(JsonStore.convert(data, Equipment.class));
+        });
+
+        assertEquals(2, applied);
+        assertEquals(15.0, replayed.get(1).getDailyRate(), 0.001);
+    }
+
+    @Test
+    public void replayKeepsDatesIntact() {
+        Rental rental = new Rental(9000, 1000, 5000, LocalDate.of(2024, 1, 2),
+                LocalDate.of(2024, 1, 5), 20.0);
+        rental.setReturnedOn(LocalDate.of(2024, 1, 7));
+        journal.append(Journal.Kind.RENTAL, rental);
+        journal.close();
+
+        List<Rental> replayed = new ArrayList<>();
+        new Journal(journalFile).replay((kind, data) -> replayed.add(JsonStore.convert(data, Rental.class)));
+
+        assertEquals(LocalDate.of(2024, 1, 7), replayed.get(0).getReturnedOn());
+        assertTrue(replayed.get(0).isReturned());
+    }
+
+    @Test
+    public void replayIgnoresTornTrailingRecord() throws IOException {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.close();
+        Files.write(journalFile, "{\"kind\":\"EQUIPMENT\",\"data\":{\"id\":2".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        int applied = new Journal(journalFile).replay((kind, data) -> {
+        });
+
+        assertEquals(1, applied);
+    }
+
+    @Test
+    public void appendAfterTornRecordSurvivesReopen() throws IOException {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.close();
+        Files.write(journalFile, "{\"kind\":\"EQUIPMENT\",\"data\":{\"id\":2".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        Journal reopened = new Journal(journalFile);
+        assertEquals(1, reopened.replay((kind, data) -> {
+        }));
+        reopened.append(Journal.Kind.EQUIPMENT, new Equipment(3, "Sander", "Tool", 8.0, 5.0, 1, false));
+        reopened.close();
+
+        List<Integer> ids = new ArrayList<>();
+        int applied = new Journal(journalFile).replay((kind, data) -> ids.add(data.get("id").asInt()));
+
+        assertEquals(2, applied);
+        assertEquals(Arrays.asList(1, 3), ids);
+    }
+
+    @Test
+    public void recordMissingItsLineSeparatorIsKept() throws IOException {
+        Files.write(journalFile, Journal.line(Journal.Kind.EQUIPMENT,
+                new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false)).getBytes(StandardCharsets.UTF_8));
+
+        Journal reopened = new Journal(journalFile);
+        assertEquals(1, reopened.replay((kind, data) -> {
+        }));
+        reopened.append(Journal.Kind.EQUIPMENT, new Equipment(2, "Saw", "Tool", 12.0, 5.0, 1, false));
+        reopened.close();
+
+        assertEquals(2, new Journal(journalFile).replay((kind, data) -> {
+        }));
+    }
+
+    @Test
+    public void truncateToMarkKeepsLaterRecords() {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(2, "Saw", "Tool", 12.0, 5.0, 1, false));
+        long mark = journal.mark();
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(3, "Sander", "Tool", 8.0, 5.0, 1, false));
+
+        journal.truncate(mark);
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(4, "Planer", "Tool", 9.0, 5.0, 1, false));
+        journal.close();
+
+        assertEquals(2, journal.size());
+        List<Integer> ids = new ArrayList<>();
+        new Journal(journalFile).replay((kind, data) -> ids.add(data.get("id").asInt()));
+        assertEquals(Arrays.asList(3, 4), ids);
+    }
+
+    @Test
+    public void replaceCopiesRecordsAppendedSinceTheEnd() throws IOException {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 1, false));
+        Journal.Position end = journal.end();
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(2, "Saw", "Tool", 12.0, 5.0, 1, false));
+        Path rewritten = journalFile.resolveSibling("journal.log.compact");
+        Files.write(rewritten, Arrays.asList(Journal.line(Journal.Kind.EQUIPMENT,
+                new Equipment(1, "Drill", "Tool", 10.0, 5.0, 1, false))), StandardCharsets.UTF_8);
+
+        assertTrue(journal.replaceWith(rewritten, 1, end));
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(3, "Sander", "Tool", 8.0, 5.0, 1, false));
+        journal.close();
+
+        assertEquals(3, journal.size());
+        List<Integer> ids = new ArrayList<>();
+        new Journal(journalFile).replay((kind, data) -> ids.add(data.get("id").asInt()));
+        assertEquals(Arrays.asList(1, 2, 3), ids);
+    }
+
+    @Test
+    public void replaceIsDroppedOnceTheJournalWasCut() throws IOException {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        Journal.Position end = journal.end();
+        journal.truncate();
+        Path rewritten = journalFile.resolveSibling("journal.log.compact");
+        Files.write(rewritten, Arrays.asList("stale"), StandardCharsets.UTF_8);
+
+        assertFalse(journal.replaceWith(rewritten, 1, end));
+        assertFalse(Files.exists(rewritten));
+        assertFalse(Files.exists(journalFile));
+    }
+
+    @Test
+    public void truncateRemovesRecords() {
+        journal.append(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        journal.truncate();
+
+        assertFalse(Files.exists(journalFile));
+        assertEquals(0, journal.size());
+        assertEquals(0, journal.replay((kind, data) -> {
+        }));
+    }
+}
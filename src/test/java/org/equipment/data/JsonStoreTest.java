@@ -1,8 +1,10 @@
 package org.equipment.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -10,6 +12,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.equipment.domain.Equipment;
 import org.junit.After;
@@ -33,6 +40,7 @@ public class JsonStoreTest {
 
     @After
     public void cleanup() throws IOException {
+        JsonStore.durability(JsonStore.Durability.GROUP);
         if (testFile != null && Files.exists(testFile)) {
             Files.deleteIfExists(testFile);
         }
@@ -116,5 +124,90 @@ public class JsonStoreTest {
         assertEquals("Second", read.get(0).getName());
         assertEquals(2, read.get(0).getId());
     }
-}
 
+    @Test
+    public void streamHandsOverEachElementInOrder() {
+        List<Equipment> original = new ArrayList<>();
+        original.add(new Equipment(1, "Test Equipment", "Category", 10.0, 5.0, 2, false));
+        original.add(new Equipment(2, "Another Equipment", "Category2", 20.0, 10.0, 1, true));
+        JsonStore.write(testFile, original);
+
+        List<Equipment> streamed = new ArrayList<>();
+        assertTrue(JsonStore.stream(testFile, Equipment.class, streamed::add));
+
+        assertEquals(2, streamed.size());
+        assertEquals("Another Equipment", streamed.get(1).getName());
+        assertTrue(streamed.get(1).isUnderMaintenance());
+    }
+
+    @Test
+    public void streamReportsMissingFile() {
+        assertFalse(JsonStore.stream(testFile, Equipment.class, eq -> {
+        }));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void streamRejectsNonArrayContent() throws IOException {
+        Files.write(testFile, "{\"id\":1}".getBytes());
+        JsonStore.stream(testFile, Equipment.class, eq -> {
+        });
+    }
+
+    @Test
+    public void failedWriteLeavesPreviousContentIntact() throws IOException {
+        List<Equipment> original = new ArrayList<>();
+        original.add(new Equipment(1, "Kept", "Cat", 10.0, 5.0, 1, false));
+        JsonStore.write(testFile, original);
+
+        try {
+            JsonStore.write(testFile, new Unserializable());
+            fail("Expected serialization to fail");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("Failed writing"));
+        }
+
+        List<Equipment> read = JsonStore.read(testFile, equipmentType, new ArrayList<>());
+        assertEquals("Kept", read.get(0).getName());
+        try (Stream<Path> files = Files.list(testFile.getParent())) {
+            assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void concurrentGroupCommitsLeaveValidFile() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                List<Equipment> data = new ArrayList<>();
+                data.add(new Equipment(i, "Item " + i, "Cat", 10.0, 5.0, 1, false));
+                writes.add(pool.submit(() -> JsonStore.write(testFile, data)));
+            }
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<Equipment> read = JsonStore.read(testFile, equipmentType, new ArrayList<>());
+        assertEquals(1, read.size());
+    }
+
+    @Test
+    public void osDurabilityStillReplacesAtomically() {
+        JsonStore.durability(JsonStore.Durability.OS);
+        List<Equipment> data = new ArrayList<>();
+        data.add(new Equipment(3, "Unsynced", "Cat", 10.0, 5.0, 1, false));
+
+        JsonStore.write(testFile, data);
+
+        assertEquals("Unsynced", JsonStore.read(testFile, equipmentType, new ArrayList<>()).get(0).getName());
+    }
+
+    static final class Unserializable {
+        public String getValue() {
+            throw new IllegalArgumentException("cannot serialize");
+        }
+    }
+}
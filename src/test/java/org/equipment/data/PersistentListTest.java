@@ -0,0 +1,62 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PersistentListTest {
+
+    @Test
+    public void appendsGrowThroughSeveralLevels() {
+        PersistentList<Integer> list = PersistentList.empty();
+        for (int i = 0; i < 40_000; i++) {
+            list = list.plus(i);
+        }
+        assertEquals(40_000, list.size());
+        for (int i = 0; i < 40_000; i++) {
+            assertEquals(Integer.valueOf(i), list.get(i));
+        }
+    }
+
+    @Test
+    public void bulkBuildMatchesAppends() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1057; i++) {
+            items.add(i);
+        }
+        PersistentList<Integer> built = PersistentList.of(items);
+        assertEquals(items, built);
+        assertEquals(Integer.valueOf(1057), built.plus(1057).get(1057));
+        assertTrue(PersistentList.of(new ArrayList<Integer>()).isEmpty());
+    }
+
+    @Test
+    public void updatesLeaveEarlierVersionsUntouched() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add("v" + i);
+        }
+        PersistentList<String> before = PersistentList.of(items);
+        PersistentList<String> after = before.with(64, "changed").plus("added");
+
+        assertEquals("v64", before.get(64));
+        assertEquals(100, before.size());
+        assertEquals("changed", after.get(64));
+        assertEquals("added", after.get(100));
+        assertEquals("v63", after.get(63));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void isReadOnlyThroughTheListInterface() {
+        PersistentList.<String>empty().plus("a").set(0, "b");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexesPastTheEnd() {
+        PersistentList.<String>empty().plus("a").get(1);
+    }
+}
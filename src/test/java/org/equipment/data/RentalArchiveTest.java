@@ -0,0 +1,109 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.equipment.domain.Rental;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RentalArchiveTest {
+
+    private RentalArchive archive;
+
+    @Before
+    public void setup() throws IOException {
+        Path dir = Paths.get("target", "test-archive").toAbsolutePath();
+        Files.createDirectories(dir);
+        archive = new RentalArchive(dir);
+        archive.open();
+        archive.clear();
+    }
+
+    @After
+    public void cleanup() {
+        archive.clear();
+    }
+
+    @Test
+    public void segmentsSurviveReopen() {
+        archive.append(Arrays.asList(returned(9000), returned(9004)));
+        archive.append(Arrays.asList(returned(9002)));
+
+        RentalArchive reopened = new RentalArchive(Paths.get("target", "test-archive").toAbsolutePath());
+        reopened.open();
+
+        assertEquals(3, reopened.size());
+        assertEquals(9004, reopened.maxId());
+        assertEquals(LocalDate.of(2024, 1, 9), reopened.find(9002).get().getReturnedOn());
+        assertFalse(reopened.find(9001).isPresent());
+        List<Integer> ids = new ArrayList<>();
+        reopened.forEach(rental -> ids.add(rental.getId()));
+        assertEquals(Arrays.asList(9000, 9004, 9002), ids);
+    }
+
+    @Test
+    public void lastBatchIdsCoverOnlyTheNewestBatch() {
+        archive.append(Arrays.asList(returned(9000)));
+        archive.append(Arrays.asList(returned(9001), returned(9002)));
+
+        assertEquals(2, archive.lastBatchIds().size());
+        assertTrue(archive.lastBatchIds().contains(9002));
+        assertFalse(archive.lastBatchIds().contains(9000));
+    }
+
+    @Test
+    public void largeBatchesAreSplitIntoSegments() {
+        List<Rental> rentals = new ArrayList<>();
+        for (int i = 0; i < RentalArchive.SEGMENT_RECORDS + 5; i++) {
+            rentals.add(returned(20000 + i));
+        }
+        archive.append(rentals);
+
+        assertEquals(RentalArchive.SEGMENT_RECORDS + 5, archive.size());
+        assertEquals(rentals.size(), archive.lastBatchIds().size());
+        assertTrue(archive.find(20000 + RentalArchive.SEGMENT_RECORDS + 4).isPresent());
+    }
+
+    @Test
+    public void customerHistoryReadsOnlyTheirRentals() throws IOException {
+        archive.append(Arrays.asList(returned(9000), returned(9001, 5001)));
+        archive.append(Arrays.asList(returned(9002, 5001)));
+        Path dir = Paths.get("target", "test-archive").toAbsolutePath();
+        // Archives written before customer lists existed have them rebuilt on first use.
+        Files.delete(dir.resolve("rentals-000001.cus"));
+
+        RentalArchive reopened = new RentalArchive(dir);
+        reopened.open();
+        List<Integer> ids = new ArrayList<>();
+        reopened.forEachOfCustomer(5001, rental -> ids.add(rental.getId()));
+        List<Integer> none = new ArrayList<>();
+        reopened.forEachOfCustomer(4242, rental -> none.add(rental.getId()));
+
+        assertEquals(Arrays.asList(9001, 9002), ids);
+        assertTrue(none.isEmpty());
+        assertTrue(Files.exists(dir.resolve("rentals-000001.cus")));
+    }
+
+    private static Rental returned(int id) {
+        return returned(id, 5000);
+    }
+
+    private static Rental returned(int id, int customerId) {
+        Rental rental = new Rental(id, 1000, customerId, LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 5), 75.0);
+        rental.setReturnedOn(LocalDate.of(2024, 1, 9));
+        rental.setLateFeeCharged(3.0);
+        return rental;
+    }
+}
@@ -0,0 +1,196 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.equipment.domain.Equipment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StoreBackendTest {
+
+    private Path dir;
+    private final Map<Journal.Kind, List<Object>> items = new EnumMap<>(Journal.Kind.class);
+    // Runs as the read lock would be released, where a writer may get in.
+    private Runnable afterRead = () -> { };
+    private final StoreBackend.State state = new StoreBackend.State() {
+        @Override
+        public List<?> items(Journal.Kind kind) {
+            return items.get(kind);
+        }
+
+        @Override
+        public <T> T read(Supplier<T> action) {
+            T result = action.get();
+            afterRead.run();
+            return result;
+        }
+    };
+
+    @Before
+    public void setup() throws IOException {
+        dir = Paths.get("target", "test-backend").toAbsolutePath();
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve("store.log"));
+        for (Journal.Kind kind : Journal.Kind.values()) {
+            items.put(kind, new ArrayList<>());
+        }
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(dir.resolve("store.log"));
+        Files.deleteIfExists(dir.resolve("equipment.json"));
+        Files.deleteIfExists(dir.resolve("journal.log"));
+        for (Journal.Kind kind : Journal.Kind.values()) {
+            Files.deleteIfExists(dir.resolve(kind.collection() + ".dat"));
+        }
+    }
+
+    @Test
+    public void logBackendReportsEveryKindMissingOnFirstStart() {
+        Recorder loaded = new Recorder();
+
+        boolean checkpoint = new LogBackend(dir, state).load(loaded);
+
+        assertTrue(checkpoint);
+        assertEquals(Journal.Kind.values().length, loaded.missing.size());
+    }
+
+    @Test
+    public void logBackendReplaysLatestStatePerEntity() {
+        LogBackend backend = new LogBackend(dir, state);
+        backend.record(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        backend.record(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 1, false));
+        backend.record(Journal.Kind.EQUIPMENT, new Equipment(2, "Saw", "Tool", 12.0, 5.0, 3, false));
+
+        Recorder loaded = new Recorder();
+        assertFalse(new LogBackend(dir, state).load(loaded));
+
+        assertTrue(loaded.missing.isEmpty());
+        assertEquals(2, loaded.equipment.size());
+        assertEquals(1, loaded.equipment.get(1).getAvailableUnits());
+    }
+
+    @Test
+    public void logBackendCheckpointKeepsOneRecordPerEntity() throws IOException {
+        LogBackend backend = new LogBackend(dir, state);
+        Equipment drill = new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false);
+        items.get(Journal.Kind.EQUIPMENT).add(drill);
+        for (int i = 0; i < 5; i++) {
+            drill.setAvailableUnits(i);
+            backend.record(Journal.Kind.EQUIPMENT, drill);
+        }
+
+        backend.checkpoint();
+
+        assertEquals(1, Files.readAllLines(dir.resolve("store.log")).size());
+        Recorder loaded = new Recorder();
+        new LogBackend(dir, state).load(loaded);
+        assertEquals(4, loaded.equipment.get(1).getAvailableUnits());
+    }
+
+    @Test
+    public void logBackendCompactionKeepsRecordsAppendedWhileItWrites() throws IOException {
+        LogBackend backend = new LogBackend(dir, state);
+        Equipment drill = new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false);
+        items.get(Journal.Kind.EQUIPMENT).add(drill);
+        for (int i = 0; i < 5; i++) {
+            drill.setAvailableUnits(i);
+            backend.record(Journal.Kind.EQUIPMENT, drill);
+        }
+        afterRead = () -> backend.record(Journal.Kind.EQUIPMENT, new Equipment(2, "Saw", "Tool", 12.0, 5.0, 3, false));
+
+        backend.checkpoint();
+
+        assertEquals(2, Files.readAllLines(dir.resolve("store.log")).size());
+        Recorder loaded = new Recorder();
+        new LogBackend(dir, state).load(loaded);
+        assertEquals(4, loaded.equipment.get(1).getAvailableUnits());
+        assertEquals(3, loaded.equipment.get(2).getAvailableUnits());
+    }
+
+    @Test
+    public void snapshotBackendMigratesLegacyJsonFiles() throws IOException {
+        Files.deleteIfExists(dir.resolve("equipment.dat"));
+        JsonStore.write(dir.resolve("equipment.json"),
+                Collections.singletonList(new Equipment(7, "Drill", "Tool", 10.0, 5.0, 2, false)));
+        Recorder loaded = new Recorder();
+
+        boolean checkpoint = new SnapshotBackend(dir, state).load(loaded);
+
+        assertTrue(checkpoint);
+        assertEquals("Drill", loaded.equipment.get(7).getName());
+        assertFalse(loaded.missing.contains(Journal.Kind.EQUIPMENT));
+        assertTrue(loaded.missing.contains(Journal.Kind.RENTAL));
+    }
+
+    @Test
+    public void snapshotBackendCheckpointsOnceTheJournalMatchesTheSnapshots() {
+        SnapshotBackend backend = new SnapshotBackend(dir, state);
+        List<Object> equipment = items.get(Journal.Kind.EQUIPMENT);
+        for (int id = 1; id <= 800; id++) {
+            equipment.add(new Equipment(id, "Drill " + id, "Tool", 10.0, 5.0, 2, false));
+        }
+        backend.checkpoint();
+
+        Equipment drill = (Equipment) equipment.get(0);
+        for (int i = 1; i < 800; i++) {
+            assertFalse(backend.record(Journal.Kind.EQUIPMENT, drill));
+        }
+        assertTrue(backend.record(Journal.Kind.EQUIPMENT, drill));
+
+        backend.checkpoint();
+        Recorder loaded = new Recorder();
+        assertFalse(new SnapshotBackend(dir, state).load(loaded));
+        assertEquals(800, loaded.equipment.size());
+    }
+
+    @Test
+    public void memoryBackendStoresNothing() {
+        StoreBackend backend = StoreBackend.create("memory", dir, state);
+        backend.record(Journal.Kind.EQUIPMENT, new Equipment(1, "Drill", "Tool", 10.0, 5.0, 2, false));
+        Recorder loaded = new Recorder();
+
+        assertFalse(backend.load(loaded));
+        assertTrue(loaded.equipment.isEmpty());
+        assertEquals(Journal.Kind.values().length, loaded.missing.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownBackendIsRejected() {
+        StoreBackend.create("tape", dir, state);
+    }
+
+    private static final class Recorder implements StoreBackend.Loader {
+        private final Map<Integer, Equipment> equipment = new LinkedHashMap<>();
+        private final List<Journal.Kind> missing = new ArrayList<>();
+
+        @Override
+        public void upsert(Journal.Kind kind, Object entity) {
+            if (kind == Journal.Kind.EQUIPMENT) {
+                Equipment item = (Equipment) entity;
+                equipment.put(item.getId(), item);
+            }
+        }
+
+        @Override
+        public void missing(Journal.Kind kind) {
+            missing.add(kind);
+        }
+    }
+}
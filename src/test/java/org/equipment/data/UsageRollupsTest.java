@@ -0,0 +1,72 @@
+package org.equipment.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UsageRollupsTest {
+    private static final LocalDate MONDAY = LocalDate.of(2024, 3, 4);
+
+    @Test
+    public void summariesGroupDaysIntoPeriods() {
+        UsageRollups rollups = new UsageRollups();
+        rollups.unitsOut(1000, "Tool", MONDAY, MONDAY.plusDays(9));
+        rollups.revenue(1000, "Tool", 10.0, MONDAY, MONDAY.plusDays(9));
+        rollups.unitsOut(1001, "Camera", MONDAY, MONDAY.plusDays(2));
+        rollups.lateFee(1000, "Tool", MONDAY.plusDays(9), 5.0);
+
+        List<UsageSummary> weeks = rollups.summarize(MONDAY, MONDAY.plusDays(13), UsageSummary.Period.WEEK, null);
+        assertEquals(2, weeks.size());
+        assertEquals(MONDAY, weeks.get(0).getPeriodStart());
+        assertEquals(70.0, weeks.get(0).getRevenue(), 0.001);
+        assertEquals(9, weeks.get(0).getUnitDays());
+        assertEquals(20.0, weeks.get(1).getRevenue(), 0.001);
+        assertEquals(5.0, weeks.get(1).getLateFees(), 0.001);
+
+        List<UsageSummary> tools = rollups.summarize(MONDAY, MONDAY, UsageSummary.Period.DAY, "tool");
+        assertEquals(1, tools.size());
+        assertEquals(1, tools.get(0).getUnitDays());
+        assertEquals(1, rollups.summarize(MONDAY, MONDAY.plusDays(13), UsageSummary.Period.MONTH, null).size());
+    }
+
+    @Test
+    public void shrinkingARangeRemovesItsDays() {
+        UsageRollups rollups = new UsageRollups();
+        rollups.unitsOut(1000, "Tool", MONDAY, MONDAY.plusDays(5));
+        rollups.unitsOut(1000, "Tool", MONDAY.plusDays(5), MONDAY.plusDays(2));
+
+        List<UsageSummary> days = rollups.summarize(MONDAY, MONDAY.plusDays(6), UsageSummary.Period.DAY, null);
+        assertEquals(2, days.size());
+        assertEquals(MONDAY.plusDays(1), days.get(1).getPeriodStart());
+    }
+
+    @Test
+    public void savedRollupsLoadOnlyForTheSameFingerprint() throws IOException {
+        UsageRollups rollups = new UsageRollups();
+        rollups.revenue(1000, "Tool", 12.5, MONDAY, MONDAY.plusDays(3));
+        rollups.lateFee(1000, "Tool", MONDAY.plusDays(4), 2.0);
+        Path file = Files.createTempFile("rollups", ".dat");
+        try {
+            Files.write(file, rollups.encode(42L));
+
+            UsageRollups loaded = new UsageRollups();
+            assertTrue(loaded.load(file, 42L));
+            UsageSummary month = loaded.summarize(MONDAY, MONDAY.plusDays(30), UsageSummary.Period.MONTH, null).get(0);
+            assertEquals(37.5, month.getRevenue(), 0.001);
+            assertEquals(2.0, month.getLateFees(), 0.001);
+
+            assertFalse(loaded.load(file, 43L));
+            assertTrue(loaded.summarize(MONDAY, MONDAY.plusDays(30), UsageSummary.Period.MONTH, null).isEmpty());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
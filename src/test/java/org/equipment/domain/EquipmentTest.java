@@ -26,4 +26,16 @@ public class EquipmentTest {
         assertTrue(s.contains("TestCam"));
         assertTrue(s.contains("stock: 7"));
     }
+
+    @Test
+    public void unitsAreClaimedUntilStockRunsOut() {
+        Equipment e = new Equipment(9998, "Popular", "Camera", 10.0, 5.0, 1, false);
+        assertTrue(e.tryClaimUnit());
+        assertFalse(e.tryClaimUnit());
+        assertEquals(0, e.getAvailableUnits());
+
+        e.releaseUnit();
+        assertEquals(1, e.getAvailableUnits());
+        assertTrue(e.tryClaimUnit());
+    }
 }
@@ -2,10 +2,12 @@ package org.equipment.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 
 import org.equipment.data.DataStore;
+import org.equipment.data.VersionConflictException;
 import org.equipment.domain.Equipment;
 import org.equipment.support.TestDataSupport;
 import org.junit.Before;
@@ -49,6 +51,23 @@ public class InventoryServiceTest {
         assertTrue(reloaded.isUnderMaintenance());
     }
 
+    @Test
+    public void staleVersionIsRejected() {
+        Equipment drill = DataStore.findEquipment(1001).get();
+        long seen = drill.getVersion();
+        assertTrue(service.updateRate(drill.getId(), 20.0, seen));
+        assertEquals(seen + 1, drill.getVersion());
+
+        try {
+            service.updateStock(drill.getId(), 1, seen);
+            fail("Expected a version conflict");
+        } catch (VersionConflictException expected) {
+            assertEquals(seen + 1, expected.getActualVersion());
+        }
+        assertEquals(20.0, drill.getDailyRate(), 0.0001);
+        assertTrue(service.updateStock(drill.getId(), 1, seen + 1));
+    }
+
     @Test
     public void lowStockReportFiltersThreshold() {
         List<Equipment> low = service.lowStockReport(3);
@@ -0,0 +1,187 @@
+package org.equipment.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.equipment.data.DataStore;
+import org.equipment.data.StoreSnapshot;
+import org.equipment.domain.Equipment;
+import org.equipment.domain.Rental;
+import org.equipment.support.TestDataSupport;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RentalServiceConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    private final RentalService rentalService = new RentalService();
+
+    @BeforeClass
+    public static void setupStore() {
+        TestDataSupport.initStore();
+    }
+
+    @Before
+    public void resetStore() {
+        TestDataSupport.resetStore();
+    }
+
+    @Test
+    public void concurrentRentAndReturnNeverOversellsStock() throws Exception {
+        Equipment equipment = DataStore.addEquipment("Generator", "Stress", 30.0, 60.0, 2, false);
+        AtomicInteger held = new AtomicInteger();
+        AtomicInteger maxHeld = new AtomicInteger();
+        AtomicInteger negativeStock = new AtomicInteger();
+
+        runConcurrently(() -> {
+            int rented = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                Rental rental;
+                try {
+                    rental = rentalService.rent(equipment.getId(), 5000, 1);
+                } catch (IllegalStateException unavailable) {
+                    continue;
+                }
+                rented++;
+                int now = held.incrementAndGet();
+                maxHeld.accumulateAndGet(now, Math::max);
+                if (equipment.getAvailableUnits() < 0) {
+                    negativeStock.incrementAndGet();
+                }
+                held.decrementAndGet();
+                rentalService.returnRental(rental.getId());
+            }
+            return rented;
+        });
+
+        assertEquals(0, negativeStock.get());
+        assertTrue(maxHeld.get() <= 2);
+        assertEquals(2, equipment.getAvailableUnits());
+        assertEquals(0, DataStore.activeRentalsInCategory("Stress"));
+    }
+
+    @Test
+    public void snapshotsNeverShowStockOutOfStepWithRentals() throws Exception {
+        Equipment equipment = DataStore.addEquipment("Floor Sander", "Stress", 25.0, 50.0, 2, false);
+        AtomicInteger roles = new AtomicInteger();
+        AtomicInteger working = new AtomicInteger(THREADS - 1);
+
+        int torn = runConcurrently(() -> {
+            if (roles.getAndIncrement() == 0) {
+                int seen = 0;
+                while (working.get() > 0) {
+                    StoreSnapshot snapshot = DataStore.snapshot();
+                    int available = snapshot.equipment().stream().filter(eq -> eq.getId() == equipment.getId())
+                            .findFirst().get().getAvailableUnits();
+                    long out = snapshot.rentals().stream()
+                            .filter(r -> r.getEquipmentId() == equipment.getId() && !r.isReturned()).count();
+                    if (available + out != 2) {
+                        seen++;
+                    }
+                }
+                return seen;
+            }
+            try {
+                for (int i = 0; i < ROUNDS / 4; i++) {
+                    try {
+                        rentalService.returnRental(rentalService.rent(equipment.getId(), 5000, 1).getId());
+                    } catch (IllegalStateException unavailable) {
+                        // another worker holds both units
+                    }
+                }
+            } finally {
+                working.decrementAndGet();
+            }
+            return 0;
+        });
+
+        assertEquals(0, torn);
+    }
+
+    @Test
+    public void concurrentCheckoutsOfOneItemClaimEachUnitOnce() throws Exception {
+        Equipment equipment = DataStore.addEquipment("Cinema Camera", "Popular", 90.0, 300.0, 2, false);
+
+        int rented = runConcurrently(() -> {
+            try {
+                rentalService.rent(equipment.getId(), 5000, 1);
+                return 1;
+            } catch (IllegalStateException soldOut) {
+                return 0;
+            }
+        });
+
+        assertEquals(2, rented);
+        assertEquals(0, equipment.getAvailableUnits());
+        assertEquals(2, DataStore.activeRentalsInCategory("Popular"));
+    }
+
+    @Test
+    public void concurrentReturnsRestockOnce() throws Exception {
+        Equipment equipment = DataStore.addEquipment("Compressor", "Stress", 20.0, 40.0, 1, false);
+        Rental rental = rentalService.rent(equipment.getId(), 5000, 1);
+
+        runConcurrently(() -> {
+            rentalService.returnRental(rental.getId());
+            return 1;
+        });
+
+        assertEquals(1, equipment.getAvailableUnits());
+        assertTrue(rental.isReturned());
+    }
+
+    @Test
+    public void concurrentRentsRespectCategoryCapacity() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            ids.add(DataStore.addEquipment("Lift " + i, "Capacity", 15.0, 30.0, 1, false).getId());
+        }
+        AtomicInteger next = new AtomicInteger();
+
+        int rented = runConcurrently(() -> {
+            try {
+                rentalService.rent(ids.get(next.getAndIncrement()), 5000, 1);
+                return 1;
+            } catch (IllegalStateException full) {
+                return 0;
+            }
+        });
+
+        assertEquals(3, rented);
+        assertEquals(3, DataStore.activeRentalsInCategory("Capacity"));
+    }
+
+    private static int runConcurrently(Callable<Integer> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(60, TimeUnit.SECONDS);
+            }
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -53,6 +53,16 @@ public class RentalServiceTest {
         assertTrue(customerRentals.stream().allMatch(r -> r.getCustomerId() == 5000));
     }
 
+    @Test
+    public void listByEquipmentReturnsOnlyThatEquipment() {
+        Rental camera = rentalService.rent(1000, 5000, 2);
+        Rental drill = rentalService.rent(1001, 5001, 2);
+
+        List<Rental> cameraRentals = rentalService.listByEquipment(1000);
+        assertTrue(cameraRentals.contains(camera));
+        assertFalse(cameraRentals.contains(drill));
+    }
+
     @Test
     public void findReturnsRentalWhenExists() {
         Rental rental = rentalService.rent(1000, 5000, 2);
@@ -131,6 +141,25 @@ public class RentalServiceTest {
         rentalService.rent(equipment.getId(), customer.getId(), 1);
     }
 
+    @Test
+    public void categoryCounterTracksRentAndReturn() {
+        int before = DataStore.activeRentalsInCategory("Tool");
+        Rental rental = rentalService.rent(1001, 5000, 2);
+        assertEquals(before + 1, DataStore.activeRentalsInCategory("tool"));
+
+        rentalService.returnRental(rental.getId());
+        assertEquals(before, DataStore.activeRentalsInCategory(" TOOL "));
+    }
+
+    @Test
+    public void categoryCounterFollowsInPlaceEdits() {
+        Rental rental = rentalService.rent(1001, 5000, 2);
+        int active = DataStore.activeRentalsInCategory("Tool");
+        rental.setReturnedOn(LocalDate.now());
+        DataStore.persistRentals();
+        assertEquals(active - 1, DataStore.activeRentalsInCategory("Tool"));
+    }
+
     @Test
     public void extendRentalUpdatesDueDate() {
         Rental rental = rentalService.rent(1000, 5000, 2);
@@ -0,0 +1,51 @@
+package org.equipment.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ReportCacheTest {
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger computed = new AtomicInteger();
+
+    @Test
+    public void resultsAreReusedUntilTheVersionMoves() {
+        ReportCache cache = new ReportCache(8, version::get, clock::get);
+        assertEquals(Integer.valueOf(1), cache.get("report", null, computed::incrementAndGet, 5));
+        assertEquals(Integer.valueOf(1), cache.get("report", null, computed::incrementAndGet, 5));
+        assertEquals(Integer.valueOf(2), cache.get("report", null, computed::incrementAndGet, 6));
+
+        version.incrementAndGet();
+        assertEquals(Integer.valueOf(3), cache.get("report", null, computed::incrementAndGet, 5));
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void entriesExpireAfterTheirTimeToLive() {
+        ReportCache cache = new ReportCache(8, version::get, clock::get);
+        cache.get("today", Duration.ofSeconds(10), computed::incrementAndGet);
+        clock.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertEquals(Integer.valueOf(1), cache.get("today", Duration.ofSeconds(10), computed::incrementAndGet));
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(Integer.valueOf(2), cache.get("today", Duration.ofSeconds(10), computed::incrementAndGet));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ReportCache cache = new ReportCache(2, version::get, clock::get);
+        cache.get("a", null, computed::incrementAndGet);
+        cache.get("b", null, computed::incrementAndGet);
+        cache.get("a", null, computed::incrementAndGet);
+        cache.get("c", null, computed::incrementAndGet);
+
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(1), cache.get("a", null, computed::incrementAndGet));
+        assertEquals(Integer.valueOf(4), cache.get("b", null, computed::incrementAndGet));
+    }
+}
@@ -0,0 +1,98 @@
+package org.equipment.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import org.equipment.data.DataStore;
+import org.equipment.data.Repositories;
+import org.equipment.domain.Rental;
+import org.equipment.support.TestDataSupport;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ReportEngineTest {
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @BeforeClass
+    public static void setupStore() {
+        TestDataSupport.initStore();
+    }
+
+    @Before
+    public void resetStore() {
+        TestDataSupport.resetStore();
+    }
+
+    @Test
+    public void overdueAsOfAPastDateCountsRentalsReturnedSince() {
+        Rental late = DataStore.addRental(1001, 5000, TODAY.minusDays(20), TODAY.minusDays(15), 10.0);
+        DataStore.markReturned(late, TODAY.minusDays(5), 12.0);
+        DataStore.addRental(1000, 5001, TODAY.minusDays(20), TODAY.minusDays(2), 10.0);
+
+        ReportEngine engine = new ReportEngine(Repositories.store());
+        Map<String, Long> tenDaysAgo = engine.overdueByCategory(TODAY.minusDays(10));
+        assertEquals(Long.valueOf(1), tenDaysAgo.get("Tool"));
+        assertFalse(tenDaysAgo.containsKey("Camera"));
+
+        Map<String, Long> today = engine.overdueByCategory(TODAY);
+        assertFalse(today.containsKey("Tool"));
+        assertEquals(Long.valueOf(1), today.get("Camera"));
+    }
+
+    @Test
+    public void parallelChunksMatchASequentialRun() {
+        for (int i = 0; i < 200; i++) {
+            int equipmentId = 1000 + i % 3;
+            Rental rental = DataStore.addRental(equipmentId, 5000 + i % 2, TODAY.minusDays(30 + i % 7),
+                    TODAY.minusDays(i % 11), 10.0);
+            if (i % 4 == 0) {
+                DataStore.markReturned(rental, TODAY.minusDays(i % 5), 0.0);
+            }
+        }
+        ReportEngine sequential = new ReportEngine(Repositories.store(), 1);
+        ReportEngine parallel = new ReportEngine(Repositories.store(), 4, 8);
+
+        for (int daysAgo = 0; daysAgo < 12; daysAgo += 3) {
+            LocalDate asOf = TODAY.minusDays(daysAgo);
+            assertEquals(sequential.overdueByCategory(asOf), parallel.overdueByCategory(asOf));
+        }
+        Map<String, Double> fees = sequential.projectedLateFeesByCategory(TODAY);
+        Map<String, Double> parallelFees = parallel.projectedLateFeesByCategory(TODAY);
+        assertEquals(fees.keySet(), parallelFees.keySet());
+        fees.forEach((category, fee) -> assertEquals(fee, parallelFees.get(category), 0.001));
+        assertEquals(sequential.projectedLateFees(TODAY), parallel.projectedLateFees(TODAY), 0.001);
+    }
+
+    @Test
+    public void archivedSegmentsAreCountedOnceEach() {
+        LocalDate longAgo = TODAY.minusDays(400);
+        for (int i = 0; i < 3; i++) {
+            Rental rental = DataStore.addRental(1001, 5000, longAgo, longAgo.plusDays(2), 10.0);
+            DataStore.markReturned(rental, longAgo.plusDays(10 + i * 100), 5.0);
+        }
+        assertEquals(1, DataStore.archiveReturnedRentals(longAgo.plusDays(50)));
+        assertEquals(2, DataStore.archiveReturnedRentals(TODAY.minusDays(90)));
+
+        LocalDate asOf = longAgo.plusDays(5);
+        assertEquals(Long.valueOf(3), new ReportEngine(Repositories.store(), 1).overdueByCategory(asOf).get("Tool"));
+        assertEquals(Long.valueOf(3), new ReportEngine(Repositories.store(), 4, 8).overdueByCategory(asOf).get("Tool"));
+    }
+
+    @Test
+    public void projectedFeesUseTheLateFeeRule() {
+        DataStore.addRental(1001, 5000, TODAY.minusDays(10), TODAY.minusDays(4), 10.0);
+        double rate = DataStore.findEquipment(1001).get().getDailyRate();
+
+        ReportEngine engine = new ReportEngine(Repositories.store());
+        assertEquals(4 * rate * 1.25, engine.projectedLateFeesByCategory(TODAY).get("Tool"), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismMustBePositive() {
+        new ReportEngine(Repositories.store(), 0);
+    }
+}
@@ -3,6 +3,8 @@ package org.equipment.service;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -36,6 +38,37 @@ public class ReportServiceTest {
         assertEquals(0.0, reportService.totalLateFeesCollected(), 0.0001);
     }
 
+    @Test
+    public void runningTotalsFollowRentalLifecycle() {
+        int activeBefore = reportService.activeRentalCount();
+        double heldBefore = reportService.totalHeldDeposits();
+        Rental rental = rentalService.rent(1001, 5000, 2);
+        assertEquals(activeBefore + 1, reportService.activeRentalCount());
+        assertEquals(heldBefore + rental.getDepositAmount(), reportService.totalHeldDeposits(), 0.0001);
+
+        rentalService.extendRental(rental.getId(), 3);
+        rentalService.returnRental(rental.getId());
+
+        assertEquals(activeBefore, reportService.activeRentalCount());
+        assertEquals(heldBefore, reportService.totalHeldDeposits(), 0.0001);
+    }
+
+    @Test
+    public void verificationReportsDrift() {
+        assumeTrue(Boolean.getBoolean("equipment.debug.verifyIndexes"));
+        Rental rental = rentalService.rent(1000, 5000, 1);
+        rental.setLateFeeCharged(9.0);
+        try {
+            reportService.totalLateFeesCollected();
+            fail("Expected drift to be reported");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().startsWith("Late fees drift"));
+        }
+
+        DataStore.persistRentals();
+        assertEquals(9.0, reportService.totalLateFeesCollected(), 0.0001);
+    }
+
     @Test
     public void overdueByCategorySummarizesCounts() {
         Rental rental = rentalService.rent(1000, 5000, 1);
@@ -46,6 +79,20 @@ public class ReportServiceTest {
         assertEquals(Long.valueOf(1), overdue.get("Camera"));
     }
 
+    @Test
+    public void cachedReportsRefreshWhenTheStoreChanges() {
+        Map<String, Long> first = reportService.overdueByCategory();
+        assertTrue(first == reportService.overdueByCategory());
+        long hits = reportService.cache().hits();
+
+        Rental rental = rentalService.rent(1001, 5000, 1);
+        DataStore.changeDueDate(rental, LocalDate.now().minusDays(2));
+
+        assertEquals(Long.valueOf(1), reportService.overdueByCategory().get("Tool"));
+        assertEquals(hits, reportService.cache().hits());
+        assertEquals(1, reportService.overdueWithProjectedFees().size());
+    }
+
     @Test
     public void topCustomersReturnsSummaries() {
         rentalService.rent(1000, 5000, 1);
@@ -56,6 +103,34 @@ public class ReportServiceTest {
         assertEquals(5000, summaries.get(0).getCustomerId());
         assertTrue(summaries.get(0).getRentals() >= 2);
     }
+
+    @Test
+    public void topCustomersCanBeLimitedToADateWindow() {
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < 3; i++) {
+            DataStore.addRental(1001, 5001, today.minusDays(100), today.minusDays(95), 10.0);
+        }
+        DataStore.addRental(1001, 5000, today.minusDays(2), today.plusDays(2), 10.0);
+
+        assertEquals(5001, reportService.topCustomersByRentals(1).get(0).getCustomerId());
+        List<ReportService.CustomerSummary> recent =
+                reportService.topCustomersByRentals(5, today.minusDays(29), today);
+        assertEquals(5000, recent.get(0).getCustomerId());
+        assertFalse(recent.stream().anyMatch(summary -> summary.getCustomerId() == 5001));
+    }
+
+    @Test
+    public void historyReportsIncludeArchivedRentals() {
+        LocalDate longAgo = LocalDate.now().minusDays(400);
+        for (int i = 0; i < 3; i++) {
+            Rental rental = DataStore.addRental(1001, 5001, longAgo, longAgo.plusDays(1), 10.0);
+            DataStore.markReturned(rental, longAgo.plusDays(3), 4.0);
+        }
+        assertEquals(3, DataStore.archiveReturnedRentals(LocalDate.now().minusDays(90)));
+
+        assertEquals(12.0, reportService.totalLateFeesCollected(), 0.0001);
+        assertEquals(5001, reportService.topCustomersByRentals(1).get(0).getCustomerId());
+    }
 }
 
 
@@ -67,6 +67,35 @@ public class ReservationServiceTest {
         assertTrue(customerReservations.stream().allMatch(r -> r.getCustomerId() == 5000));
     }
 
+    @Test
+    public void listWaitingDropsDeclinedReservations() {
+        Equipment equipment = DataStore.findEquipment(1000).orElseThrow(IllegalStateException::new);
+        equipment.setAvailableUnits(0);
+        DataStore.persistEquipment();
+
+        Reservation reservation = service.requestReservation(equipment.getId(), 5000);
+        service.declineReservation(reservation.getId(), "manager:1");
+
+        assertFalse(service.listWaiting().contains(reservation));
+        assertTrue(service.listByCustomer(5000).contains(reservation));
+    }
+
+    @Test
+    public void listWaitingForFiltersByEquipment() {
+        Equipment camera = DataStore.findEquipment(1000).orElseThrow(IllegalStateException::new);
+        Equipment drill = DataStore.findEquipment(1001).orElseThrow(IllegalStateException::new);
+        camera.setAvailableUnits(0);
+        drill.setAvailableUnits(0);
+        DataStore.persistEquipment();
+
+        Reservation forCamera = service.requestReservation(camera.getId(), 5000);
+        Reservation forDrill = service.requestReservation(drill.getId(), 5001);
+
+        List<Reservation> waiting = service.listWaitingFor(camera.getId());
+        assertTrue(waiting.contains(forCamera));
+        assertFalse(waiting.contains(forDrill));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void requestReservationRejectsInStockEquipment() {
         service.requestReservation(1000, 5000);